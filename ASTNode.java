@@ -8,6 +8,8 @@ public abstract class ASTNode {}
 // Root of the program
 class Program extends ASTNode {
     List<ASTNode> statements;
+    int slotCount = -1; // set by Resolver
+    int profileCount;   // loops and functions numbered by Resolver
     Program(List<ASTNode> statements) {
         this.statements = statements;
     }
@@ -18,6 +20,7 @@ class AssignmentNode extends ASTNode {
     String identifier;
     ExpressionNode expression;
     boolean isFloat;
+    int slot = -1;
     AssignmentNode(String identifier, ExpressionNode expression, boolean isFloat) {
         this.identifier = identifier;
         this.expression = expression;
@@ -65,6 +68,7 @@ class StopNode extends ASTNode{}
 class ArrayDecNode extends ASTNode{
     public final String name;
     public final List<ExpressionNode> elements;
+    int slot = -1;
 
     public ArrayDecNode(String name, List<ExpressionNode> elements){
         this.name = name;
@@ -76,6 +80,7 @@ class ArrayDecNode extends ASTNode{
 class ArrayAccessNode extends ExpressionNode {
     public String arrayName;
     public ExpressionNode index;
+    int slot = -1;
 
     public ArrayAccessNode(String arrayName, ExpressionNode index) {
         this.arrayName = arrayName;
@@ -85,9 +90,9 @@ class ArrayAccessNode extends ExpressionNode {
 }
 class ArrayAssignNode extends ASTNode {
     public final String arrayName;
-    public final ExpressionNode index;
-    public final ExpressionNode value;
-    
+    public ExpressionNode index;
+    public ExpressionNode value;
+    int slot = -1;
 
     public ArrayAssignNode(String arrayName, ExpressionNode index, ExpressionNode value) {
         this.arrayName = arrayName;
@@ -98,11 +103,23 @@ class ArrayAssignNode extends ASTNode {
 
 
 // for loop for i be 0 to 10 {print i}
+// parallel for i be 0 to 10 {let a[i] be i multiply i}
 class ForNode extends ASTNode {
     public final String iterator;
-    public final ExpressionNode start;
-    public final ExpressionNode end;
+    public ExpressionNode start;
+    public ExpressionNode end;
     public final List<ASTNode> body;
+    int slot = -1;
+    int profile = -1; // index into the run's Tier2Profile
+    boolean parallel;
+    // Parallel loops only, set by ParallelLoops: the accumulators, and the
+    // other variables the body assigns
+    ParallelLoops.Reduction[] reductions;
+    int[] privateSlots;
+    // Set by LoopOptimizer: the expressions hoisted to this loop, whose slots
+    // are cleared on entry, and the products of the iterator it keeps as sums
+    final List<InvariantExpr> invariants = new ArrayList<>();
+    final List<InductionExpr> inductions = new ArrayList<>();
 
     public ForNode(String iterator, ExpressionNode start, ExpressionNode end, List<ASTNode> body) {
         this.iterator = iterator;
@@ -126,6 +143,8 @@ class RepeatNode extends ASTNode {
 class WhileNode extends ASTNode {
     Condition condition;
     List<ASTNode> body;
+    int profile = -1; // index into the run's Tier2Profile
+    final List<InvariantExpr> invariants = new ArrayList<>(); // see ForNode
     WhileNode(Condition condition, List<ASTNode> body) {
         this.condition = condition;
         this.body = body;
@@ -137,6 +156,10 @@ class FunctionDeclNode extends ASTNode {
    public final String name;
    public final List<String> parameters;
     public final List<ASTNode> body;
+    int[] parameterSlots;
+    int[] localSlots; // every slot the body can write, parameters included
+    int profile = -1; // index into the run's Tier2Profile
+    boolean pure;     // set by Purity
     FunctionDeclNode(String name, List<String> parameters, List<ASTNode> body) {
         this.name = name;
         this.parameters = parameters;
@@ -145,7 +168,8 @@ class FunctionDeclNode extends ASTNode {
 }
 // Return statement
 class ReturnNode extends ASTNode{
-    public final ExpressionNode value;
+    public ExpressionNode value;
+    boolean tailCall; // 'return f(...)' in f's own body, outside any loop; set by Resolver
 
     public ReturnNode(ExpressionNode value){
         this.value = value;
@@ -162,12 +186,24 @@ class FunctionCallNode extends ExpressionNode {
     }
 }
 
-// 5 + 3, x * 4
+// 5 + 3, x * 4, x is less than y
 class BinaryExpr extends ExpressionNode {
     ExpressionNode left;
-    String op;
+    Operator op;
+    ExpressionNode right;
+    BinaryExpr(ExpressionNode left, Operator op, ExpressionNode right) {
+        this.left = left;
+        this.op = op;
+        this.right = right;
+    }
+}
+
+// a and b, a or b; the right side is only evaluated when it decides the result
+class LogicalExpr extends ExpressionNode {
+    ExpressionNode left;
+    Operator op; // AND or OR
     ExpressionNode right;
-    BinaryExpr(ExpressionNode left, String op, ExpressionNode right) {
+    LogicalExpr(ExpressionNode left, Operator op, ExpressionNode right) {
         this.left = left;
         this.op = op;
         this.right = right;
@@ -183,10 +219,10 @@ class BooleanLiteral extends ExpressionNode {
 }
 // 'Not' support
 class UnaryExpr extends ExpressionNode {
-    String op;
+    Operator op; // NOT or NEGATE
     ExpressionNode expr;
 
-    public UnaryExpr(String op, ExpressionNode expr) {
+    public UnaryExpr(Operator op, ExpressionNode expr) {
         this.op = op;
         this.expr = expr;
     }
@@ -204,18 +240,46 @@ class NumberLiteral extends ExpressionNode {
 // x
 class VariableRef extends ExpressionNode {
     String name;
+    int slot = -1;
     VariableRef(String name) {
         this.name = name;
     }
 }
 
+// An expression LoopOptimizer found to have the same value on every
+// iteration of a loop. It is evaluated where it stands, the first time that
+// succeeds is kept in a hidden variable, and later iterations read that.
+class InvariantExpr extends ExpressionNode {
+    final ExpressionNode expr;
+    final String name; // of the hidden variable; no source name has a '$'
+    int slot = -1;
+    InvariantExpr(ExpressionNode expr, String name) {
+        this.expr = expr;
+        this.name = name;
+    }
+}
+
+// 'i multiply c' in the body of the loop over i, read from a hidden variable
+// that the loop moves on by step times c each iteration instead
+class InductionExpr extends ExpressionNode {
+    final BinaryExpr product;
+    final double factor; // c
+    final String name;
+    int slot = -1;
+    InductionExpr(BinaryExpr product, double factor, String name) {
+        this.product = product;
+        this.factor = factor;
+        this.name = name;
+    }
+}
+
 // x is greater than y
 class Condition extends ASTNode {
     public final ExpressionNode left;
     public final ExpressionNode right;
-    public final String comparator;
+    public final Operator comparator;
 
-    public Condition(ExpressionNode left, String comp, ExpressionNode right) {
+    public Condition(ExpressionNode left, Operator comp, ExpressionNode right) {
         this.left = left;
         this.comparator = comp;
         this.right = right;
@@ -228,4 +292,6 @@ class Condition extends ASTNode {
 }
 
 // Expression base class
-abstract class ExpressionNode extends ASTNode {}
+abstract class ExpressionNode extends ASTNode {
+    ValueType type = ValueType.UNKNOWN; // set by TypeInference
+}
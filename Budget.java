@@ -0,0 +1,118 @@
+package com.syed.elpl_backend;
+
+// How much one run may do: a number of steps (fuel), a deadline, a memory
+// quota, and a flag another thread sets to cancel it. Every engine calls tick() once per loop
+// iteration and once per function call, tail calls included, so any program
+// that doesn't finish uses fuel. The clock and the flag are looked at only
+// every CHECK_INTERVAL steps. A run is also cancelled when its thread is
+// interrupted, which is how runBatch stops the runs of a dropped batch.
+// Threads helping with a run (a 'parallel for') each tick a fork() of its
+// budget, which draws steps from it a chunk at a time.
+//
+// The quota is charged through allocate() for array storage as arrays grow
+// and for output kept in memory. It counts what a run allocates, not what it
+// still holds, since nothing tells the run when an array becomes garbage.
+//
+// parallelThreshold is how long an array has to be before the array
+// builtins split it across threads (see Builtins); 0 keeps them on the run's thread.
+final class Budget {
+    private static final int CHECK_INTERVAL = 1024;
+    static final int DEFAULT_PARALLEL_THRESHOLD = 100_000;
+
+    private final long limit;
+    private final long timeLimitMillis;
+    private final long memoryLimit;
+    private final long deadline; // System.nanoTime() value
+    private final Budget root;   // the budget this one was forked from, or itself
+    private final Thread thread; // the run's thread
+    private long fuel;           // root only: steps left besides the chunks handed out
+    private int chunk;           // steps left before the next look at the clock and the flag
+    private long memory;         // root only: bytes left
+    private volatile boolean cancelled;
+    int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    // fuel, timeLimitMillis and memoryLimit (bytes): 0 for no limit
+    Budget(long fuel, long timeLimitMillis, long memoryLimit) {
+        this.limit = fuel > 0 ? fuel : Long.MAX_VALUE;
+        this.timeLimitMillis = timeLimitMillis;
+        this.deadline = timeLimitMillis > 0 ? System.nanoTime() + timeLimitMillis * 1_000_000 : 0;
+        this.chunk = (int) Math.min(limit, CHECK_INTERVAL);
+        this.fuel = limit - chunk;
+        this.memoryLimit = memoryLimit;
+        this.memory = memoryLimit > 0 ? memoryLimit : Long.MAX_VALUE;
+        this.root = this;
+        this.thread = Thread.currentThread();
+    }
+
+    private Budget(Budget root) {
+        this.limit = root.limit;
+        this.timeLimitMillis = root.timeLimitMillis;
+        this.memoryLimit = root.memoryLimit;
+        this.deadline = root.deadline;
+        this.root = root;
+        this.thread = root.thread;
+        this.parallelThreshold = root.parallelThreshold;
+    }
+
+    // A budget for another thread working on the same run. Its steps and
+    // memory come out of this one's.
+    Budget fork() {
+        return new Budget(root);
+    }
+
+    static Budget unlimited() {
+        return new Budget(0, 0, 0);
+    }
+
+    void tick() {
+        if (--chunk < 0) check();
+    }
+
+    void allocate(long bytes) {
+        root.charge(bytes);
+    }
+
+    // May be called from any thread
+    void cancel() {
+        cancelled = true;
+    }
+
+    private synchronized void charge(long bytes) {
+        memory -= bytes;
+        if (memory < 0) {
+            throw new RunAbortedException("Memory limit exceeded: the program allocated more than "
+                    + memoryLimit + " bytes");
+        }
+    }
+
+    // Takes the next chunk of steps, the first of which pays for this tick
+    private void check() {
+        int next = root.take();
+        if (next == 0) {
+            throw new RunAbortedException("Program exceeded its limit of " + limit + " steps");
+        }
+        if (cancelled || root.cancelled || thread.isInterrupted()) {
+            throw new RunAbortedException("Program was cancelled");
+        }
+        if (deadline != 0 && System.nanoTime() - deadline > 0) {
+            throw new RunAbortedException("Program exceeded its time limit of " + timeLimitMillis + " ms");
+        }
+        chunk = next - 1;
+    }
+
+    private synchronized int take() {
+        int next = (int) Math.min(fuel, CHECK_INTERVAL);
+        fuel -= next;
+        return next;
+    }
+}
+
+// Ends a run that used up its Budget. Unlike other runtime errors it isn't
+// caught per statement: every engine lets it through to InterpreterService.
+final class RunAbortedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    RunAbortedException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,182 @@
+package com.syed.elpl_backend;
+
+import java.util.*;
+
+// Built-in functions shared by every execution engine. Callers check the
+// argument count, evaluate the arguments and then hand the values to apply().
+// The array builtins split numeric arrays of the run's
+// Budget.parallelThreshold elements or more across threads (see
+// ParallelArrays); smaller arrays are handled as before, on the caller's thread.
+final class Builtins {
+    private static final Set<String> NAMES = Set.of(
+            "length", "sum", "max", "min", "sqrt", "abs", "pow", "floor", "ceil", "reverse",
+            "sort", "scale", "dot");
+
+    private Builtins() {}
+
+    static boolean isBuiltIn(String name) {
+        return NAMES.contains(name);
+    }
+
+    // reverse() and sort() change their array in place
+    static boolean isPure(String name) {
+        return !name.equals("reverse") && !name.equals("sort");
+    }
+
+    static void checkArity(String name, int count) {
+        switch (name) {
+            case "length" -> { if (count != 1) throw new RuntimeException("length() takes 1 argument"); }
+            case "sum" -> { if (count != 1) throw new RuntimeException("sum() takes 1 array"); }
+            case "max" -> { if (count != 1) throw new RuntimeException("max() takes 1 array"); }
+            case "min" -> { if (count != 1) throw new RuntimeException("min() takes 1 array"); }
+            case "sqrt" -> { if (count != 1) throw new RuntimeException("sqrt() takes 1 number"); }
+            case "abs" -> { if (count != 1) throw new RuntimeException("abs() takes 1 number"); }
+            case "pow" -> { if (count != 2) throw new RuntimeException("pow() takes 2 numbers"); }
+            case "floor" -> { if (count != 1) throw new RuntimeException("floor() takes 1 number"); }
+            case "ceil" -> { if (count != 1) throw new RuntimeException("ceil() takes 1 number"); }
+            case "reverse" -> { if (count != 1) throw new RuntimeException("reverse() takes exactly 1 array"); }
+            case "sort" -> { if (count != 1) throw new RuntimeException("sort() takes 1 array"); }
+            case "scale" -> { if (count != 2) throw new RuntimeException("scale() takes an array and a number"); }
+            case "dot" -> { if (count != 2) throw new RuntimeException("dot() takes 2 arrays"); }
+            default -> throw new RuntimeException("Unknown built-in function: " + name);
+        }
+    }
+
+    // budget: of the run, for the arrays it creates and its parallelThreshold
+    static Object apply(String name, Object[] args, Budget budget) {
+        int threshold = budget.parallelThreshold;
+        switch (name) {
+            case "length" -> {
+                if (!(args[0] instanceof ElplArray array)) throw new RuntimeException("length() expects an array");
+                return (double) array.size();
+            }
+            case "sum" -> {
+                if (!(args[0] instanceof ElplArray array)) throw new RuntimeException("sum() expects an array");
+                if (array.isNumeric()) {
+                    return ParallelArrays.reduce(array.size(), threshold, (from, to) -> {
+                        double sum = 0;
+                        for (int i = from; i < to; i++) sum += array.getDouble(i);
+                        return sum;
+                    }, Double::sum);
+                }
+                double sum = 0;
+                for (Object o : array) {
+                    if (o instanceof Number n) sum += n.doubleValue();
+                    else throw new RuntimeException("sum() supports numeric arrays only");
+                }
+                return sum;
+            }
+            case "max" -> {
+                if (!(args[0] instanceof ElplArray array)) throw new RuntimeException("max() expects an array");
+                if (array.isEmpty()) throw new RuntimeException("max() on empty array");
+                if (array.isNumeric()) {
+                    return ParallelArrays.reduce(array.size(), threshold, (from, to) -> {
+                        double max = Double.NEGATIVE_INFINITY;
+                        for (int i = from; i < to; i++) max = Math.max(max, array.getDouble(i));
+                        return max;
+                    }, Math::max);
+                }
+                double max = Double.NEGATIVE_INFINITY;
+                for (Object o : array) {
+                    if (o instanceof Number n) max = Math.max(max, n.doubleValue());
+                    else throw new RuntimeException("max() supports numeric arrays only");
+                }
+                return max;
+            }
+            case "min" -> {
+                if (!(args[0] instanceof ElplArray array)) throw new RuntimeException("min() expects an array");
+                if (array.isEmpty()) throw new RuntimeException("min() on empty array");
+                if (array.isNumeric()) {
+                    return ParallelArrays.reduce(array.size(), threshold, (from, to) -> {
+                        double min = Double.POSITIVE_INFINITY;
+                        for (int i = from; i < to; i++) min = Math.min(min, array.getDouble(i));
+                        return min;
+                    }, Math::min);
+                }
+                double min = Double.POSITIVE_INFINITY;
+                for (Object o : array) {
+                    if (o instanceof Number n) min = Math.min(min, n.doubleValue());
+                    else throw new RuntimeException("min() supports numeric arrays only");
+                }
+                return min;
+            }
+            case "sqrt" -> {
+                if (!(args[0] instanceof Number d)) throw new RuntimeException("sqrt() expects a number");
+                return Math.sqrt(d.doubleValue());
+            }
+            case "abs" -> {
+                if (!(args[0] instanceof Number d)) throw new RuntimeException("abs() expects a number");
+                return Math.abs(d.doubleValue());
+            }
+            case "pow" -> {
+                if (!(args[0] instanceof Number b) || !(args[1] instanceof Number e))
+                    throw new RuntimeException("pow() expects numeric arguments");
+                return Math.pow(b.doubleValue(), e.doubleValue());
+            }
+            case "floor" -> {
+                if (!(args[0] instanceof Number d)) throw new RuntimeException("floor() expects a number");
+                return Math.floor(d.doubleValue());
+            }
+            case "ceil" -> {
+                if (!(args[0] instanceof Number d)) throw new RuntimeException("ceil() expects a number");
+                return Math.ceil(d.doubleValue());
+            }
+            case "reverse" -> {
+                if (!(args[0] instanceof ElplArray array)) throw new RuntimeException("reverse() expects an array");
+
+                // In-place reverse
+                array.reverse(threshold);
+                return array;
+            }
+            case "sort" -> {
+                if (!(args[0] instanceof ElplArray array)) throw new RuntimeException("sort() expects an array");
+                requireNumbers(array, "sort");
+
+                // In-place, ascending
+                array.sort(threshold);
+                return array;
+            }
+            case "scale" -> {
+                if (!(args[0] instanceof ElplArray array) || !(args[1] instanceof Number factor))
+                    throw new RuntimeException("scale() expects an array and a number");
+                requireNumbers(array, "scale");
+
+                // A new array, each element multiplied by factor
+                double k = factor.doubleValue();
+                ElplArray scaled = ElplArray.zeros(array.size(), budget);
+                ParallelArrays.forEach(array.size(), threshold, (from, to) -> {
+                    for (int i = from; i < to; i++) scaled.setDouble(i, number(array, i) * k);
+                });
+                return scaled;
+            }
+            case "dot" -> {
+                if (!(args[0] instanceof ElplArray a) || !(args[1] instanceof ElplArray b))
+                    throw new RuntimeException("dot() expects 2 arrays");
+                if (a.size() != b.size()) {
+                    throw new RuntimeException("dot() expects arrays of the same length, not "
+                            + a.size() + " and " + b.size());
+                }
+                requireNumbers(a, "dot");
+                requireNumbers(b, "dot");
+                return ParallelArrays.reduce(a.size(), threshold, (from, to) -> {
+                    double dot = 0;
+                    for (int i = from; i < to; i++) dot += number(a, i) * number(b, i);
+                    return dot;
+                }, Double::sum);
+            }
+            default -> throw new RuntimeException("Unknown built-in function: " + name);
+        }
+    }
+
+    private static void requireNumbers(ElplArray array, String name) {
+        if (array.isNumeric()) return;
+        for (Object o : array) {
+            if (!(o instanceof Number)) throw new RuntimeException(name + "() supports numeric arrays only");
+        }
+    }
+
+    // Element i of an array that holds only numbers
+    private static double number(ElplArray array, int i) {
+        return array.isNumeric() ? array.getDouble(i) : ((Number) array.get(i)).doubleValue();
+    }
+}
@@ -0,0 +1,567 @@
+package com.syed.elpl_backend;
+
+import java.util.*;
+
+import static com.syed.elpl_backend.BytecodeProgram.*;
+
+// Lowers a resolved Program into a BytecodeProgram for BytecodeVM.
+//
+// Registers 0..slotCount-1 are the program's variable slots, so a variable
+// read needs no copy. Temporaries live above them and are handed out
+// stack-wise: every statement gives back what its expressions used.
+//
+// Each statement gets a handler range, so a runtime error resumes after
+// the innermost statement, as Interpreter does. Each loop body gets a loop
+// range, which 'stop' inside a called function unwinds to.
+final class BytecodeCompiler {
+    private int[] code = new int[256];
+    private int size;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+    private final Map<String, Integer> functionNames = new LinkedHashMap<>();
+    private final List<FunctionDeclNode> functions = new ArrayList<>();
+    private final List<Integer> handlers = new ArrayList<>();
+    private final List<Integer> loops = new ArrayList<>();
+    private final Deque<List<Integer>> breaks = new ArrayDeque<>();
+    private final Set<Integer> definedSlots = new HashSet<>(); // assigned here, so need no CHECK_VAR
+
+    private final int slotCount;
+    private int nextTemp;
+    private int maxRegister;
+
+    private BytecodeCompiler(int slotCount) {
+        this.slotCount = slotCount;
+        this.nextTemp = slotCount;
+        this.maxRegister = slotCount;
+    }
+
+    static BytecodeProgram compile(Program program) {
+        Program resolved = Resolver.resolve(program);
+        BytecodeCompiler compiler = new BytecodeCompiler(resolved.slotCount);
+        compiler.statements(resolved.statements);
+        compiler.emit(HALT);
+
+        // Function bodies follow the main code, one after another
+        int[] entries = new int[0];
+        int[][] parameterSlots = new int[0][];
+        int[][] savedRegisters = new int[0][];
+        boolean[] pure = new boolean[0];
+        for (int i = 0; i < compiler.functions.size(); i++) {
+            FunctionDeclNode func = compiler.functions.get(i);
+            entries = Arrays.copyOf(entries, i + 1);
+            parameterSlots = Arrays.copyOf(parameterSlots, i + 1);
+            savedRegisters = Arrays.copyOf(savedRegisters, i + 1);
+            pure = Arrays.copyOf(pure, i + 1);
+            entries[i] = compiler.size;
+            parameterSlots[i] = func.parameterSlots;
+            pure[i] = func.pure;
+            int maxRegister = compiler.maxRegister;
+            compiler.nextTemp = compiler.slotCount;
+            compiler.maxRegister = compiler.slotCount;
+            compiler.statements(func.body);
+            compiler.emit(RETURN_NULL);
+            // A call saves the slots the body writes and the temporaries it uses
+            int[] saved = Arrays.copyOf(func.localSlots, func.localSlots.length + compiler.maxRegister - compiler.slotCount);
+            for (int register = compiler.slotCount; register < compiler.maxRegister; register++) {
+                saved[func.localSlots.length + register - compiler.slotCount] = register;
+            }
+            savedRegisters[i] = saved;
+            compiler.maxRegister = Math.max(maxRegister, compiler.maxRegister);
+        }
+
+        return new BytecodeProgram(Arrays.copyOf(compiler.code, compiler.size), compiler.constants.toArray(),
+                compiler.slotCount, compiler.maxRegister, entries, parameterSlots, savedRegisters, pure,
+                compiler.functionNames.keySet().toArray(new String[0]),
+                toArray(compiler.handlers), toArray(compiler.loops));
+    }
+
+    // --- statements -------------------------------------------------------
+
+    private void statements(List<ASTNode> statements) {
+        for (ASTNode stmt : statements) {
+            statement(stmt);
+        }
+    }
+
+    private void statement(ASTNode node) {
+        int start = size;
+        int mark = nextTemp;
+        statementBody(node);
+        nextTemp = mark;
+        // Recorded after any nested statement, so inner ranges come first
+        handlers.add(start);
+        handlers.add(size);
+        handlers.add(size);
+    }
+
+    private void statementBody(ASTNode node) {
+        if (node instanceof BlockNode block) {
+            statements(block.statements);
+        } else if (node instanceof AssignmentNode assign) {
+            int value = expr(assign.expression);
+            // An Integer needs no whole-number check
+            boolean move = assign.isFloat || assign.expression != null && assign.expression.type == ValueType.INT;
+            emit(move ? MOVE : LET, assign.slot, value);
+        } else if (node instanceof PrintNode print) {
+            for (int i = 0; i < print.expressions.size(); i++) {
+                int mark = nextTemp;
+                ExpressionNode part = print.expressions.get(i);
+                emit(isNumber(part) ? PRINT_NUM : PRINT, expr(part));
+                nextTemp = mark;
+                if (i < print.expressions.size() - 1) emit(PRINT_SPACE);
+            }
+            emit(PRINT_NEWLINE);
+        } else if (node instanceof ReturnNode ret) {
+            if (ret.value == null) {
+                emit(THROW, constant("Null Expression encountered"));
+            } else if (ret.tailCall) {
+                tailCall((FunctionCallNode) ret.value);
+            } else {
+                emit(RETURN, expr(ret.value));
+            }
+        } else if (node instanceof IfNode ifNode) {
+            int otherwise = condition(ifNode.condition);
+            statementBody(ifNode.thenBlock);
+            if (ifNode.elseBlock != null) {
+                int end = jump(JUMP);
+                patch(otherwise);
+                statementBody(ifNode.elseBlock);
+                patch(end);
+            } else {
+                patch(otherwise);
+            }
+        } else if (node instanceof RepeatNode repeat) {
+            int counter = temp();
+            emit(LOAD_CONST, counter, constant(0));
+            int top = size;
+            emit(REPEAT_LOOP, counter, repeat.times, 0);
+            int exit = size - 1;
+            loopBody(repeat.body, top, exit);
+        } else if (node instanceof WhileNode whileNode) {
+            clear(whileNode.invariants);
+            int top = size;
+            int exit = condition(whileNode.condition);
+            loopBody(whileNode.body, top, exit);
+        } else if (node instanceof ForNode forNode) {
+            // counter, end and step; the counter doubles as the iterator value
+            int base = temp();
+            temp();
+            temp();
+            emit(TO_INT, base, expr(forNode.start));
+            nextTemp = base + 3;
+            emit(TO_INT, base + 1, expr(forNode.end));
+            nextTemp = base + 3;
+            clear(forNode.invariants);
+            // The first iteration always runs, as in Interpreter
+            emit(FOR_PREP, base, forNode.slot);
+            // Each induction starts at counter * c; its register then holds step * c
+            int[] steps = new int[forNode.inductions.size()];
+            for (int i = 0; i < steps.length; i++) {
+                InductionExpr induction = forNode.inductions.get(i);
+                steps[i] = loadConstant(induction.factor);
+                emit(MULTIPLY, induction.slot, base, steps[i]);
+                emit(MULTIPLY, steps[i], base + 2, steps[i]);
+            }
+            int bodyStart = size;
+            breaks.push(new ArrayList<>());
+            boolean pinned = definedSlots.add(forNode.slot);
+            statements(forNode.body);
+            if (pinned) definedSlots.remove(forNode.slot);
+            for (int i = 0; i < steps.length; i++) {
+                int slot = forNode.inductions.get(i).slot;
+                emit(ADD, slot, slot, steps[i]);
+            }
+            emit(FOR_NEXT, base, forNode.slot, bodyStart);
+            endLoop(bodyStart, -1);
+        } else if (node instanceof ArrayDecNode arrayDec) {
+            int base = nextTemp;
+            for (ExpressionNode element : arrayDec.elements) {
+                exprInto(element, nextTemp);
+            }
+            emit(NEW_ARRAY, arrayDec.slot, base, arrayDec.elements.size());
+        } else if (node instanceof ArrayAssignNode assign) {
+            emit(CHECK_ARRAY, assign.slot, constant(assign.arrayName));
+            // The index is converted before the value is evaluated
+            int index = exprInto(assign.index, nextTemp);
+            emit(TO_INT, index, index);
+            int value = expr(assign.value);
+            emit(ARRAY_SET, assign.slot, index, value);
+        } else if (node instanceof StopNode) {
+            if (breaks.isEmpty()) {
+                emit(STOP);
+            } else {
+                breaks.peek().add(jump(JUMP));
+            }
+        } else if (node instanceof FunctionDeclNode func) {
+            functions.add(func);
+            emit(DEFINE, functionName(func.name), functions.size() - 1);
+        } else if (node instanceof FunctionCallNode call) {
+            emit(ECHO, expr(call));
+        } else {
+            emit(THROW, constant("Unsupported AST node: " + node.getClass().getSimpleName()));
+        }
+    }
+
+    // Body of a repeat or while loop whose head is at 'top'; 'exit' is the
+    // operand to patch with the loop's end
+    private void loopBody(List<ASTNode> body, int top, int exit) {
+        int bodyStart = size;
+        breaks.push(new ArrayList<>());
+        statements(body);
+        emit(JUMP, top);
+        endLoop(bodyStart, exit);
+    }
+
+    private void endLoop(int bodyStart, int exit) {
+        if (exit >= 0) patch(exit);
+        for (int stop : breaks.pop()) {
+            patch(stop);
+        }
+        loops.add(bodyStart);
+        loops.add(size);
+        loops.add(size);
+    }
+
+    // Unsets the hidden variables of a loop's invariants as the loop is entered
+    private void clear(List<InvariantExpr> invariants) {
+        for (InvariantExpr invariant : invariants) {
+            emit(CLEAR, invariant.slot);
+        }
+    }
+
+    // Emits the test and returns the jump operand to patch with the false target
+    private int condition(Condition cond) {
+        int mark = nextTemp;
+        int value;
+        if (cond.comparator == null && cond.left instanceof BinaryExpr bin && !bin.op.isArithmetic()
+                && isNumber(bin.left) && isNumber(bin.right)) {
+            return jumpUnless(bin.op, bin.left, bin.right);
+        } else if (cond.comparator != null && isNumber(cond.left) && isNumber(cond.right)) {
+            return jumpUnless(cond.comparator, cond.left, cond.right);
+        } else if (cond.comparator == null) {
+            value = expr(cond.left);
+        } else {
+            value = binary(cond.comparator, cond.left, cond.right);
+        }
+        nextTemp = mark;
+        emit(JUMP_IF_FALSE, value, 0);
+        return size - 1;
+    }
+
+    // A comparison of numbers that jumps when it doesn't hold, without a Boolean in between
+    private int jumpUnless(Operator op, ExpressionNode left, ExpressionNode right) {
+        int mark = nextTemp;
+        int l = expr(left);
+        int r = expr(right);
+        nextTemp = mark;
+        emit(JUMP_UNLESS, binaryOpcode(op), l, r, 0);
+        return size - 1;
+    }
+
+    private static boolean isNumber(ExpressionNode expr) {
+        return expr != null && expr.type.isNumber();
+    }
+
+    // --- expressions ------------------------------------------------------
+
+    // Returns the register that holds the value
+    private int expr(ExpressionNode expr) {
+        if (expr == null) {
+            emit(THROW, constant("Null Expression encountered"));
+            return temp();
+        } else if (expr instanceof NumberLiteral number) {
+            return loadConstant(number.value);
+        } else if (expr instanceof BooleanLiteral bool) {
+            return loadConstant(bool.value);
+        } else if (expr instanceof StringLiteral string) {
+            return loadConstant(string.value);
+        } else if (expr instanceof VariableRef ref) {
+            if (!definedSlots.contains(ref.slot)) {
+                emit(CHECK_VAR, ref.slot, constant(ref.name));
+            }
+            return ref.slot;
+        } else if (expr instanceof BinaryExpr bin) {
+            return binary(bin.op, bin.left, bin.right);
+        } else if (expr instanceof LogicalExpr logical) {
+            // The left test jumps past the right operand when it decides the result
+            int opcode = logical.op == Operator.AND ? AND : OR;
+            int result = temp();
+            emit(opcode, result, expr(logical.left), 0);
+            int skip = size - 1;
+            nextTemp = result + 1;
+            emit(opcode, result, expr(logical.right), size + 4);
+            patch(skip);
+            nextTemp = result + 1;
+            return result;
+        } else if (expr instanceof UnaryExpr unary) {
+            int mark = nextTemp;
+            int operand = expr(unary.expr);
+            nextTemp = mark;
+            int result = temp();
+            switch (unary.op) {
+                case NOT -> emit(NOT, result, operand);
+                case NEGATE -> emit(NEGATE, result, operand);
+                default -> emit(THROW, constant("Unsupported unary operator: " + unary.op));
+            }
+            return result;
+        } else if (expr instanceof ArrayAccessNode access) {
+            emit(CHECK_ARRAY, access.slot, constant(access.arrayName));
+            int mark = nextTemp;
+            int index = expr(access.index);
+            nextTemp = mark;
+            int result = temp();
+            emit(ARRAY_GET, result, access.slot, index);
+            return result;
+        } else if (expr instanceof FunctionCallNode call) {
+            return call(call);
+        } else if (expr instanceof InvariantExpr invariant) {
+            // Computed only while the hidden variable is unset
+            emit(JUMP_IF_SET, invariant.slot, 0);
+            int skip = size - 1;
+            int mark = nextTemp;
+            int value = expr(invariant.expr);
+            nextTemp = mark;
+            emit(MOVE, invariant.slot, value);
+            patch(skip);
+            return invariant.slot;
+        } else if (expr instanceof InductionExpr induction) {
+            return induction.slot;
+        }
+        emit(THROW, constant("Unknown expression node: " + expr.getClass().getSimpleName()));
+        return temp();
+    }
+
+    // Evaluates into 'target', which must be the next free temporary, and keeps it allocated
+    private int exprInto(ExpressionNode expr, int target) {
+        int value = expr(expr);
+        if (value != target) emit(MOVE, target, value);
+        nextTemp = target;
+        return temp();
+    }
+
+    private int binary(Operator op, ExpressionNode left, ExpressionNode right) {
+        int mark = nextTemp;
+        int l = expr(left);
+        int r = expr(right);
+        nextTemp = mark;
+        int result = temp();
+        int opcode = binaryOpcode(op);
+        if (opcode < 0) {
+            emit(THROW, constant("Unsupported operator: " + op));
+        } else {
+            // Operands known to be numbers skip the type tests
+            emit(isNumber(left) && isNumber(right) ? opcode + NUMERIC : opcode, result, l, r);
+        }
+        return result;
+    }
+
+    private int call(FunctionCallNode call) {
+        int argc = call.arguments.size();
+        boolean builtin = Builtins.isBuiltIn(call.name);
+        if (builtin) {
+            try {
+                Builtins.checkArity(call.name, argc);
+            } catch (RuntimeException e) {
+                emit(THROW, constant(e.getMessage()));
+                return temp();
+            }
+        } else {
+            emit(CHECK_CALL, functionName(call.name), argc);
+        }
+
+        int base = nextTemp;
+        for (ExpressionNode arg : call.arguments) {
+            exprInto(arg, nextTemp);
+        }
+        nextTemp = base;
+        int result = temp();
+        if (builtin) {
+            emit(CALL_BUILTIN, result, constant(call.name), base, argc);
+        } else {
+            emit(CALL, result, functionName(call.name), base, argc);
+        }
+        return result;
+    }
+
+    private void tailCall(FunctionCallNode call) {
+        int argc = call.arguments.size();
+        emit(CHECK_CALL, functionName(call.name), argc);
+        int base = nextTemp;
+        for (ExpressionNode arg : call.arguments) {
+            exprInto(arg, nextTemp);
+        }
+        nextTemp = base;
+        emit(TAIL_CALL, functionName(call.name), base, argc);
+    }
+
+    private int loadConstant(Object value) {
+        int register = temp();
+        emit(LOAD_CONST, register, constant(value));
+        return register;
+    }
+
+    // --- emission ---------------------------------------------------------
+
+    private int temp() {
+        int register = nextTemp++;
+        maxRegister = Math.max(maxRegister, nextTemp);
+        return register;
+    }
+
+    private int constant(Object value) {
+        // Double 1.0 and Integer 1 must stay apart, so key on the class too
+        Object key = List.of(value.getClass(), value);
+        Integer index = constantIndex.get(key);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(key, index);
+        }
+        return index;
+    }
+
+    private int functionName(String name) {
+        Integer id = functionNames.get(name);
+        if (id == null) {
+            id = functionNames.size();
+            functionNames.put(name, id);
+        }
+        return id;
+    }
+
+    private int jump(int opcode) {
+        emit(opcode, 0);
+        return size - 1;
+    }
+
+    private void patch(int operand) {
+        code[operand] = size;
+    }
+
+    private void emit(int... words) {
+        if (size + words.length > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, size + words.length));
+        }
+        System.arraycopy(words, 0, code, size, words.length);
+        size += words.length;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
+
+// A compiled program: one int[] of instructions, a constant pool and a few
+// side tables. Immutable, so one instance can be run any number of times.
+final class BytecodeProgram {
+    // Opcodes. Operands follow inline; 'r' is a register, 'k' a constant.
+    static final int HALT = 0;            //
+    static final int LOAD_CONST = 1;      // r k
+    static final int MOVE = 2;            // r r
+    static final int LET = 3;             // r r       whole-number check of 'let'
+    static final int CHECK_VAR = 4;       // r k       undefined variable error
+    static final int ADD = 5, SUBTRACT = 6, MULTIPLY = 7, DIVIDE = 8, MOD = 9,
+            EQUAL = 10, NOT_EQUAL = 11, GREATER = 12, LESS = 13, GREATER_EQUAL = 14,
+            LESS_EQUAL = 15;              // r r r
+    static final int AND = 16, OR = 17;   // r r exit   result, or jump to exit when it decides
+    static final int NOT = 18, NEGATE = 19; // r r
+    static final int JUMP = 20;           // target
+    static final int JUMP_IF_FALSE = 21;  // r target
+    static final int PRINT = 22;          // r
+    static final int PRINT_SPACE = 23;    //
+    static final int PRINT_NEWLINE = 24;  //
+    static final int ECHO = 25;           // r         result of a bare call statement
+    static final int NEW_ARRAY = 26;      // r base count
+    static final int CHECK_ARRAY = 27;    // r k
+    static final int ARRAY_GET = 28;      // r array index
+    static final int ARRAY_SET = 29;      // array index value
+    static final int TO_INT = 30;         // r r
+    static final int FOR_PREP = 31;       // base iterator     base = counter, base+1 = end, base+2 = step
+    static final int FOR_NEXT = 32;       // base iterator body
+    static final int REPEAT_LOOP = 33;    // counter times exit
+    static final int DEFINE = 34;         // name function
+    static final int CHECK_CALL = 35;     // name argc
+    static final int CALL = 36;           // r name base argc
+    static final int CALL_BUILTIN = 37;   // r k base argc
+    static final int RETURN = 38;         // r
+    static final int RETURN_NULL = 39;    //
+    static final int STOP = 40;           //
+    static final int THROW = 41;          // k
+    static final int TAIL_CALL = 42;      // name base argc   'return f(...)' in f, reusing the call
+    static final int CLEAR = 43;          // r         unsets a hidden variable of LoopOptimizer
+    static final int JUMP_IF_SET = 44;    // r target
+    // The binary opcodes for operands TypeInference knows to be numbers
+    static final int ADD_NUM = 45, SUBTRACT_NUM = 46, MULTIPLY_NUM = 47, DIVIDE_NUM = 48, MOD_NUM = 49,
+            EQUAL_NUM = 50, NOT_EQUAL_NUM = 51, GREATER_NUM = 52, LESS_NUM = 53, GREATER_EQUAL_NUM = 54,
+            LESS_EQUAL_NUM = 55;          // r r r
+    static final int NUMERIC = ADD_NUM - ADD; // from a binary opcode to its numeric one
+    static final int JUMP_UNLESS = 56;    // comparison r r target   numbers compared by a binary opcode
+    static final int PRINT_NUM = 57;      // r         a number
+
+    // Operator of each binary opcode, for GenericBinaryNode.apply
+    static final Operator[] OPERATORS = new Operator[LESS_EQUAL + 1];
+
+    static {
+        for (Operator op : Operator.values()) {
+            int opcode = binaryOpcode(op);
+            if (opcode >= 0) OPERATORS[opcode] = op;
+        }
+    }
+
+    final int[] code;
+    final Object[] constants;
+    final int slotCount;
+    final int registerCount;
+    final int[] functionEntries;
+    final int[][] parameterSlots;
+    final int[][] savedRegisters; // per function, what a call saves and restores
+    final boolean[] pure; // per function, see Purity
+    final String[] functionNames;
+    final int[] handlers; // {start, end, resume} triples, innermost first
+    final int[] loops;    // {body start, body end, exit} triples, innermost first
+
+    BytecodeProgram(int[] code, Object[] constants, int slotCount, int registerCount, int[] functionEntries,
+                    int[][] parameterSlots, int[][] savedRegisters, boolean[] pure, String[] functionNames,
+                    int[] handlers, int[] loops) {
+        this.code = code;
+        this.constants = constants;
+        this.slotCount = slotCount;
+        this.registerCount = registerCount;
+        this.functionEntries = functionEntries;
+        this.parameterSlots = parameterSlots;
+        this.savedRegisters = savedRegisters;
+        this.pure = pure;
+        this.functionNames = functionNames;
+        this.handlers = handlers;
+        this.loops = loops;
+    }
+
+    static int binaryOpcode(Operator op) {
+        return switch (op) {
+            case ADD -> ADD;
+            case SUBTRACT -> SUBTRACT;
+            case MULTIPLY -> MULTIPLY;
+            case DIVIDE -> DIVIDE;
+            case MOD -> MOD;
+            case EQUAL -> EQUAL;
+            case NOT_EQUAL -> NOT_EQUAL;
+            case GREATER -> GREATER;
+            case LESS -> LESS;
+            case GREATER_EQUAL -> GREATER_EQUAL;
+            case LESS_EQUAL -> LESS_EQUAL;
+            default -> -1;
+        };
+    }
+
+    // First range in a triple table that contains pc, or -1
+    static int find(int[] table, int pc) {
+        for (int i = 0; i < table.length; i += 3) {
+            if (pc >= table[i] && pc < table[i + 1]) return table[i + 2];
+        }
+        return -1;
+    }
+}
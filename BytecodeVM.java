@@ -0,0 +1,455 @@
+package com.syed.elpl_backend;
+
+import java.util.*;
+
+import static com.syed.elpl_backend.BytecodeProgram.*;
+
+// Runs a BytecodeProgram in one dispatch loop. Calls push an explicit frame
+// instead of recursing on the Java stack. Like the other engines, a call runs
+// in the caller's registers: it saves the ones its function can write and
+// puts them back when it returns. Output matches Interpreter except
+// for 'stop' and 'return' outside any loop or function, which end the
+// program cleanly, as in NodeCompiler.
+final class BytecodeVM {
+    private static final int MAX_RECURSION_DEPTH = 10000; // same limit as Interpreter
+
+    private final BytecodeProgram program;
+    private final OutputSink sink;
+    private final StringBuilder output;
+    private final int[] defined; // function index + 1 per function name, 0 if undefined
+    private final MemoTable memo; // null unless calls to pure functions are memoized
+    private final Budget budget;  // charged at loop back-edges and calls, and for arrays
+    private int errorsReported;   // a call that reported an error isn't memoized
+
+    // Caller state of each active call
+    private int[][] savedRegisters = new int[16][];
+    private Object[][] savedValues = new Object[16][];
+    private int[] savedPc = new int[16];
+    private int[] savedCallPc = new int[16];
+    private int[] savedTarget = new int[16];
+    private MemoTable.Key[] savedKey = new MemoTable.Key[16]; // memo entry the call's result goes to
+    private int[] savedErrors = new int[16];
+    private int depth;
+
+    private BytecodeVM(BytecodeProgram program, OutputSink sink, MemoTable memo, Budget budget) {
+        this.program = program;
+        this.sink = sink;
+        this.output = sink.buffer;
+        this.defined = new int[program.functionNames.length];
+        this.memo = memo;
+        this.budget = budget;
+    }
+
+    static String run(BytecodeProgram program) {
+        return run(program, new OutputSink(), null, Budget.unlimited());
+    }
+
+    static String run(BytecodeProgram program, OutputSink sink, MemoTable memo, Budget budget) {
+        BytecodeVM vm = new BytecodeVM(program, sink, memo, budget);
+        vm.execute();
+        return vm.output.toString();
+    }
+
+    private void execute() {
+        final int[] code = program.code;
+        final Object[] constants = program.constants;
+        Object[] regs = new Object[program.registerCount];
+        Arrays.fill(regs, 0, program.slotCount, Frame.UNASSIGNED);
+        int pc = 0;
+
+        while (true) {
+            int at = pc;
+            try {
+                while (true) {
+                    at = pc;
+                    switch (code[pc]) {
+                        case HALT -> {
+                            return;
+                        }
+                        case LOAD_CONST -> {
+                            regs[code[pc + 1]] = constants[code[pc + 2]];
+                            pc += 3;
+                        }
+                        case MOVE -> {
+                            regs[code[pc + 1]] = regs[code[pc + 2]];
+                            pc += 3;
+                        }
+                        case LET -> {
+                            regs[code[pc + 1]] = Values.toLetValue(regs[code[pc + 2]]);
+                            pc += 3;
+                        }
+                        case CHECK_VAR -> {
+                            if (regs[code[pc + 1]] == Frame.UNASSIGNED) {
+                                throw new RuntimeException("Undefined variable: " + constants[code[pc + 2]]);
+                            }
+                            pc += 3;
+                        }
+                        case ADD, SUBTRACT, MULTIPLY, DIVIDE, MOD, EQUAL, NOT_EQUAL,
+                                GREATER, LESS, GREATER_EQUAL, LESS_EQUAL -> {
+                            regs[code[pc + 1]] = binary(code[pc], regs[code[pc + 2]], regs[code[pc + 3]]);
+                            pc += 4;
+                        }
+                        case ADD_NUM -> {
+                            regs[code[pc + 1]] = number(regs[code[pc + 2]]) + number(regs[code[pc + 3]]);
+                            pc += 4;
+                        }
+                        case SUBTRACT_NUM -> {
+                            regs[code[pc + 1]] = number(regs[code[pc + 2]]) - number(regs[code[pc + 3]]);
+                            pc += 4;
+                        }
+                        case MULTIPLY_NUM -> {
+                            regs[code[pc + 1]] = number(regs[code[pc + 2]]) * number(regs[code[pc + 3]]);
+                            pc += 4;
+                        }
+                        case DIVIDE_NUM -> {
+                            double b = number(regs[code[pc + 3]]);
+                            if (b == 0.0) throw new RuntimeException("Division by zero");
+                            regs[code[pc + 1]] = number(regs[code[pc + 2]]) / b;
+                            pc += 4;
+                        }
+                        case MOD_NUM -> {
+                            double b = number(regs[code[pc + 3]]);
+                            if (b == 0.0) throw new RuntimeException("Illegal modulo use: modulo by zero");
+                            regs[code[pc + 1]] = number(regs[code[pc + 2]]) % b;
+                            pc += 4;
+                        }
+                        case EQUAL_NUM, NOT_EQUAL_NUM, GREATER_NUM, LESS_NUM, GREATER_EQUAL_NUM, LESS_EQUAL_NUM -> {
+                            regs[code[pc + 1]] = compare(code[pc] - NUMERIC,
+                                    number(regs[code[pc + 2]]), number(regs[code[pc + 3]]));
+                            pc += 4;
+                        }
+                        case JUMP_UNLESS -> {
+                            boolean holds = compare(code[pc + 1],
+                                    number(regs[code[pc + 2]]), number(regs[code[pc + 3]]));
+                            pc = holds ? pc + 5 : code[pc + 4];
+                        }
+                        case AND, OR -> {
+                            boolean isAnd = code[pc] == AND;
+                            boolean value = Values.logicalOperand(regs[code[pc + 2]], isAnd ? Operator.AND : Operator.OR);
+                            regs[code[pc + 1]] = value;
+                            pc = value == isAnd ? pc + 4 : code[pc + 3];
+                        }
+                        case NOT -> {
+                            Object value = regs[code[pc + 2]];
+                            if (!(value instanceof Boolean b)) {
+                                throw new RuntimeException("'not' can only be applied to booleans");
+                            }
+                            regs[code[pc + 1]] = !b;
+                            pc += 3;
+                        }
+                        case NEGATE -> {
+                            Object value = regs[code[pc + 2]];
+                            if (!(value instanceof Number)) {
+                                throw new RuntimeException("Unary '-' can only be applied to numbers");
+                            }
+                            regs[code[pc + 1]] = -Values.toDouble(value);
+                            pc += 3;
+                        }
+                        case JUMP -> {
+                            // Only loops jump backwards
+                            if (code[pc + 1] < pc) budget.tick();
+                            pc = code[pc + 1];
+                        }
+                        case JUMP_IF_SET -> {
+                            pc = regs[code[pc + 1]] != null ? code[pc + 2] : pc + 3;
+                        }
+                        case CLEAR -> {
+                            regs[code[pc + 1]] = null;
+                            pc += 2;
+                        }
+                        case JUMP_IF_FALSE -> {
+                            Object value = regs[code[pc + 1]];
+                            if (!(value instanceof Boolean b)) {
+                                throw new RuntimeException("Expected boolean expression in condition");
+                            }
+                            pc = b ? pc + 3 : code[pc + 2];
+                        }
+                        case PRINT -> {
+                            Values.appendPrintValue(output, regs[code[pc + 1]]);
+                            pc += 2;
+                        }
+                        case PRINT_NUM -> {
+                            Values.appendPrintNumber(output, number(regs[code[pc + 1]]));
+                            pc += 2;
+                        }
+                        case PRINT_SPACE -> {
+                            output.append(' ');
+                            pc += 1;
+                        }
+                        case PRINT_NEWLINE -> {
+                            output.append('\n');
+                            sink.lineWritten();
+                            pc += 1;
+                        }
+                        case ECHO -> {
+                            Values.appendCallResult(output, regs[code[pc + 1]]);
+                            sink.lineWritten();
+                            pc += 2;
+                        }
+                        case NEW_ARRAY -> {
+                            int base = code[pc + 2];
+                            int count = code[pc + 3];
+                            ElplArray values = new ElplArray(count, budget);
+                            for (int i = 0; i < count; i++) {
+                                values.add(regs[base + i]);
+                            }
+                            regs[code[pc + 1]] = values;
+                            pc += 4;
+                        }
+                        case CHECK_ARRAY -> {
+                            if (!(regs[code[pc + 1]] instanceof ElplArray)) {
+                                throw new RuntimeException("Variable '" + constants[code[pc + 2]] + "' is not an array");
+                            }
+                            pc += 3;
+                        }
+                        case ARRAY_GET -> {
+                            ElplArray list = (ElplArray) regs[code[pc + 2]];
+                            Object index = regs[code[pc + 3]];
+                            if (!(index instanceof Number n)) {
+                                throw new RuntimeException("Array index must be a number");
+                            }
+                            int idx = n.intValue();
+                            if (idx < 0 || idx >= list.size()) {
+                                throw new RuntimeException("Array index out of bounds");
+                            }
+                            regs[code[pc + 1]] = list.get(idx);
+                            pc += 4;
+                        }
+                        case ARRAY_SET -> {
+                            ElplArray list = (ElplArray) regs[code[pc + 1]];
+                            int i = (Integer) regs[code[pc + 2]];
+                            Object value = regs[code[pc + 3]];
+                            if (i < 0 || i > list.size()) {
+                                throw new RuntimeException("Index " + i + " out of bounds for length " + list.size());
+                            }
+                            if (i == list.size()) {
+                                list.add(value);
+                            } else {
+                                list.put(i, value);
+                            }
+                            pc += 4;
+                        }
+                        case TO_INT -> {
+                            regs[code[pc + 1]] = (int) Values.toDouble(regs[code[pc + 2]]);
+                            pc += 3;
+                        }
+                        case FOR_PREP -> {
+                            int base = code[pc + 1];
+                            regs[base + 2] = (Integer) regs[base] <= (Integer) regs[base + 1] ? 1 : -1;
+                            regs[code[pc + 2]] = regs[base];
+                            pc += 3;
+                        }
+                        case FOR_NEXT -> {
+                            int base = code[pc + 1];
+                            int step = (Integer) regs[base + 2];
+                            int counter = (Integer) regs[base] + step;
+                            int end = (Integer) regs[base + 1];
+                            if (step > 0 ? counter > end : counter < end) {
+                                pc += 4;
+                            } else {
+                                budget.tick();
+                                Integer value = counter;
+                                regs[base] = value;
+                                regs[code[pc + 2]] = value;
+                                pc = code[pc + 3];
+                            }
+                        }
+                        case REPEAT_LOOP -> {
+                            int counter = (Integer) regs[code[pc + 1]];
+                            if (counter >= code[pc + 2]) {
+                                pc = code[pc + 3];
+                            } else {
+                                regs[code[pc + 1]] = counter + 1;
+                                pc += 4;
+                            }
+                        }
+                        case DEFINE -> {
+                            defined[code[pc + 1]] = code[pc + 2] + 1;
+                            pc += 3;
+                        }
+                        case CHECK_CALL -> {
+                            function(code[pc + 1], code[pc + 2]);
+                            pc += 3;
+                        }
+                        case CALL -> {
+                            budget.tick();
+                            int function = function(code[pc + 2], code[pc + 4]);
+                            MemoTable.Key key = null;
+                            if (memo != null && program.pure[function]) {
+                                key = MemoTable.key(function,
+                                        Arrays.copyOfRange(regs, code[pc + 3], code[pc + 3] + code[pc + 4]));
+                                Object cached = key == null ? null : memo.get(key);
+                                if (cached != null) {
+                                    regs[code[pc + 1]] = cached;
+                                    pc += 5;
+                                    continue;
+                                }
+                            }
+                            if (depth + 1 > MAX_RECURSION_DEPTH) {
+                                throw new RuntimeException("Maximum recursion depth exceeded");
+                            }
+                            int[] saved = program.savedRegisters[function];
+                            Object[] values = new Object[saved.length];
+                            for (int i = 0; i < saved.length; i++) {
+                                values[i] = regs[saved[i]];
+                            }
+                            int[] params = program.parameterSlots[function];
+                            int base = code[pc + 3];
+                            for (int i = 0; i < params.length; i++) {
+                                regs[params[i]] = regs[base + i];
+                            }
+                            push(saved, values, pc + 5, pc, code[pc + 1], key);
+                            pc = program.functionEntries[function];
+                        }
+                        case TAIL_CALL -> {
+                            // The callee would save the same registers as the call
+                            // being left, so the parameters are rebound in place
+                            budget.tick();
+                            int function = function(code[pc + 1], code[pc + 3]);
+                            int[] params = program.parameterSlots[function];
+                            int base = code[pc + 2];
+                            for (int i = 0; i < params.length; i++) {
+                                regs[params[i]] = regs[base + i];
+                            }
+                            pc = program.functionEntries[function];
+                        }
+                        case CALL_BUILTIN -> {
+                            int count = code[pc + 4];
+                            Object[] args = new Object[count];
+                            System.arraycopy(regs, code[pc + 3], args, 0, count);
+                            regs[code[pc + 1]] = Builtins.apply((String) constants[code[pc + 2]], args, budget);
+                            pc += 5;
+                        }
+                        case RETURN, RETURN_NULL -> {
+                            Object value = code[pc] == RETURN ? regs[code[pc + 1]] : null;
+                            if (depth == 0) {
+                                output.append("Runtime Error: 'return' used outside of a function.\n");
+                                return;
+                            }
+                            depth--;
+                            if (savedKey[depth] != null && errorsReported == savedErrors[depth]) {
+                                memo.put(savedKey[depth], value);
+                            }
+                            restore(regs);
+                            regs[savedTarget[depth]] = value;
+                            pc = savedPc[depth];
+                        }
+                        case STOP -> {
+                            // Unwind to the innermost loop around a call site, or end the program
+                            int exit = -1;
+                            while (exit < 0 && depth > 0) {
+                                depth--;
+                                restore(regs);
+                                exit = find(program.loops, savedCallPc[depth]);
+                            }
+                            if (exit < 0) return;
+                            pc = exit;
+                        }
+                        case THROW -> throw new RuntimeException((String) constants[code[pc + 1]]);
+                        default -> throw new IllegalStateException("Bad opcode " + code[pc] + " at " + pc);
+                    }
+                }
+            } catch (RunAbortedException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                // Report and resume after the innermost statement, as Interpreter does
+                output.append("Runtime Error: ")
+                        .append(e.getMessage() != null ? e.getMessage() : "Unknown error")
+                        .append("\n");
+                sink.lineWritten();
+                errorsReported++;
+                pc = find(program.handlers, at);
+                if (pc < 0) return;
+            }
+        }
+    }
+
+    private Object binary(int opcode, Object l, Object r) {
+        if ((l instanceof Double || l instanceof Integer) && (r instanceof Double || r instanceof Integer)) {
+            double a = ((Number) l).doubleValue();
+            double b = ((Number) r).doubleValue();
+            switch (opcode) {
+                case ADD: return a + b;
+                case SUBTRACT: return a - b;
+                case MULTIPLY: return a * b;
+                case DIVIDE:
+                    if (b == 0.0) throw new RuntimeException("Division by zero");
+                    return a / b;
+                case MOD:
+                    if (b == 0.0) throw new RuntimeException("Illegal modulo use: modulo by zero");
+                    return a % b;
+                case GREATER: return a > b;
+                case LESS: return a < b;
+                case GREATER_EQUAL: return a >= b;
+                case LESS_EQUAL: return a <= b;
+                case EQUAL: return a == b;
+                case NOT_EQUAL: return a != b;
+                default: break;
+            }
+        }
+        return GenericBinaryNode.apply(OPERATORS[opcode], l, r);
+    }
+
+    // A register TypeInference knows holds a number
+    private static double number(Object value) {
+        return value instanceof Integer i ? i : (Double) value;
+    }
+
+    private static boolean compare(int opcode, double a, double b) {
+        return switch (opcode) {
+            case GREATER -> a > b;
+            case LESS -> a < b;
+            case GREATER_EQUAL -> a >= b;
+            case LESS_EQUAL -> a <= b;
+            case EQUAL -> a == b;
+            case NOT_EQUAL -> a != b;
+            default -> throw new IllegalStateException("Bad comparison " + opcode);
+        };
+    }
+
+    // Resolves a call target, with Interpreter's checks and messages
+    private int function(int name, int argc) {
+        int function = defined[name] - 1;
+        if (function < 0) {
+            throw new RuntimeException("Undefined function: " + program.functionNames[name]);
+        }
+        int expected = program.parameterSlots[function].length;
+        if (argc != expected) {
+            throw new RuntimeException("Function '" + program.functionNames[name] + "' expects " +
+                    expected + " arguments, got " + argc);
+        }
+        return function;
+    }
+
+    private void push(int[] saved, Object[] values, int returnPc, int callPc, int target, MemoTable.Key key) {
+        if (depth == savedPc.length) {
+            int size = depth * 2;
+            savedRegisters = Arrays.copyOf(savedRegisters, size);
+            savedValues = Arrays.copyOf(savedValues, size);
+            savedPc = Arrays.copyOf(savedPc, size);
+            savedCallPc = Arrays.copyOf(savedCallPc, size);
+            savedTarget = Arrays.copyOf(savedTarget, size);
+            savedKey = Arrays.copyOf(savedKey, size);
+            savedErrors = Arrays.copyOf(savedErrors, size);
+        }
+        savedRegisters[depth] = saved;
+        savedValues[depth] = values;
+        savedPc[depth] = returnPc;
+        savedCallPc[depth] = callPc;
+        savedTarget[depth] = target;
+        savedKey[depth] = key;
+        savedErrors[depth] = errorsReported;
+        depth++;
+    }
+
+    // Puts back what the call at depth saved
+    private void restore(Object[] regs) {
+        int[] saved = savedRegisters[depth];
+        Object[] values = savedValues[depth];
+        for (int i = 0; i < saved.length; i++) {
+            regs[saved[i]] = values[i];
+        }
+        savedValues[depth] = null;
+        savedKey[depth] = null;
+    }
+}
@@ -0,0 +1,315 @@
+package com.syed.elpl_backend;
+
+import java.io.*;
+import java.util.*;
+
+// Minimal class file writer for the tier-2 compiler. Emits version 49 class
+// files, which the verifier checks by type inference, so no StackMapTable
+// frames are needed.
+final class ClassAssembler {
+    private static final int VERSION = 49;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+    private final List<MethodAssembler> methods = new ArrayList<>();
+
+    final String className;
+
+    ClassAssembler(String className) {
+        this.className = className;
+    }
+
+    MethodAssembler method(String name, String descriptor) {
+        MethodAssembler method = new MethodAssembler(this, name, descriptor);
+        methods.add(method);
+        return method;
+    }
+
+    byte[] toBytes() {
+        try {
+            int thisClass = classRef(className);
+            int superClass = classRef("java/lang/Object");
+            int codeName = utf8("Code");
+            List<int[]> methodNames = new ArrayList<>();
+            for (MethodAssembler m : methods) {
+                methodNames.add(new int[] { utf8(m.name), utf8(m.descriptor) });
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            pool.flush();
+            poolBytes.writeTo(out);
+            out.writeShort(0x1010); // ACC_FINAL | ACC_SYNTHETIC
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(methods.size());
+            for (int i = 0; i < methods.size(); i++) {
+                MethodAssembler m = methods.get(i);
+                byte[] code = m.code();
+                out.writeShort(0x0008); // ACC_STATIC
+                out.writeShort(methodNames.get(i)[0]);
+                out.writeShort(methodNames.get(i)[1]);
+                out.writeShort(1);
+                out.writeShort(codeName);
+                out.writeInt(12 + code.length);
+                out.writeShort(m.maxStack);
+                out.writeShort(m.maxLocals);
+                out.writeInt(code.length);
+                out.write(code);
+                out.writeShort(0); // exception table
+                out.writeShort(0); // attributes
+            }
+            out.writeShort(0); // class attributes
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    int utf8(String value) {
+        return entry("U" + value, 1, () -> {
+            pool.writeByte(1);
+            pool.writeUTF(value);
+        });
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return entry("C" + internalName, 1, () -> {
+            pool.writeByte(7);
+            pool.writeShort(name);
+        });
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    int doubleConst(double value) {
+        return entry("D" + Double.doubleToRawLongBits(value), 2, () -> {
+            pool.writeByte(6);
+            pool.writeDouble(value);
+        });
+    }
+
+    int intConst(int value) {
+        return entry("I" + value, 1, () -> {
+            pool.writeByte(3);
+            pool.writeInt(value);
+        });
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int typeIndex = utf8(descriptor);
+        int nameAndType = entry("N" + name + ":" + descriptor, 1, () -> {
+            pool.writeByte(12);
+            pool.writeShort(nameIndex);
+            pool.writeShort(typeIndex);
+        });
+        return entry(tag + owner + "." + name + ":" + descriptor, 1, () -> {
+            pool.writeByte(tag);
+            pool.writeShort(ownerIndex);
+            pool.writeShort(nameAndType);
+        });
+    }
+
+    private interface PoolWriter {
+        void write() throws IOException;
+    }
+
+    private int entry(String key, int width, PoolWriter writer) {
+        Integer existing = poolIndex.get(key);
+        if (existing != null) return existing;
+        try {
+            writer.write();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int index = poolCount;
+        poolCount += width;
+        if (poolCount > 0xFFFF) throw new IllegalStateException("constant pool too large");
+        poolIndex.put(key, index);
+        return index;
+    }
+}
+
+final class Label {
+    int position = -1;
+    int stack = -1;
+    final List<int[]> fixups = new ArrayList<>(); // {opcode position, offset position}
+}
+
+// Bytecode for one static method. Tracks the operand stack depth as
+// instructions are emitted so max_stack can be written without a separate
+// data-flow pass.
+final class MethodAssembler {
+    static final int ICONST_0 = 3, ICONST_1 = 4, DCONST_0 = 14, DCONST_1 = 15,
+            ILOAD = 21, DLOAD = 24, ALOAD = 25, ISTORE = 54, DSTORE = 57,
+            AALOAD = 50, AASTORE = 83, POP = 87, DUP = 89, DUP2 = 92,
+            IADD = 96, DADD = 99, DSUB = 103, DMUL = 107, DDIV = 111, DREM = 115, DNEG = 119,
+            IXOR = 130, I2D = 135, D2I = 142,
+            DCMPL = 151, DCMPG = 152,
+            IFEQ = 153, IFNE = 154, IFLT = 155, IFGE = 156, IFGT = 157, IFLE = 158,
+            IF_ICMPLT = 161, IF_ICMPGE = 162, IF_ICMPGT = 163, IF_ICMPLE = 164,
+            GOTO = 167, DALOAD = 49, DRETURN = 175, RETURN = 177, ATHROW = 191;
+
+    final ClassAssembler owner;
+    final String name;
+    final String descriptor;
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private final List<Label> labels = new ArrayList<>();
+    private int stack;
+    private boolean reachable = true;
+    int maxStack;
+    int maxLocals;
+
+    MethodAssembler(ClassAssembler owner, String name, String descriptor) {
+        this.owner = owner;
+        this.name = name;
+        this.descriptor = descriptor;
+    }
+
+    int newLocal(int width) {
+        int index = maxLocals;
+        maxLocals += width;
+        return index;
+    }
+
+    void reserveLocals(int count) {
+        maxLocals = Math.max(maxLocals, count);
+    }
+
+    int position() {
+        return code.size();
+    }
+
+    // Plain instruction with no operands and a known stack effect
+    void op(int opcode, int stackDelta) {
+        code.write(opcode);
+        adjust(stackDelta);
+        if (opcode == ATHROW || opcode == RETURN || opcode == DRETURN || opcode == GOTO) {
+            reachable = false;
+        }
+    }
+
+    void local(int opcode, int index, int stackDelta) {
+        if (index > 255) throw new IllegalStateException("too many locals");
+        code.write(opcode);
+        code.write(index);
+        adjust(stackDelta);
+    }
+
+    void iinc(int index, int delta) {
+        code.write(132);
+        code.write(index);
+        code.write(delta);
+    }
+
+    void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            code.write(ICONST_0 + value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.write(17); // sipush
+            writeShort(value);
+        } else {
+            code.write(19); // ldc_w
+            writeShort(owner.intConst(value));
+        }
+        adjust(1);
+    }
+
+    void pushDouble(double value) {
+        if (Double.doubleToRawLongBits(value) == 0L) {
+            code.write(DCONST_0);
+        } else if (value == 1.0) {
+            code.write(DCONST_1);
+        } else {
+            code.write(20); // ldc2_w
+            writeShort(owner.doubleConst(value));
+        }
+        adjust(2);
+    }
+
+    void invokeStatic(String className, String method, String desc, int stackDelta) {
+        code.write(184);
+        writeShort(owner.methodRef(className, method, desc));
+        adjust(stackDelta);
+    }
+
+    void invokeVirtual(String className, String method, String desc, int stackDelta) {
+        code.write(182);
+        writeShort(owner.methodRef(className, method, desc));
+        adjust(stackDelta);
+    }
+
+    void getStatic(String className, String field, String desc) {
+        code.write(178);
+        writeShort(owner.fieldRef(className, field, desc));
+        adjust(1);
+    }
+
+    void jump(int opcode, Label target) {
+        int at = code.size();
+        code.write(opcode);
+        int popped = switch (opcode) {
+            case GOTO -> 0;
+            case IF_ICMPLT, IF_ICMPGE, IF_ICMPGT, IF_ICMPLE -> 2;
+            default -> 1;
+        };
+        adjust(-popped);
+        if (target.stack < 0) target.stack = stack;
+        target.fixups.add(new int[] { at, code.size() });
+        writeShort(0);
+        if (!labels.contains(target)) labels.add(target);
+        if (opcode == GOTO) reachable = false;
+    }
+
+    void mark(Label label) {
+        label.position = code.size();
+        if (!labels.contains(label)) labels.add(label);
+        if (!reachable && label.stack >= 0) stack = label.stack;
+        if (label.stack < 0) label.stack = stack;
+        reachable = true;
+    }
+
+    byte[] code() {
+        byte[] bytes = code.toByteArray();
+        if (bytes.length > 0xFFFF) throw new IllegalStateException("method too large");
+        for (Label label : labels) {
+            for (int[] fixup : label.fixups) {
+                if (label.position < 0) throw new IllegalStateException("unbound label");
+                int offset = label.position - fixup[0];
+                if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                    throw new IllegalStateException("branch offset out of range");
+                }
+                bytes[fixup[1]] = (byte) (offset >> 8);
+                bytes[fixup[1] + 1] = (byte) offset;
+            }
+        }
+        return bytes;
+    }
+
+    private void adjust(int delta) {
+        stack += delta;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    private void writeShort(int value) {
+        code.write((value >> 8) & 0xFF);
+        code.write(value & 0xFF);
+    }
+}
@@ -0,0 +1,175 @@
+package com.syed.elpl_backend;
+
+import java.util.*;
+
+// An editor's copy of one source, kept for diagnostics while it is edited.
+// Edits are applied as they arrive, and check() lexes and parses again only
+// what they touched: Lexer.relex re-lexes around the edited characters, and a
+// top-level statement is reused when none of its tokens changed, nor the
+// token after it that the parser peeked at. Parsing a statement depends on
+// nothing but its tokens, so the result is the same as parsing the whole text.
+// The statements are never resolved, so nothing is shared with ProgramCache.
+final class Document {
+    private String text;
+
+    // Tokens of the text as of the last check that lexed it, or null when
+    // the text hasn't lexed yet, and the statements parsed from them
+    private TokenBuffer tokens;
+    private List<Statement> statements = new ArrayList<>();
+
+    // Statements the text parses to before its first error, as a check of
+    // the whole text would count them: none when it doesn't lex
+    private int statementCount;
+
+    // Edits since those tokens, merged into one: the lexed text's
+    // [editStart, editEnd) became editLength characters. editStart < 0 when
+    // there are none.
+    private int editStart = -1;
+    private int editEnd;
+    private int editLength;
+
+    private int reparsed;
+
+    Document(String text) {
+        this.text = text;
+    }
+
+    // Replaces the characters [start, end) with 'replacement'
+    void edit(int start, int end, String replacement) {
+        if (start < 0 || end < start || end > text.length()) {
+            throw new IllegalArgumentException("Edit " + start + ".." + end
+                    + " is outside the document (length " + text.length() + ")");
+        }
+        text = new StringBuilder(text.length() + replacement.length() - (end - start))
+                .append(text, 0, start).append(replacement).append(text, end, text.length()).toString();
+        if (tokens == null) return; // the next check lexes everything
+
+        int shift = replacement.length() - (end - start);
+        if (editStart < 0) {
+            editStart = start;
+            editEnd = end;
+            editLength = replacement.length();
+        } else {
+            // Both edits fall inside [from, to) of the text before this one;
+            // past the earlier edit, that text is the lexed one moved by its shift
+            int from = Math.min(editStart, start);
+            int to = Math.max(editStart + editLength, end);
+            editEnd = to - (editLength - (editEnd - editStart));
+            editStart = from;
+            editLength = to - from + shift;
+        }
+    }
+
+    // Lexes and parses what changed since the last check. Returns the first
+    // Lexer or Parser error, or null when the text parses.
+    String check() {
+        reparsed = 0;
+        try {
+            if (tokens == null) {
+                tokens = new Lexer(text).lex();
+                statements.clear();
+            } else if (editStart >= 0) {
+                Lexer lexer = new Lexer(text);
+                int before = tokens.size();
+                lexer.relex(tokens, editStart, editEnd, editLength);
+                moveStatements(lexer.keptTokens, lexer.resumedAt, tokens.size() - before);
+            }
+            editStart = -1;
+        } catch (RuntimeException e) {
+            // The edits stay pending against the last tokens
+            statementCount = 0;
+            return e.getMessage();
+        }
+        return parse();
+    }
+
+    int statementCount() {
+        return statementCount;
+    }
+
+    // How many statements the last check parsed rather than reused
+    int reparsed() {
+        return reparsed;
+    }
+
+    // Drops the statements that depended on re-lexed tokens and renumbers
+    // the ones after them
+    private void moveStatements(int kept, int resumedAt, int shift) {
+        statements.removeIf(s -> s.first + s.count >= kept && s.first < resumedAt);
+        for (Statement s : statements) {
+            if (s.first >= resumedAt) s.first += shift;
+        }
+    }
+
+    private String parse() {
+        Parser parser = new Parser(tokens);
+        List<Statement> parsed = new ArrayList<>(statements.size() + 1);
+        int next = 0; // first old statement not yet passed
+        try {
+            while (!parser.atEnd()) {
+                int at = parser.position();
+                while (next < statements.size() && statements.get(next).first < at) {
+                    next++;
+                }
+                if (next < statements.size() && statements.get(next).first == at) {
+                    Statement reused = statements.get(next++);
+                    parsed.add(reused);
+                    parser.seek(at + reused.count);
+                } else {
+                    ASTNode node = parser.parseStatement();
+                    parsed.add(new Statement(node, at, parser.position() - at));
+                    reparsed++;
+                }
+            }
+        } catch (RuntimeException e) {
+            // Statements past the error are still good for the next check,
+            // but don't count yet
+            statementCount = parsed.size();
+            parsed.addAll(statements.subList(next, statements.size()));
+            statements = parsed;
+            return e.getMessage();
+        }
+        statements = parsed;
+        statementCount = parsed.size();
+        return null;
+    }
+
+    // A top-level statement and the tokens it was parsed from
+    private static final class Statement {
+        final ASTNode node;
+        int first;
+        final int count;
+
+        Statement(ASTNode node, int first, int count) {
+            this.node = node;
+            this.first = first;
+            this.count = count;
+        }
+    }
+}
+
+// The open documents by id. Once there are more than maxEntries, the least
+// recently used one is dropped and its editor has to send the whole text again.
+final class Documents {
+    private final LinkedHashMap<String, Document> open;
+
+    Documents(int maxEntries) {
+        open = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Document> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    synchronized Document open(String id, String text) {
+        Document document = new Document(text);
+        open.put(id, document);
+        return document;
+    }
+
+    // null when the document isn't open
+    synchronized Document get(String id) {
+        return open.get(id);
+    }
+}
@@ -1,8 +1,18 @@
 package com.syed.elpl_backend;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -11,18 +21,147 @@ import java.util.Map;
 public class ELPLController {
     
     private final InterpreterService interpreterService;
+    private final ObjectMapper json;
 
     @Autowired
-    public ELPLController(InterpreterService interpreterService) {
+    public ELPLController(InterpreterService interpreterService, ObjectMapper json) {
         this.interpreterService = interpreterService;
+        this.json = json;
     }
 
+    // "trace": "true" in the payload returns { output, trace, droppedEvents } as JSON.
+    // "optimizations": "true" returns { output, optimizations }, what the
+    // optimizer changed in the program before it ran.
+    // "memoize": "true" or "false" turns memoization of pure functions on or off
+    // for this run; without it the elpl.memo.enabled setting applies.
+    // A client that disconnects doesn't cancel the run: the container only
+    // notices when a response is written, so the run goes on until it ends
+    // or reaches its step or time limit (elpl.limits.*).
     @PostMapping("/run")
-    public String run(@RequestBody Map<String, String> payload) {
+    public Object run(@RequestBody Map<String, String> payload) {
         String code = payload.get("program");
         if (code == null) {
             return "Error: no 'program' field in request";
         }
-        return interpreterService.run(code);
+        Engine engine;
+        try {
+            engine = Engine.fromName(payload.get("engine"));
+        } catch (IllegalArgumentException e) {
+            return "Error: " + e.getMessage();
+        }
+        Boolean memoize = memoize(payload);
+        if (Boolean.parseBoolean(payload.get("trace"))) {
+            return interpreterService.runTraced(code, engine, memoize);
+        }
+        if (Boolean.parseBoolean(payload.get("optimizations"))) {
+            return interpreterService.runReported(code, engine, memoize);
+        }
+        return interpreterService.run(code, engine, memoize);
+    }
+
+    // Same as /run, but output is sent as chunked text while the program runs.
+    // A client that disconnects cancels the run when its next output fails to
+    // send. A run that prints nothing more goes on until its step or time limit.
+    @PostMapping(value = "/run/stream", produces = MediaType.TEXT_PLAIN_VALUE)
+    public StreamingResponseBody runStream(@RequestBody Map<String, String> payload) {
+        String code = payload.get("program");
+        if (code == null) {
+            return out -> out.write("Error: no 'program' field in request".getBytes(StandardCharsets.UTF_8));
+        }
+        Engine engine;
+        try {
+            engine = Engine.fromName(payload.get("engine"));
+        } catch (IllegalArgumentException e) {
+            return out -> out.write(("Error: " + e.getMessage()).getBytes(StandardCharsets.UTF_8));
+        }
+        Boolean memoize = memoize(payload);
+        return out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            interpreterService.run(code, engine, new StreamingSink(writer), Tracer.NONE, memoize);
+        };
+    }
+
+    // Runs many programs in one request, concurrently. "programs" is an array
+    // of sources; "engine" and "memoize" apply to all of them. Each result is
+    // one line of JSON, {"index": i, "output": "..."}, sent as soon as it can
+    // be: in the order of "programs", or as each finishes when "ordered" is
+    // false.
+    @PostMapping(value = "/run/batch", produces = "application/x-ndjson")
+    public StreamingResponseBody runBatch(@RequestBody Map<String, Object> payload) {
+        List<String> programs = new ArrayList<>();
+        Engine engine;
+        try {
+            if (!(payload.get("programs") instanceof List<?> list)) {
+                throw new IllegalArgumentException("no 'programs' array in request");
+            }
+            for (Object program : list) {
+                if (!(program instanceof String code)) {
+                    throw new IllegalArgumentException("'programs' must hold strings");
+                }
+                programs.add(code);
+            }
+            engine = Engine.fromName(string(payload.get("engine")));
+        } catch (IllegalArgumentException e) {
+            return out -> out.write(("Error: " + e.getMessage()).getBytes(StandardCharsets.UTF_8));
+        }
+        Boolean memoize = flag(payload.get("memoize"));
+        boolean ordered = !Boolean.FALSE.equals(flag(payload.get("ordered")));
+        return out -> {
+            try {
+                interpreterService.runBatch(programs, engine, memoize, ordered, (index, output) -> {
+                    Map<String, Object> result = new LinkedHashMap<>();
+                    result.put("index", index);
+                    result.put("output", output);
+                    out.write(json.writeValueAsBytes(result));
+                    out.write('\n');
+                    out.flush();
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    private static Boolean memoize(Map<String, String> payload) {
+        return flag(payload.get("memoize"));
+    }
+
+    // JSON booleans or "true"/"false"; null when absent
+    private static Boolean flag(Object value) {
+        return value == null ? null : Boolean.parseBoolean(value.toString());
+    }
+
+    private static String string(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    // Diagnostics for editor integrations, which call this on every change.
+    // "document" names the editor's copy: "program" sets its whole text, or
+    // "start" and "end" (character offsets) with "text" replace part of it.
+    // Only the statements an edit touched are lexed and parsed again.
+    @PostMapping("/check")
+    public Map<String, Object> check(@RequestBody Map<String, String> payload) {
+        String id = payload.get("document");
+        if (id == null) {
+            return Map.of("error", "no 'document' field in request");
+        }
+        String code = payload.get("program");
+        if (code != null) {
+            return interpreterService.check(id, code);
+        }
+        int start;
+        int end;
+        try {
+            start = Integer.parseInt(payload.get("start"));
+            end = Integer.parseInt(payload.get("end"));
+        } catch (NumberFormatException e) {
+            return Map.of("error", "an edit needs 'start' and 'end' character offsets");
+        }
+        return interpreterService.edit(id, start, end, payload.getOrDefault("text", ""));
+    }
+
+    @GetMapping("/cache")
+    public Map<String, Object> cache() {
+        return interpreterService.cacheStats();
     }
 }
@@ -0,0 +1,160 @@
+package com.syed.elpl_backend;
+
+import java.util.*;
+
+// Value of an ELPL 'Array'. Elements live unboxed in a double[] while every
+// one of them is a number; the first non-number stored moves the array to
+// boxed storage for good. Numbers always read back as Double. Storage is
+// charged to the run's Budget as it is allocated.
+final class ElplArray extends AbstractList<Object> implements RandomAccess {
+    private static final int SLOT_BYTES = 8;
+
+    private double[] numbers; // null once the array holds a non-number
+    private Object[] values;
+    private int size;
+    private final Budget budget;
+
+    ElplArray(int capacity, Budget budget) {
+        this.budget = budget;
+        capacity = Math.max(capacity, 4);
+        budget.allocate((long) capacity * SLOT_BYTES);
+        numbers = new double[capacity];
+    }
+
+    // A numeric array of 'size' zeros
+    static ElplArray zeros(int size, Budget budget) {
+        ElplArray array = new ElplArray(size, budget);
+        array.size = size;
+        return array;
+    }
+
+    // Whether the array was created by the run (or thread of a run) 'budget' belongs to
+    boolean createdBy(Budget budget) {
+        return this.budget == budget;
+    }
+
+    boolean isNumeric() {
+        return numbers != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Object get(int index) {
+        Objects.checkIndex(index, size);
+        return numbers != null ? (Object) numbers[index] : values[index];
+    }
+
+    // Only valid while isNumeric()
+    double getDouble(int index) {
+        Objects.checkIndex(index, size);
+        return numbers[index];
+    }
+
+    @Override
+    public Object set(int index, Object value) {
+        Object old = get(index);
+        put(index, value);
+        return old;
+    }
+
+    // set() without boxing the previous element
+    void put(int index, Object value) {
+        Objects.checkIndex(index, size);
+        if (numbers != null) {
+            if (value instanceof Double d) {
+                numbers[index] = d;
+                return;
+            }
+            if (value instanceof Integer i) {
+                numbers[index] = i;
+                return;
+            }
+            generalize();
+        }
+        values[index] = value;
+    }
+
+    void setDouble(int index, double value) {
+        Objects.checkIndex(index, size);
+        if (numbers != null) {
+            numbers[index] = value;
+        } else {
+            values[index] = value;
+        }
+    }
+
+    @Override
+    public boolean add(Object value) {
+        grow();
+        put(size - 1, value);
+        return true;
+    }
+
+    void addDouble(double value) {
+        grow();
+        setDouble(size - 1, value);
+    }
+
+    // Splits across threads from 'threshold' elements on (see ParallelArrays)
+    void reverse(int threshold) {
+        ParallelArrays.forEach(size / 2, threshold, this::swapMirrored);
+    }
+
+    // Swaps each element in [from, to) with its mirror image from the end
+    private void swapMirrored(int from, int to) {
+        for (int left = from, right = size - 1 - from; left < to; left++, right--) {
+            if (numbers != null) {
+                double temp = numbers[left];
+                numbers[left] = numbers[right];
+                numbers[right] = temp;
+            } else {
+                Object temp = values[left];
+                values[left] = values[right];
+                values[right] = temp;
+            }
+        }
+    }
+
+    // Sorts ascending in place. Every element must be a number.
+    void sort(int threshold) {
+        boolean parallel = ParallelArrays.split(size, threshold);
+        if (numbers == null) {
+            Comparator<Object> order = Comparator.comparingDouble(o -> ((Number) o).doubleValue());
+            if (parallel) Arrays.parallelSort(values, 0, size, order); else Arrays.sort(values, 0, size, order);
+        } else if (parallel) {
+            Arrays.parallelSort(numbers, 0, size);
+        } else {
+            Arrays.sort(numbers, 0, size);
+        }
+        modCount++;
+    }
+
+    // Makes room for one more element
+    private void grow() {
+        int capacity = numbers != null ? numbers.length : values.length;
+        if (size == capacity) {
+            int newCapacity = Math.max(capacity * 2, 4);
+            budget.allocate((long) newCapacity * SLOT_BYTES);
+            if (numbers != null) {
+                numbers = Arrays.copyOf(numbers, newCapacity);
+            } else {
+                values = Arrays.copyOf(values, newCapacity);
+            }
+        }
+        size++;
+        modCount++;
+    }
+
+    private void generalize() {
+        budget.allocate((long) numbers.length * SLOT_BYTES);
+        values = new Object[numbers.length];
+        for (int i = 0; i < size; i++) {
+            values[i] = numbers[i];
+        }
+        numbers = null;
+    }
+}
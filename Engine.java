@@ -0,0 +1,16 @@
+package com.syed.elpl_backend;
+
+// Execution engines a program can run on, chosen per request
+public enum Engine {
+    TREE,   // Interpreter walking the AST
+    NODES,  // self-specializing executable node tree (NodeCompiler)
+    VM;     // register bytecode run by BytecodeVM
+
+    public static Engine fromName(String name) {
+        if (name == null || name.isBlank()) return TREE;
+        for (Engine engine : values()) {
+            if (engine.name().equalsIgnoreCase(name.trim())) return engine;
+        }
+        throw new IllegalArgumentException("Unknown engine: " + name);
+    }
+}
@@ -0,0 +1,1356 @@
+package com.syed.elpl_backend;
+
+import java.util.*;
+
+// Executable node tree built by NodeCompiler from the parsed AST.
+// Each node runs through one virtual execute(Frame) call instead of the
+// instanceof ladder in Interpreter. Operator nodes start uninitialized and
+// rewrite themselves in their parent into a type-specialized version once
+// they have seen their operand types.
+public abstract class ExecNode {
+    ExecNode parent;
+
+    final <T extends ExecNode> T adopt(T child) {
+        if (child != null) child.parent = this;
+        return child;
+    }
+
+    final <T extends ExecNode> T[] adoptAll(T[] children) {
+        for (T child : children) adopt(child);
+        return children;
+    }
+
+    // Swaps this node for a specialized version in the parent
+    final <T extends ExecNode> T replace(T replacement) {
+        replacement.parent = parent;
+        parent.replaceChild(this, replacement);
+        return replacement;
+    }
+
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        throw new IllegalStateException(getClass().getSimpleName() + " has no replaceable children");
+    }
+
+    static ExprNode swap(ExprNode field, ExecNode oldChild, ExecNode newChild) {
+        return field == oldChild ? (ExprNode) newChild : field;
+    }
+
+    static void swapAll(ExprNode[] fields, ExecNode oldChild, ExecNode newChild) {
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = swap(fields[i], oldChild, newChild);
+        }
+    }
+}
+
+// Thrown by the typed execute methods when a value has an unexpected type.
+// Stackless: it only carries the value back to the node that rewrites itself.
+final class UnexpectedResultException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    final Object result;
+
+    UnexpectedResultException(Object result) {
+        super(null, null, false, false);
+        this.result = result;
+    }
+}
+
+// Per-run state shared by the nodes of one compiled program
+final class ExecContext {
+    final OutputSink sink;
+    final StringBuilder output;
+    final Map<String, ExecFunction> functions = new HashMap<>();
+    final MemoTable memo; // null unless the run asked for memoization
+    final Budget budget;  // charged once per loop iteration and function call, and for arrays
+    int errorsReported;   // a call that reported an error isn't memoized
+    int recursionDepth = 0;
+    Object returnValue;
+    // Set instead of returnValue when the RETURN status is a tail call
+    ExecFunction tailCall;
+    Object[] tailArgs;
+
+    ExecContext(OutputSink sink, MemoTable memo, Budget budget) {
+        this.sink = sink;
+        this.output = sink.buffer;
+        this.memo = memo;
+        this.budget = budget;
+    }
+
+    void reportError(RuntimeException e) {
+        output.append("Runtime Error: ")
+                .append((e.getMessage() != null) ? e.getMessage() : "Unknown error")
+                .append("\n");
+        sink.lineWritten();
+        errorsReported++;
+    }
+}
+
+final class ExecFunction {
+    final String name;
+    final int[] parameterSlots;
+    final int[] localSlots;
+    final boolean pure;
+    final SequenceNode body;
+
+    ExecFunction(String name, int[] parameterSlots, int[] localSlots, boolean pure, SequenceNode body) {
+        this.name = name;
+        this.parameterSlots = parameterSlots;
+        this.localSlots = localSlots;
+        this.pure = pure;
+        this.body = body;
+    }
+}
+
+// ---------------------------------------------------------------------------
+// Expressions
+
+abstract class ExprNode extends ExecNode {
+    abstract Object execute(Frame frame);
+
+    double executeDouble(Frame frame) throws UnexpectedResultException {
+        Object value = execute(frame);
+        if (value instanceof Double d) return d;
+        if (value instanceof Integer i) return i;
+        throw new UnexpectedResultException(value);
+    }
+
+    boolean executeBoolean(Frame frame) throws UnexpectedResultException {
+        Object value = execute(frame);
+        if (value instanceof Boolean b) return b;
+        throw new UnexpectedResultException(value);
+    }
+}
+
+final class ConstantNode extends ExprNode {
+    final Object value;
+
+    ConstantNode(Object value) {
+        this.value = value;
+    }
+
+    @Override
+    Object execute(Frame frame) {
+        return value;
+    }
+}
+
+final class NumberConstantNode extends ExprNode {
+    final double value;
+    final Double boxed;
+
+    NumberConstantNode(double value) {
+        this.value = value;
+        this.boxed = value;
+    }
+
+    @Override
+    Object execute(Frame frame) {
+        return boxed;
+    }
+
+    @Override
+    double executeDouble(Frame frame) {
+        return value;
+    }
+}
+
+final class ReadVarNode extends ExprNode {
+    final int slot;
+    final String name;
+
+    ReadVarNode(int slot, String name) {
+        this.slot = slot;
+        this.name = name;
+    }
+
+    @Override
+    Object execute(Frame frame) {
+        Object value = frame.slots[slot];
+        if (value == Frame.UNASSIGNED) {
+            throw new RuntimeException("Undefined variable: " + name);
+        }
+        return value;
+    }
+}
+
+final class ArrayReadNode extends ExprNode {
+    final int slot;
+    final String name;
+    ExprNode index;
+
+    ArrayReadNode(int slot, String name, ExprNode index) {
+        this.slot = slot;
+        this.name = name;
+        this.index = adopt(index);
+    }
+
+    @Override
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        index = swap(index, oldChild, newChild);
+    }
+
+    @Override
+    Object execute(Frame frame) {
+        ElplArray list = array(frame);
+        return list.get(elementIndex(frame, list));
+    }
+
+    @Override
+    double executeDouble(Frame frame) throws UnexpectedResultException {
+        ElplArray list = array(frame);
+        int idx = elementIndex(frame, list);
+        if (list.isNumeric()) {
+            return list.getDouble(idx);
+        }
+        Object value = list.get(idx);
+        if (value instanceof Double d) return d;
+        if (value instanceof Integer i) return i;
+        throw new UnexpectedResultException(value);
+    }
+
+    private ElplArray array(Frame frame) {
+        if (!(frame.slots[slot] instanceof ElplArray list)) {
+            throw new RuntimeException("Variable '" + name + "' is not an array");
+        }
+        return list;
+    }
+
+    private int elementIndex(Frame frame, ElplArray list) {
+        int idx;
+        try {
+            idx = (int) index.executeDouble(frame);
+        } catch (UnexpectedResultException e) {
+            throw new RuntimeException("Array index must be a number");
+        }
+        if (idx < 0 || idx >= list.size()) {
+            throw new RuntimeException("Array index out of bounds");
+        }
+        return idx;
+    }
+}
+
+// See LoopOptimizer: the slot holds the value once it has been computed
+// since the loop was entered
+final class InvariantNode extends ExprNode {
+    final int slot;
+    ExprNode expr;
+
+    InvariantNode(int slot, ExprNode expr) {
+        this.slot = slot;
+        this.expr = adopt(expr);
+    }
+
+    @Override
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        expr = swap(expr, oldChild, newChild);
+    }
+
+    @Override
+    Object execute(Frame frame) {
+        Object value = frame.slots[slot];
+        if (value == null) {
+            value = expr.execute(frame);
+            frame.slots[slot] = value;
+        }
+        return value;
+    }
+
+    @Override
+    double executeDouble(Frame frame) throws UnexpectedResultException {
+        Object value = execute(frame);
+        if (value instanceof Double d) return d;
+        if (value instanceof Integer i) return i;
+        throw new UnexpectedResultException(value);
+    }
+
+    @Override
+    boolean executeBoolean(Frame frame) throws UnexpectedResultException {
+        Object value = execute(frame);
+        if (value instanceof Boolean b) return b;
+        throw new UnexpectedResultException(value);
+    }
+}
+
+// The running value ForStmtNode keeps for 'i multiply c'
+final class InductionNode extends ExprNode {
+    final int slot;
+
+    InductionNode(int slot) {
+        this.slot = slot;
+    }
+
+    @Override
+    Object execute(Frame frame) {
+        return frame.slots[slot];
+    }
+
+    @Override
+    double executeDouble(Frame frame) {
+        return (Double) frame.slots[slot];
+    }
+}
+
+final class NotNode extends ExprNode {
+    ExprNode operand;
+
+    NotNode(ExprNode operand) {
+        this.operand = adopt(operand);
+    }
+
+    @Override
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        operand = swap(operand, oldChild, newChild);
+    }
+
+    @Override
+    Object execute(Frame frame) {
+        return executeBoolean(frame);
+    }
+
+    @Override
+    boolean executeBoolean(Frame frame) {
+        try {
+            return !operand.executeBoolean(frame);
+        } catch (UnexpectedResultException e) {
+            throw new RuntimeException("'not' can only be applied to booleans");
+        }
+    }
+}
+
+final class NegateNode extends ExprNode {
+    ExprNode operand;
+
+    NegateNode(ExprNode operand) {
+        this.operand = adopt(operand);
+    }
+
+    @Override
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        operand = swap(operand, oldChild, newChild);
+    }
+
+    @Override
+    Object execute(Frame frame) {
+        Object value = operand.execute(frame);
+        if (!(value instanceof Number)) {
+            throw new RuntimeException("Unary '-' can only be applied to numbers");
+        }
+        return -Values.toDouble(value);
+    }
+}
+
+// Base for every binary operator except 'and' / 'or' (LogicalNode)
+abstract class BinaryNode extends ExprNode {
+    final Operator op;
+    ExprNode left;
+    ExprNode right;
+
+    BinaryNode(Operator op, ExprNode left, ExprNode right) {
+        this.op = op;
+        this.left = adopt(left);
+        this.right = adopt(right);
+    }
+
+    @Override
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        left = swap(left, oldChild, newChild);
+        right = swap(right, oldChild, newChild);
+    }
+
+    // Finishes an evaluation whose operands are already known
+    abstract Object executeWith(Object l, Object r);
+}
+
+// First execution picks a specialization from the operand types it sees
+final class UninitializedBinaryNode extends BinaryNode {
+    UninitializedBinaryNode(Operator op, ExprNode left, ExprNode right) {
+        super(op, left, right);
+    }
+
+    @Override
+    Object execute(Frame frame) {
+        Object l = left.execute(frame);
+        Object r = right.execute(frame);
+        return specialize(l, r).executeWith(l, r);
+    }
+
+    @Override
+    Object executeWith(Object l, Object r) {
+        return specialize(l, r).executeWith(l, r);
+    }
+
+    private BinaryNode specialize(Object l, Object r) {
+        boolean numbers = (l instanceof Double || l instanceof Integer)
+                && (r instanceof Double || r instanceof Integer);
+        return replace(create(op, left, right, numbers));
+    }
+
+    // The specialization for number operands, or for any others. NodeCompiler
+    // starts with it when TypeInference already knows which.
+    static BinaryNode create(Operator op, ExprNode left, ExprNode right, boolean numbers) {
+        return switch (op) {
+            case ADD, SUBTRACT, MULTIPLY, DIVIDE, MOD ->
+                    numbers ? DoubleArithmeticNode.create(op, left, right) : new GenericBinaryNode(op, left, right);
+            case GREATER, LESS, GREATER_EQUAL, LESS_EQUAL ->
+                    numbers ? new DoubleCompareNode(op, left, right) : new GenericBinaryNode(op, left, right);
+            case EQUAL ->
+                    numbers ? new DoubleEqualNode(op, left, right) : new GenericBinaryNode(op, left, right);
+            case NOT_EQUAL ->
+                    numbers ? new DoubleNotEqualNode(op, left, right) : new GenericBinaryNode(op, left, right);
+            default -> new GenericBinaryNode(op, left, right);
+        };
+    }
+}
+
+// Handles every operand type; the state a node ends in after a type miss
+final class GenericBinaryNode extends BinaryNode {
+    GenericBinaryNode(Operator op, ExprNode left, ExprNode right) {
+        super(op, left, right);
+    }
+
+    @Override
+    Object execute(Frame frame) {
+        Object l = left.execute(frame);
+        Object r = right.execute(frame);
+        return executeWith(l, r);
+    }
+
+    @Override
+    Object executeWith(Object l, Object r) {
+        return apply(op, l, r);
+    }
+
+    static Object apply(Operator op, Object l, Object r) {
+        switch (op) {
+            case ADD:
+                return Values.toDouble(l) + Values.toDouble(r);
+            case SUBTRACT:
+                return Values.toDouble(l) - Values.toDouble(r);
+            case MULTIPLY:
+                return Values.toDouble(l) * Values.toDouble(r);
+            case DIVIDE:
+                double rVal = Values.toDouble(r);
+                if (rVal == 0.0) throw new RuntimeException("Division by zero");
+                return Values.toDouble(l) / rVal;
+            case MOD:
+                double modRight = Values.toDouble(r);
+                if (modRight == 0.0) throw new RuntimeException("Illegal modulo use: modulo by zero");
+                return Values.toDouble(l) % modRight;
+            case EQUAL:
+                if (l instanceof Number && r instanceof Number) {
+                    return Values.toDouble(l) == Values.toDouble(r);
+                }
+                return l.equals(r);
+            case GREATER:
+                return Values.toDouble(l) > Values.toDouble(r);
+            case LESS:
+                return Values.toDouble(l) < Values.toDouble(r);
+            case GREATER_EQUAL:
+                return Values.toDouble(l) >= Values.toDouble(r);
+            case LESS_EQUAL:
+                return Values.toDouble(l) <= Values.toDouble(r);
+            case NOT_EQUAL:
+                if (l == null || r == null) {
+                    return l != r;
+                }
+                if (l instanceof Number && r instanceof Number) {
+                    return Values.toDouble(l) != Values.toDouble(r);
+                }
+                return !l.equals(r);
+            default:
+                throw new RuntimeException("Unsupported operator: " + op);
+        }
+    }
+}
+
+// add / subtract / multiply / divide / mod on numbers, without boxing the
+// intermediate results of nested arithmetic
+abstract class DoubleArithmeticNode extends BinaryNode {
+    DoubleArithmeticNode(Operator op, ExprNode left, ExprNode right) {
+        super(op, left, right);
+    }
+
+    static DoubleArithmeticNode create(Operator op, ExprNode left, ExprNode right) {
+        return switch (op) {
+            case ADD -> new AddDoubleNode(left, right);
+            case SUBTRACT -> new SubtractDoubleNode(left, right);
+            case MULTIPLY -> new MultiplyDoubleNode(left, right);
+            case DIVIDE -> new DivideDoubleNode(left, right);
+            case MOD -> new ModDoubleNode(left, right);
+            default -> throw new IllegalArgumentException(op.name());
+        };
+    }
+
+    abstract double apply(double l, double r);
+
+    @Override
+    Object execute(Frame frame) {
+        double l;
+        try {
+            l = left.executeDouble(frame);
+        } catch (UnexpectedResultException e) {
+            return generalize().executeWith(e.result, right.execute(frame));
+        }
+        double r;
+        try {
+            r = right.executeDouble(frame);
+        } catch (UnexpectedResultException e) {
+            return generalize().executeWith(l, e.result);
+        }
+        return apply(l, r);
+    }
+
+    @Override
+    double executeDouble(Frame frame) throws UnexpectedResultException {
+        double l;
+        try {
+            l = left.executeDouble(frame);
+        } catch (UnexpectedResultException e) {
+            throw new UnexpectedResultException(generalize().executeWith(e.result, right.execute(frame)));
+        }
+        double r;
+        try {
+            r = right.executeDouble(frame);
+        } catch (UnexpectedResultException e) {
+            throw new UnexpectedResultException(generalize().executeWith(l, e.result));
+        }
+        return apply(l, r);
+    }
+
+    @Override
+    Object executeWith(Object l, Object r) {
+        return apply(Values.toDouble(l), Values.toDouble(r));
+    }
+
+    private BinaryNode generalize() {
+        return replace(new GenericBinaryNode(op, left, right));
+    }
+}
+
+final class AddDoubleNode extends DoubleArithmeticNode {
+    AddDoubleNode(ExprNode left, ExprNode right) {
+        super(Operator.ADD, left, right);
+    }
+
+    @Override
+    double apply(double l, double r) {
+        return l + r;
+    }
+}
+
+final class SubtractDoubleNode extends DoubleArithmeticNode {
+    SubtractDoubleNode(ExprNode left, ExprNode right) {
+        super(Operator.SUBTRACT, left, right);
+    }
+
+    @Override
+    double apply(double l, double r) {
+        return l - r;
+    }
+}
+
+final class MultiplyDoubleNode extends DoubleArithmeticNode {
+    MultiplyDoubleNode(ExprNode left, ExprNode right) {
+        super(Operator.MULTIPLY, left, right);
+    }
+
+    @Override
+    double apply(double l, double r) {
+        return l * r;
+    }
+}
+
+final class DivideDoubleNode extends DoubleArithmeticNode {
+    DivideDoubleNode(ExprNode left, ExprNode right) {
+        super(Operator.DIVIDE, left, right);
+    }
+
+    @Override
+    double apply(double l, double r) {
+        if (r == 0.0) throw new RuntimeException("Division by zero");
+        return l / r;
+    }
+}
+
+final class ModDoubleNode extends DoubleArithmeticNode {
+    ModDoubleNode(ExprNode left, ExprNode right) {
+        super(Operator.MOD, left, right);
+    }
+
+    @Override
+    double apply(double l, double r) {
+        if (r == 0.0) throw new RuntimeException("Illegal modulo use: modulo by zero");
+        return l % r;
+    }
+}
+
+// Shared shape of the boolean-valued specializations: on a type miss the
+// node generalizes and finishes with the values it already has
+abstract class BooleanBinaryNode extends BinaryNode {
+    BooleanBinaryNode(Operator op, ExprNode left, ExprNode right) {
+        super(op, left, right);
+    }
+
+    @Override
+    Object execute(Frame frame) {
+        try {
+            return executeBoolean(frame);
+        } catch (UnexpectedResultException e) {
+            return e.result;
+        }
+    }
+
+    final Object generalize(Object l, Object r) {
+        return replace(new GenericBinaryNode(op, left, right)).executeWith(l, r);
+    }
+
+    final Object generalize(Object l, Frame frame) {
+        return generalize(l, right.execute(frame));
+    }
+
+    static boolean asBoolean(Object value) throws UnexpectedResultException {
+        if (value instanceof Boolean b) return b;
+        throw new UnexpectedResultException(value);
+    }
+}
+
+final class DoubleCompareNode extends BooleanBinaryNode {
+    DoubleCompareNode(Operator op, ExprNode left, ExprNode right) {
+        super(op, left, right);
+    }
+
+    @Override
+    boolean executeBoolean(Frame frame) throws UnexpectedResultException {
+        double l;
+        try {
+            l = left.executeDouble(frame);
+        } catch (UnexpectedResultException e) {
+            return asBoolean(generalize(e.result, frame));
+        }
+        double r;
+        try {
+            r = right.executeDouble(frame);
+        } catch (UnexpectedResultException e) {
+            return asBoolean(generalize(l, e.result));
+        }
+        return switch (op) {
+            case GREATER -> l > r;
+            case LESS -> l < r;
+            case GREATER_EQUAL -> l >= r;
+            default -> l <= r;
+        };
+    }
+
+    @Override
+    Object executeWith(Object l, Object r) {
+        return GenericBinaryNode.apply(op, l, r);
+    }
+}
+
+final class DoubleEqualNode extends BooleanBinaryNode {
+    DoubleEqualNode(Operator op, ExprNode left, ExprNode right) {
+        super(op, left, right);
+    }
+
+    @Override
+    boolean executeBoolean(Frame frame) throws UnexpectedResultException {
+        double l;
+        try {
+            l = left.executeDouble(frame);
+        } catch (UnexpectedResultException e) {
+            return asBoolean(generalize(e.result, frame));
+        }
+        double r;
+        try {
+            r = right.executeDouble(frame);
+        } catch (UnexpectedResultException e) {
+            return asBoolean(generalize(l, e.result));
+        }
+        return l == r;
+    }
+
+    @Override
+    Object executeWith(Object l, Object r) {
+        return Values.toDouble(l) == Values.toDouble(r);
+    }
+}
+
+final class DoubleNotEqualNode extends BooleanBinaryNode {
+    DoubleNotEqualNode(Operator op, ExprNode left, ExprNode right) {
+        super(op, left, right);
+    }
+
+    @Override
+    boolean executeBoolean(Frame frame) throws UnexpectedResultException {
+        double l;
+        try {
+            l = left.executeDouble(frame);
+        } catch (UnexpectedResultException e) {
+            return asBoolean(generalize(e.result, frame));
+        }
+        double r;
+        try {
+            r = right.executeDouble(frame);
+        } catch (UnexpectedResultException e) {
+            return asBoolean(generalize(l, e.result));
+        }
+        return l != r;
+    }
+
+    @Override
+    Object executeWith(Object l, Object r) {
+        return Values.toDouble(l) != Values.toDouble(r);
+    }
+}
+
+// 'and' / 'or': the right operand only runs when the left one doesn't
+// decide the result
+final class LogicalNode extends ExprNode {
+    final Operator op;
+    private final boolean isAnd;
+    ExprNode left;
+    ExprNode right;
+
+    LogicalNode(Operator op, ExprNode left, ExprNode right) {
+        this.op = op;
+        this.isAnd = op == Operator.AND;
+        this.left = adopt(left);
+        this.right = adopt(right);
+    }
+
+    @Override
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        left = swap(left, oldChild, newChild);
+        right = swap(right, oldChild, newChild);
+    }
+
+    @Override
+    Object execute(Frame frame) {
+        return executeBoolean(frame);
+    }
+
+    @Override
+    boolean executeBoolean(Frame frame) {
+        boolean l = operand(left, frame);
+        if (isAnd ? !l : l) return l;
+        return operand(right, frame);
+    }
+
+    private boolean operand(ExprNode node, Frame frame) {
+        try {
+            return node.executeBoolean(frame);
+        } catch (UnexpectedResultException e) {
+            return Values.logicalOperand(e.result, op);
+        }
+    }
+}
+
+final class BuiltinCallNode extends ExprNode {
+    final String name;
+    final ExprNode[] arguments;
+    final Budget budget;
+
+    BuiltinCallNode(String name, ExprNode[] arguments, Budget budget) {
+        this.name = name;
+        this.arguments = adoptAll(arguments);
+        this.budget = budget;
+    }
+
+    @Override
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        swapAll(arguments, oldChild, newChild);
+    }
+
+    @Override
+    Object execute(Frame frame) {
+        Builtins.checkArity(name, arguments.length);
+        Object[] values = new Object[arguments.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = arguments[i].execute(frame);
+        }
+        return Builtins.apply(name, values, budget);
+    }
+}
+
+final class CallNode extends ExprNode {
+    private static final int MAX_RECURSION_DEPTH = 10000;
+
+    final ExecContext context;
+    final String name;
+    final ExprNode[] arguments;
+
+    CallNode(ExecContext context, String name, ExprNode[] arguments) {
+        this.context = context;
+        this.name = name;
+        this.arguments = adoptAll(arguments);
+    }
+
+    @Override
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        swapAll(arguments, oldChild, newChild);
+    }
+
+    @Override
+    Object execute(Frame frame) {
+        ExecFunction func = context.functions.get(name);
+        if (func == null) {
+            throw new RuntimeException("Undefined function: " + name);
+        }
+        if (arguments.length != func.parameterSlots.length) {
+            throw new RuntimeException("Function '" + name + "' expects " +
+                    func.parameterSlots.length + " arguments, got " + arguments.length);
+        }
+
+        Object[] argValues = new Object[arguments.length];
+        for (int i = 0; i < argValues.length; i++) {
+            argValues[i] = arguments[i].execute(frame);
+        }
+        if (context.memo == null || !func.pure) {
+            return invoke(func, argValues, frame);
+        }
+
+        MemoTable.Key key = MemoTable.key(func, argValues);
+        if (key == null) {
+            return invoke(func, argValues, frame);
+        }
+        Object cached = context.memo.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        int errorsBefore = context.errorsReported;
+        Object result = invoke(func, argValues, frame);
+        if (context.errorsReported == errorsBefore) {
+            context.memo.put(key, result);
+        }
+        return result;
+    }
+
+    private Object invoke(ExecFunction func, Object[] argValues, Frame frame) {
+        if (context.recursionDepth >= MAX_RECURSION_DEPTH) {
+            throw new RuntimeException("Maximum recursion depth exceeded");
+        }
+        // The call runs in the caller's frame; the slots it can write are restored on exit
+        Object[] slots = frame.slots;
+        int[] locals = func.localSlots;
+        Object[] saved = new Object[locals.length];
+        for (int i = 0; i < locals.length; i++) {
+            saved[i] = slots[locals[i]];
+        }
+        for (int i = 0; i < argValues.length; i++) {
+            slots[func.parameterSlots[i]] = argValues[i];
+        }
+
+        context.recursionDepth++;
+        int status;
+        try {
+            while (true) {
+                context.budget.tick();
+                status = func.body.execute(frame);
+                ExecFunction target = context.tailCall;
+                if (status != StmtNode.RETURN || target == null) break;
+
+                Object[] next = context.tailArgs;
+                context.tailCall = null;
+                context.tailArgs = null;
+                if (target != func) {
+                    // The name was redeclared while this body ran; make an ordinary call
+                    return invoke(target, next, frame);
+                }
+                for (int i = 0; i < next.length; i++) {
+                    slots[func.parameterSlots[i]] = next[i];
+                }
+            }
+        } finally {
+            context.recursionDepth--;
+            for (int i = 0; i < locals.length; i++) {
+                slots[locals[i]] = saved[i];
+            }
+        }
+        if (status == StmtNode.RETURN) {
+            Object value = context.returnValue;
+            context.returnValue = null;
+            return value;
+        }
+        if (status == StmtNode.STOP) {
+            // 'stop' outside a loop leaves the function and breaks the caller's loop
+            throw Interpreter.StopException.INSTANCE;
+        }
+        return null;
+    }
+}
+
+// ---------------------------------------------------------------------------
+// Statements
+
+abstract class StmtNode extends ExecNode {
+    static final int NORMAL = 0;
+    static final int STOP = 1;
+    static final int RETURN = 2;
+
+    abstract int execute(Frame frame);
+}
+
+// A statement list. A runtime error aborts only the statement that raised
+// it; the error is reported and the next statement runs.
+final class SequenceNode extends StmtNode {
+    final ExecContext context;
+    final StmtNode[] statements;
+
+    SequenceNode(ExecContext context, StmtNode[] statements) {
+        this.context = context;
+        this.statements = adoptAll(statements);
+    }
+
+    @Override
+    int execute(Frame frame) {
+        for (StmtNode stmt : statements) {
+            int status;
+            try {
+                status = stmt.execute(frame);
+            } catch (Interpreter.StopException | RunAbortedException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                context.reportError(e);
+                continue;
+            }
+            if (status != NORMAL) return status;
+        }
+        return NORMAL;
+    }
+}
+
+final class AssignNode extends StmtNode {
+    final int slot;
+    final boolean isFloat;
+    ExprNode value;
+
+    AssignNode(int slot, boolean isFloat, ExprNode value) {
+        this.slot = slot;
+        this.isFloat = isFloat;
+        this.value = adopt(value);
+    }
+
+    @Override
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        value = swap(value, oldChild, newChild);
+    }
+
+    @Override
+    int execute(Frame frame) {
+        Object result = value.execute(frame);
+        frame.slots[slot] = isFloat ? result : Values.toLetValue(result);
+        return NORMAL;
+    }
+}
+
+// 'let' of a value TypeInference knows to be a number, stored as an Integer
+// without boxing it as a Double first
+final class LetNumberNode extends StmtNode {
+    final int slot;
+    ExprNode value;
+
+    LetNumberNode(int slot, ExprNode value) {
+        this.slot = slot;
+        this.value = adopt(value);
+    }
+
+    @Override
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        value = swap(value, oldChild, newChild);
+    }
+
+    @Override
+    int execute(Frame frame) {
+        try {
+            frame.slots[slot] = Values.toLetValue(value.executeDouble(frame));
+        } catch (UnexpectedResultException e) {
+            frame.slots[slot] = Values.toLetValue(e.result);
+        }
+        return NORMAL;
+    }
+}
+
+final class PrintStmtNode extends StmtNode {
+    final ExecContext context;
+    final ExprNode[] parts;
+    final boolean[] numbers; // parts TypeInference knows to be numbers, printed unboxed
+
+    PrintStmtNode(ExecContext context, ExprNode[] parts, boolean[] numbers) {
+        this.context = context;
+        this.parts = adoptAll(parts);
+        this.numbers = numbers;
+    }
+
+    @Override
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        swapAll(parts, oldChild, newChild);
+    }
+
+    @Override
+    int execute(Frame frame) {
+        StringBuilder output = context.output;
+        for (int i = 0; i < parts.length; i++) {
+            ExprNode part = parts[i];
+            if (part instanceof ConstantNode constant && constant.value instanceof String text) {
+                output.append(text);
+            } else if (numbers[i]) {
+                try {
+                    Values.appendPrintNumber(output, part.executeDouble(frame));
+                } catch (UnexpectedResultException e) {
+                    Values.appendPrintValue(output, e.result);
+                }
+            } else {
+                Values.appendPrintValue(output, part.execute(frame));
+            }
+            if (i < parts.length - 1) {
+                output.append(" ");
+            }
+        }
+        output.append("\n");
+        context.sink.lineWritten();
+        return NORMAL;
+    }
+}
+
+final class CallStmtNode extends StmtNode {
+    final ExecContext context;
+    ExprNode call;
+
+    CallStmtNode(ExecContext context, ExprNode call) {
+        this.context = context;
+        this.call = adopt(call);
+    }
+
+    @Override
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        call = swap(call, oldChild, newChild);
+    }
+
+    @Override
+    int execute(Frame frame) {
+        Values.appendCallResult(context.output, call.execute(frame));
+        context.sink.lineWritten();
+        return NORMAL;
+    }
+}
+
+// Evaluates an if/while condition, which must produce a boolean
+final class ConditionNode extends ExecNode {
+    ExprNode expr;
+
+    ConditionNode(ExprNode expr) {
+        this.expr = adopt(expr);
+    }
+
+    @Override
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        expr = swap(expr, oldChild, newChild);
+    }
+
+    boolean execute(Frame frame) {
+        try {
+            return expr.executeBoolean(frame);
+        } catch (UnexpectedResultException e) {
+            throw new RuntimeException("Expected boolean expression in condition");
+        }
+    }
+}
+
+final class IfStmtNode extends StmtNode {
+    final ConditionNode condition;
+    final SequenceNode thenBlock;
+    final SequenceNode elseBlock;
+
+    IfStmtNode(ConditionNode condition, SequenceNode thenBlock, SequenceNode elseBlock) {
+        this.condition = adopt(condition);
+        this.thenBlock = adopt(thenBlock);
+        this.elseBlock = adopt(elseBlock);
+    }
+
+    @Override
+    int execute(Frame frame) {
+        if (condition.execute(frame)) {
+            return thenBlock.execute(frame);
+        } else if (elseBlock != null) {
+            return elseBlock.execute(frame);
+        }
+        return NORMAL;
+    }
+}
+
+final class WhileStmtNode extends StmtNode {
+    final ConditionNode condition;
+    final SequenceNode body;
+    final int[] invariantSlots; // cleared on entry, see LoopOptimizer
+    final Budget budget;
+
+    WhileStmtNode(ConditionNode condition, SequenceNode body, int[] invariantSlots, Budget budget) {
+        this.condition = adopt(condition);
+        this.body = adopt(body);
+        this.invariantSlots = invariantSlots;
+        this.budget = budget;
+    }
+
+    @Override
+    int execute(Frame frame) {
+        for (int slot : invariantSlots) frame.slots[slot] = null;
+        while (condition.execute(frame)) {
+            budget.tick();
+            int status;
+            try {
+                status = body.execute(frame);
+            } catch (Interpreter.StopException e) {
+                break;
+            }
+            if (status == STOP) break;
+            if (status == RETURN) return RETURN;
+        }
+        return NORMAL;
+    }
+}
+
+final class RepeatStmtNode extends StmtNode {
+    final int times;
+    final SequenceNode body;
+    final Budget budget;
+
+    RepeatStmtNode(int times, SequenceNode body, Budget budget) {
+        this.times = times;
+        this.body = adopt(body);
+        this.budget = budget;
+    }
+
+    @Override
+    int execute(Frame frame) {
+        for (int i = 0; i < times; i++) {
+            budget.tick();
+            int status;
+            try {
+                status = body.execute(frame);
+            } catch (Interpreter.StopException e) {
+                break;
+            }
+            if (status == STOP) break;
+            if (status == RETURN) return RETURN;
+        }
+        return NORMAL;
+    }
+}
+
+final class ForStmtNode extends StmtNode {
+    final int slot;
+    ExprNode start;
+    ExprNode end;
+    final SequenceNode body;
+    final int[] invariantSlots;            // cleared on entry, see LoopOptimizer
+    final List<InductionExpr> inductions;
+    final Budget budget;
+
+    ForStmtNode(int slot, ExprNode start, ExprNode end, SequenceNode body, int[] invariantSlots,
+                List<InductionExpr> inductions, Budget budget) {
+        this.slot = slot;
+        this.start = adopt(start);
+        this.end = adopt(end);
+        this.body = adopt(body);
+        this.invariantSlots = invariantSlots;
+        this.inductions = inductions;
+        this.budget = budget;
+    }
+
+    @Override
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        start = swap(start, oldChild, newChild);
+        end = swap(end, oldChild, newChild);
+    }
+
+    @Override
+    int execute(Frame frame) {
+        int from = (int) Values.toDouble(start.execute(frame));
+        int to = (int) Values.toDouble(end.execute(frame));
+        int step = from <= to ? 1 : -1;
+        for (int hidden : invariantSlots) frame.slots[hidden] = null;
+        InductionValues induced = inductions.isEmpty() ? null : new InductionValues(inductions, from, step);
+        for (int i = from; step > 0 ? i <= to : i >= to; i += step) {
+            budget.tick();
+            frame.slots[slot] = i;
+            if (induced != null) induced.store(frame.slots);
+            int status;
+            try {
+                status = body.execute(frame);
+            } catch (Interpreter.StopException e) {
+                break;
+            }
+            if (status == STOP) break;
+            if (status == RETURN) return RETURN;
+            if (induced != null) induced.advance();
+        }
+        return NORMAL;
+    }
+}
+
+final class ArrayDecStmtNode extends StmtNode {
+    final int slot;
+    final ExprNode[] elements;
+    final Budget budget;
+
+    ArrayDecStmtNode(int slot, ExprNode[] elements, Budget budget) {
+        this.slot = slot;
+        this.elements = adoptAll(elements);
+        this.budget = budget;
+    }
+
+    @Override
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        swapAll(elements, oldChild, newChild);
+    }
+
+    @Override
+    int execute(Frame frame) {
+        ElplArray values = new ElplArray(elements.length, budget);
+        for (ExprNode e : elements) {
+            values.add(e.execute(frame));
+        }
+        frame.slots[slot] = values;
+        return NORMAL;
+    }
+}
+
+final class ArrayAssignStmtNode extends StmtNode {
+    final int slot;
+    final String name;
+    ExprNode index;
+    ExprNode value;
+
+    ArrayAssignStmtNode(int slot, String name, ExprNode index, ExprNode value) {
+        this.slot = slot;
+        this.name = name;
+        this.index = adopt(index);
+        this.value = adopt(value);
+    }
+
+    @Override
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        index = swap(index, oldChild, newChild);
+        value = swap(value, oldChild, newChild);
+    }
+
+    @Override
+    int execute(Frame frame) {
+        if (!(frame.slots[slot] instanceof ElplArray list)) {
+            throw new RuntimeException("Variable '" + name + "' is not an array");
+        }
+
+        int i = (int) Values.toDouble(index.execute(frame));
+        Object v = value.execute(frame);
+
+        if (i < 0 || i > list.size()) {
+            throw new RuntimeException("Index " + i + " out of bounds for length " + list.size());
+        }
+        if (i == list.size()) {
+            list.add(v);
+        } else {
+            list.put(i, v);
+        }
+        return NORMAL;
+    }
+}
+
+final class FunctionDeclStmtNode extends StmtNode {
+    final ExecContext context;
+    final ExecFunction function;
+
+    FunctionDeclStmtNode(ExecContext context, ExecFunction function) {
+        this.context = context;
+        this.function = function;
+        adopt(function.body);
+    }
+
+    @Override
+    int execute(Frame frame) {
+        context.functions.put(function.name, function);
+        return NORMAL;
+    }
+}
+
+final class ReturnStmtNode extends StmtNode {
+    final ExecContext context;
+    ExprNode value;
+
+    ReturnStmtNode(ExecContext context, ExprNode value) {
+        this.context = context;
+        this.value = adopt(value);
+    }
+
+    @Override
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        value = swap(value, oldChild, newChild);
+    }
+
+    @Override
+    int execute(Frame frame) {
+        if (value == null) {
+            throw new RuntimeException("Null Expression encountered");
+        }
+        context.returnValue = value.execute(frame);
+        return RETURN;
+    }
+}
+
+// 'return f(...)' inside f itself. Leaves the arguments in the context, and
+// the CallNode running f starts the body again instead of nesting a call.
+final class TailCallStmtNode extends StmtNode {
+    final ExecContext context;
+    final String name;
+    final ExprNode[] arguments;
+
+    TailCallStmtNode(ExecContext context, String name, ExprNode[] arguments) {
+        this.context = context;
+        this.name = name;
+        this.arguments = adoptAll(arguments);
+    }
+
+    @Override
+    void replaceChild(ExecNode oldChild, ExecNode newChild) {
+        swapAll(arguments, oldChild, newChild);
+    }
+
+    @Override
+    int execute(Frame frame) {
+        ExecFunction func = context.functions.get(name);
+        if (func == null) {
+            throw new RuntimeException("Undefined function: " + name);
+        }
+        if (arguments.length != func.parameterSlots.length) {
+            throw new RuntimeException("Function '" + name + "' expects " +
+                    func.parameterSlots.length + " arguments, got " + arguments.length);
+        }
+        Object[] argValues = new Object[arguments.length];
+        for (int i = 0; i < argValues.length; i++) {
+            argValues[i] = arguments[i].execute(frame);
+        }
+        context.tailCall = func;
+        context.tailArgs = argValues;
+        return RETURN;
+    }
+}
+
+final class StopStmtNode extends StmtNode {
+    @Override
+    int execute(Frame frame) {
+        return STOP;
+    }
+}
+
+// Statements the tree interpreter rejects at run time are rejected the same way
+final class UnsupportedStmtNode extends StmtNode {
+    final String nodeName;
+
+    UnsupportedStmtNode(String nodeName) {
+        this.nodeName = nodeName;
+    }
+
+    @Override
+    int execute(Frame frame) {
+        throw new RuntimeException("Unsupported AST node: " + nodeName);
+    }
+}
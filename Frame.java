@@ -0,0 +1,18 @@
+package com.syed.elpl_backend;
+
+import java.util.Arrays;
+
+// Variable storage for one run, indexed by the slots Resolver assigns.
+// A slot holds UNASSIGNED until the variable is assigned; null is a value,
+// the one a function gives back when it ends without 'return'. Calls share
+// it and restore the slots they wrote when they return.
+final class Frame {
+    static final Object UNASSIGNED = new Object();
+
+    final Object[] slots;
+
+    Frame(int size) {
+        this.slots = new Object[size];
+        Arrays.fill(slots, UNASSIGNED);
+    }
+}
@@ -1,6 +1,7 @@
 package com.syed.elpl_backend;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinTask;
 
 
 public class Interpreter {
@@ -8,62 +9,272 @@ public class Interpreter {
     private int recursionDepth = 0;
      private static final int MAX_RECURSION_DEPTH = 10000; // or tune as needed
 
+    // Completion status of a statement
+    private static final int NORMAL = 0;
+    private static final int STOP = 1;
+    private static final int RETURN = 2;
+
+    // A 'parallel for' is split into this many chunks, or one per iteration
+    // when it has fewer. More chunks than threads lets threads that finish
+    // early take over work. The number doesn't depend on the machine, so a
+    // float accumulator adds up the same way wherever the program runs.
+    private static final int CHUNKS = 64;
+
 
     public Interpreter(){
-        variableStack.push(new HashMap<>());
+        this(new OutputSink(), Tracer.NONE, null, Budget.unlimited());
+    }
+
+    Interpreter(OutputSink sink, Tracer tracer, MemoTable memo, Budget budget){
+        this.sink = sink;
+        this.output = sink.buffer;
+        this.tracer = tracer;
+        this.memo = memo;
+        this.budget = budget;
     }
 
-    // Variable storage
-    private final Deque<Map<String, Object>> variableStack = new ArrayDeque<>();
+    // Runs part of a 'parallel for' for parent on another thread, in a copy
+    // of its frame. Runtime errors collect in this worker's own output.
+    private Interpreter(Interpreter parent) {
+        this(new OutputSink(), Tracer.NONE, null, parent.budget.fork());
+        functions = parent.functions; // a parallel for can't declare functions
+        frame = new Frame(parent.frame.slots.length);
+        System.arraycopy(parent.frame.slots, 0, frame.slots, 0, frame.slots.length);
+        profile = new Tier2Profile(parent.profile.hotness.length);
+        recursionDepth = parent.recursionDepth;
+        insideFunction = parent.insideFunction;
+        worker = true;
+    }
+
+    // Variable storage, indexed by the slots Resolver assigned
+    private Frame frame = new Frame(0);
+
+    // Hotness and compiled code of this run's loops and functions
+    private Tier2Profile profile = new Tier2Profile(0);
 
     // Function definitions
-    private final Map<String, FunctionDeclNode> functions = new HashMap<>();
+    private Map<String, FunctionDeclNode> functions = new HashMap<>();
+
+    // Set in the Interpreters that run the chunks of a 'parallel for'
+    private boolean worker;
 
-    private final StringBuilder output = new StringBuilder();
+    private final OutputSink sink;
+    private final StringBuilder output;
+    private final Tracer tracer;
 
+    // Results of pure function calls; null unless the run asked for memoization
+    private final MemoTable memo;
+
+    // Charged once per loop iteration and function call, and for arrays
+    private final Budget budget;
+
+    // Runtime errors reported so far. A call that reported one isn't memoized,
+    // since a cached result would skip the error message.
+    private int errorsReported;
+
+    // Value of the 'return' that produced the current RETURN status
+    private Object returnValue;
+
+    // Set instead of returnValue when the RETURN status is a tail call
+    private FunctionDeclNode tailCall;
+    private List<Object> tailArgs;
+
+    // 'stop' and 'return' travel as statement status codes. These signals are
+    // only thrown where a status can't be returned: a 'stop' that leaves a
+    // function through a call expression.
     public static class StopException extends RuntimeException{
+        private static final long serialVersionUID = 1L;
+
+        static final StopException INSTANCE = new StopException();
+
         public StopException(){
-            super();
+            super(null, null, false, false);
         }
     }
 
     public static class ReturnException extends RuntimeException{
+        private static final long serialVersionUID = 1L;
+
         public final Object value;
         public ReturnException(Object value){
+            super(null, null, false, false);
             this.value = value;
         }
     }
 
     // Entry point for interpreting any AST node
 public String interpret(ASTNode node) {
+    execute(node);
+    return output.toString();
+}
+
+// Runs a statement list. A runtime error aborts only the statement that
+// raised it; the error is reported and the next statement runs.
+private int executeAll(List<ASTNode> statements) {
+    for (ASTNode stmt : statements) {
+        int status;
+        try {
+            status = execute(stmt);
+        } catch (StopException | RunAbortedException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            output.append("Runtime Error: ")
+            .append((e.getMessage() != null) ? e.getMessage() : "Unknown error")
+            .append("\n");
+            sink.lineWritten();
+            errorsReported++;
+            continue;
+        }
+        if (status != NORMAL) return status;
+    }
+    return NORMAL;
+}
+
+// One loop iteration. A 'stop' that unwinds out of a called function ends the loop too.
+private int iteration(List<ASTNode> body) {
+    try {
+        return executeAll(body);
+    } catch (StopException e) {
+        return STOP;
+    }
+}
+
+// Runs a 'parallel for' (see ParallelLoops) as chunks of consecutive
+// iterations on the common ForkJoinPool, this thread taking the first. Each
+// chunk runs in a worker with its own frame, where the accumulators start at
+// zero (one for products) and the private variables unassigned. Afterwards
+// the chunks' accumulators are combined in iteration order, the private
+// variables take the values the last iterations gave them, and the chunks'
+// runtime errors are reported in iteration order.
+private void parallelFor(ForNode loop, int start, int end) {
+    Object[] slots = frame.slots;
+    ParallelLoops.Reduction[] reductions = loop.reductions;
+    double[] totals = new double[reductions.length];
+    for (int r = 0; r < reductions.length; r++) {
+        if (slots[reductions[r].slot] == Frame.UNASSIGNED) {
+            throw new RuntimeException("Undefined variable: " + reductions[r].name);
+        }
+        totals[r] = Values.toDouble(slots[reductions[r].slot]);
+    }
+
+    int step = start <= end ? 1 : -1;
+    long count = Math.abs((long) end - start) + 1;
+    int chunks = (int) Math.min(count, CHUNKS);
+    Interpreter[] workers = new Interpreter[chunks];
+    List<ForkJoinTask<Integer>> tasks = new ArrayList<>(chunks);
+    for (int c = 0; c < chunks; c++) {
+        Interpreter worker = workers[c] = new Interpreter(this);
+        for (ParallelLoops.Reduction reduction : reductions) {
+            worker.frame.slots[reduction.slot] = reduction.op == Operator.MULTIPLY ? (Object) 1.0
+                    : reduction.isFloat ? (Object) 0.0 : (Object) 0;
+        }
+        for (int slot : loop.privateSlots) {
+            worker.frame.slots[slot] = Frame.UNASSIGNED;
+        }
+        int from = start + (int) (step * (count * c / chunks));
+        int to = start + (int) (step * (count * (c + 1) / chunks - 1));
+        tasks.add(ForkJoinTask.adapt(() -> worker.forChunk(loop, from, to, step)));
+    }
+
+    for (int c = 1; c < chunks; c++) {
+        tasks.get(c).fork();
+    }
+    RuntimeException failure = null;
+    boolean stopped = false;
+    for (int c = 0; c < chunks; c++) {
+        try {
+            int status = c == 0 ? tasks.get(c).invoke() : tasks.get(c).join();
+            stopped |= status == STOP;
+        } catch (RuntimeException e) {
+            if (failure == null) {
+                // The other chunks stop at their next budget check
+                failure = e;
+                for (Interpreter worker : workers) worker.budget.cancel();
+            }
+        }
+    }
+    if (failure != null) throw failure;
+
+    int outputBefore = output.length();
+    for (Interpreter worker : workers) {
+        output.append(worker.output);
+        errorsReported += worker.errorsReported;
+        for (int r = 0; r < reductions.length; r++) {
+            double part = Values.toDouble(worker.frame.slots[reductions[r].slot]);
+            totals[r] = reductions[r].op == Operator.MULTIPLY ? totals[r] * part : totals[r] + part;
+        }
+    }
+    if (output.length() > outputBefore) sink.lineWritten();
+    for (int r = 0; r < reductions.length; r++) {
+        slots[reductions[r].slot] = reductions[r].isFloat ? (Object) totals[r] : Values.toLetValue(totals[r]);
+    }
+    for (int slot : loop.privateSlots) {
+        for (int c = chunks - 1; c >= 0; c--) {
+            Object value = workers[c].frame.slots[slot];
+            if (value != Frame.UNASSIGNED) {
+                slots[slot] = value;
+                break;
+            }
+        }
+    }
+    slots[loop.slot] = end;
+    if (stopped) {
+        // Only a 'stop' leaving a called function gets here; ParallelLoops rejects the rest
+        throw new RuntimeException("'stop' can't end a 'parallel for'");
+    }
+}
+
+// Iterations from..to of a 'parallel for', run by a worker
+private int forChunk(ForNode loop, int from, int to, int step) {
+    for (int i = from; step > 0 ? i <= to : i >= to; i += step) {
+        if (Tier2Compiler.tryLoop(profile, loop, frame.slots, i, to, step, budget)) break;
+        budget.tick();
+        frame.slots[loop.slot] = i;
+        int status = iteration(loop.body);
+        if (status != NORMAL) return status;
+    }
+    return NORMAL;
+}
+
+private int execute(ASTNode node) {
        if (node == null){
            output.append("Error: cannot compile null node.\n");
-           return output.toString();
+           return NORMAL;
        }
-    try {
         if (node instanceof Program) {
-            for (ASTNode stmt : ((Program) node).statements) {
-                interpret(stmt);
+            Program program = Resolver.resolve((Program) node);
+            frame = new Frame(program.slotCount);
+            profile = new Tier2Profile(program.profileCount);
+            int status;
+            try {
+                status = executeAll(program.statements);
+            } catch (StopException e) {
+                status = STOP;
+            }
+            // A top-level 'stop' ends the program, as on the other engines
+            if (status == RETURN) {
+                output.append("Runtime Error: 'return' used outside of a function.\n");
+                sink.lineWritten();
             }
 
         } else if (node instanceof BlockNode block){
-            for(ASTNode stmt : block.statements){
-                interpret(stmt);
-            }
+            return executeAll(block.statements);
 
         }
          else if (node instanceof AssignmentNode) {
             AssignmentNode assign = (AssignmentNode) node;
-            Object value = evaluate(assign.expression);
-            if (!assign.isFloat && value instanceof Double){
-                double val = (Double) value;
-                if(val != Math.floor(val)){
-                    throw new RuntimeException("Cannot assign non-integer to 'let' variable: " + val);
+            Object value;
+            if (!assign.isFloat && isNumber(assign.expression)){
+                // Whole numbers go straight to Integer, without an intermediate Double
+                value = Values.toLetValue(number(assign.expression));
+            } else {
+                value = evaluate(assign.expression);
+                if (!assign.isFloat){
+                    value = Values.toLetValue(value);
                 }
-                value = (int) val;
             }
             
-                currentScope().put(assign.identifier, value);
+                frame.slots[assign.slot] = value;
             
             
            
@@ -75,29 +286,10 @@ public String interpret(ASTNode node) {
         ExpressionNode expr = print.expressions.get(i);
         if (expr instanceof StringLiteral) {
             output.append(((StringLiteral) expr).value);
+        } else if (isNumber(expr)) {
+            Values.appendPrintNumber(output, number(expr));
         } else {
-            Object val = evaluate(expr);
-
-            if (val instanceof List) {
-            List<?> list = (List<?>) val;
-             output.append("[");
-             for (int j = 0; j < list.size(); j++) {
-            Object item = list.get(j);
-             if (item instanceof Double && ((Double) item) % 1 == 0) {
-               output.append(((Double) item).intValue());
-        } else {
-            output.append(item);
-        }
-        if (j < list.size() - 1) {
-            output.append(", ");
-        }
-    }
-    output.append("]");
-} else if (val instanceof Double && ((Double) val) % 1 == 0) {
-    output.append(((Double) val).intValue());
-} else {
-    output.append(val);
-}
+            Values.appendPrintValue(output, evaluate(expr));
         }
 
         // Only append space if it's not the last item
@@ -107,111 +299,127 @@ public String interpret(ASTNode node) {
     }
 
     output.append("\n"); // ✅ Final newline after entire print statement
+    sink.lineWritten();
 }
  else if(node instanceof ReturnNode returnNode){
-            Object returnValue = evaluate(returnNode.value);
-            System.out.println("Returning from function with: " + returnValue);
-            throw new ReturnException(returnValue);
+            if (returnNode.tailCall && prepareTailCall((FunctionCallNode) returnNode.value)) {
+                return RETURN;
+            }
+            returnValue = evaluate(returnNode.value);
+            return RETURN;
         }
         
          else if (node instanceof IfNode) {
             IfNode ifNode = (IfNode) node;
             boolean result = evaluateCondition(ifNode.condition);
             if(result){
-                interpret(ifNode.thenBlock);
+                return execute(ifNode.thenBlock);
             } else if(ifNode.elseBlock != null) {
-                interpret(ifNode.elseBlock);
+                return execute(ifNode.elseBlock);
             } 
 
         }  else if (node instanceof RepeatNode) {
     RepeatNode repeat = (RepeatNode) node;
+    boolean stopped = false;
     for (int i = 0; i < repeat.times; i++) {
-        try {
-            for (ASTNode stmt : repeat.body) {
-                interpret(stmt);
-            }
-        } catch (StopException e) {
-            break;
-        }
+        budget.tick();
+        int status = iteration(repeat.body);
+        if (status == STOP) { stopped = true; break; }
+        if (status == RETURN) return RETURN;
     }
+    tracer.loopExited(repeat, stopped);
 }
 
     else if (node instanceof WhileNode) {
     WhileNode whileNode = (WhileNode) node;
-    while (evaluateCondition(whileNode.condition)) {
-        try {
-            for (ASTNode stmt : whileNode.body) {
-                interpret(stmt);
-            }
-        } catch (StopException e) {
-            break;
-        }
+    boolean stopped = false;
+    clearInvariants(whileNode.invariants);
+    while (!Tier2Compiler.tryLoop(profile, whileNode, frame.slots, budget) && evaluateCondition(whileNode.condition)) {
+        budget.tick();
+        int status = iteration(whileNode.body);
+        if (status == STOP) { stopped = true; break; }
+        if (status == RETURN) return RETURN;
     }
+    tracer.loopExited(whileNode, stopped);
 }
 else if (node instanceof ArrayDecNode){
             ArrayDecNode arrayDec = (ArrayDecNode) node;
-            List<Object> values = new ArrayList<>();
+            ElplArray values = new ElplArray(arrayDec.elements.size(), budget);
             for(ExpressionNode e : arrayDec.elements){
-                values.add(evaluate(e));
+                if (isNumeric(e)) {
+                    values.addDouble(number(e));
+                } else {
+                    values.add(evaluate(e));
+                }
             }
-            currentScope().put(arrayDec.name, values);
+            frame.slots[arrayDec.slot] = values;
         }
          else if(node instanceof StopNode){
-             System.out.println("StopNode encountered, throwing StopException");
-            throw new StopException();
+            return STOP;
         } 
         else if (node instanceof ForNode) {
     ForNode forNode = (ForNode) node;
-    int start = (int) toDouble(evaluate(forNode.start));
-    int end = (int) toDouble(evaluate(forNode.end));
+    int start = (int) number(forNode.start);
+    int end = (int) number(forNode.end);
+    boolean stopped = false;
 
-    if (start <= end) {
+    clearInvariants(forNode.invariants);
+    InductionValues induced = forNode.inductions.isEmpty() ? null
+            : new InductionValues(forNode.inductions, start, start <= end ? 1 : -1);
+
+    if (forNode.parallel && !worker) {
+        parallelFor(forNode, start, end);
+    } else if (start <= end) {
     for (int i = start; i <= end; i++) {
-        currentScope().put(forNode.iterator, i);
-        try {
-            for (ASTNode stmt : forNode.body) {
-                interpret(stmt);
-            }
-        } catch (StopException e) {
-            break;
-        }
+        if (Tier2Compiler.tryLoop(profile, forNode, frame.slots, i, end, 1, budget)) break;
+        budget.tick();
+        frame.slots[forNode.slot] = i;
+        if (induced != null) induced.store(frame.slots);
+        int status = iteration(forNode.body);
+        if (status == STOP) { stopped = true; break; }
+        if (status == RETURN) return RETURN;
+        if (induced != null) induced.advance();
     }
 } else {
     for (int i = start; i >= end; i--) {
-        currentScope().put(forNode.iterator, i);
-        try {
-            for (ASTNode stmt : forNode.body) {
-                interpret(stmt);
-            }
-        } catch (StopException e) {
-            break;
-        }
+        if (Tier2Compiler.tryLoop(profile, forNode, frame.slots, i, end, -1, budget)) break;
+        budget.tick();
+        frame.slots[forNode.slot] = i;
+        if (induced != null) induced.store(frame.slots);
+        int status = iteration(forNode.body);
+        if (status == STOP) { stopped = true; break; }
+        if (status == RETURN) return RETURN;
+        if (induced != null) induced.advance();
     }
    }
+    tracer.loopExited(forNode, stopped);
 }
 
 else if (node instanceof ArrayAssignNode assign) {
-    Object val = currentScope().get(assign.arrayName);
-    if (!(val instanceof List)) {
-        throw new RuntimeException("Variable '" + assign.arrayName + "' is not an array");
-    }
-
-    @SuppressWarnings("unchecked")
-    List<Object> list = (List<Object>) val;
+    ElplArray list = array(assign.slot, assign.arrayName);
 
-    int i = (int) toDouble(evaluate(assign.index));
-    Object value = evaluate(assign.value);
+    int i = (int) number(assign.index);
+    // Numbers are stored without boxing while the array is numeric
+    boolean numeric = isNumeric(assign.value);
+    double number = numeric ? number(assign.value) : 0;
+    Object value = numeric ? null : evaluate(assign.value);
 
     if (i < 0 || i > list.size()) {
         throw new RuntimeException("Index " + i + " out of bounds for length " + list.size());
     }
+    if (worker && !list.createdBy(budget)
+            && (i == list.size() || (list.isNumeric() && !numeric && !(value instanceof Number)))) {
+        // Other threads may be reading it
+        throw new RuntimeException("A 'parallel for' can't append to '" + assign.arrayName
+                + "' or store non-numbers in it, since the array comes from outside the loop");
+    }
 
     if (i == list.size()) {
         // Append at the end
-        list.add(value);
+        if (numeric) list.addDouble(number); else list.add(value);
     } else {
         // Replace existing
-        list.set(i, value);
+        if (numeric) list.setDouble(i, number); else list.put(i, value);
     } if (i > list.size()){
         throw new RuntimeException("Cannot assign to index" + i + "- only upto " + list.size());
     }
@@ -229,49 +437,15 @@ else if (node instanceof FunctionDeclNode) {
             functions.put(func.name, func); // Store function body
 
         } else if (node instanceof FunctionCallNode call) {
-            Object result = evaluate(call);
-            if(result != null){
-                if(result instanceof Double && ((Double) result) % 1 == 0){
-                    output.append(((Double) result).intValue());
-                } else {
-                    output.append(result);
-                }
-                output.append("\n");
-            }
-            
+            Values.appendCallResult(output, evaluate(call));
+            sink.lineWritten();
           } else {
             throw new RuntimeException("Unsupported AST node: " + node.getClass().getSimpleName());
         }
-        
-    } catch (StopException e) {
-        System.out.println("Program stopped early via 'stop'");
-        throw e;
-        
-    } catch (RuntimeException e){
-        if(e instanceof ReturnException){
-            throw e;
-        }
-        output.append("Runtime Error: ")
-        .append((e.getMessage() != null) ? e.getMessage() : "Unknown error")
-        .append("\n");
-        
-    }
-
-    return output.toString();
+    return NORMAL;
 }
 public String run(ASTNode node){
-    try{
-        interpret(node);
-    } catch( StopException e){
-        System.out.println("Execution halted by 'stop'");
-    } catch(ReturnException e){
-        if(!insideFunction)
-        output.append("Runtime Error: 'return' used outside of a function.\n");
-    }
-    return output.toString();
-}
-private Map<String, Object> currentScope(){
-    return variableStack.peek();
+    return interpret(node);
 }
 
 
@@ -287,90 +461,39 @@ private Map<String, Object> currentScope(){
         return ((BooleanLiteral) expr).value;
 
     } else if (expr instanceof VariableRef) {
-        String name = ((VariableRef) expr).name;
-        if (!currentScope().containsKey(name)) {
-            throw new RuntimeException("Undefined variable: " + name);
-        }
-        return currentScope().get(name);
-
-    } else if (expr instanceof BinaryExpr) {
-        BinaryExpr bin = (BinaryExpr) expr;
-        Object left = evaluate(bin.left);
-        Object right = evaluate(bin.right);
-
-        switch (bin.op) {
-            case "add":
-                return toDouble(left) +  toDouble(right);
-            case "subtract":
-                return toDouble(left) - toDouble(right);
-            case "multiply":
-                return toDouble(left) * toDouble(right);
-            case "divide":
-                double rVal = toDouble(right);
-                if (rVal == 0.0) throw new RuntimeException("Division by zero");
-                return toDouble(left) / rVal;
-            case "mod":
-                double modRight = toDouble(right);
-                if(modRight == 0.0) throw new RuntimeException("Illegal modulo use: modulo by zero");
-                return toDouble(left) % modRight;
-
-            case "and":
-              if (!(left instanceof Boolean) || !(right instanceof Boolean))
-             throw new RuntimeException("'and' requires boolean operands");
-             return (boolean) left && (boolean) evaluate(bin.right);
-
-            case "or":
-                return (boolean) left || (boolean) evaluate(bin.right);
-            case "is equal to":
-              if (left instanceof Number && right instanceof Number) {
-                 return toDouble(left) == toDouble(right);
-                 }
-                
-                return left.equals(right);
-            
-            case "is greater than":
-                return toDouble(left) > toDouble(right);
-            case "is less than":
-                return toDouble(left) < toDouble(right);
-            case "is greater than or equal to":
-               return toDouble(left) >= toDouble(right);
-            case "is less than or equal to":
-               return toDouble(left) <= toDouble(right);
-            case "is not equal to":   
-            case "not equal to":
-                 if (left == null || right == null) {
-                      return left != right; // null-safe inequality
-                 }
-                   return !left.equals(right);   
-
-            default:
-                throw new RuntimeException("Unsupported operator: " + bin.op);
+        VariableRef ref = (VariableRef) expr;
+        Object value = frame.slots[ref.slot];
+        if (value == Frame.UNASSIGNED) {
+            throw new RuntimeException("Undefined variable: " + ref.name);
         }
+        return value;
 
-    } 
-      else if (expr instanceof ArrayAccessNode access) {
-        Object arrayVal = currentScope().get(access.arrayName);
-        if (!(arrayVal instanceof List<?> list)) {
-            throw new RuntimeException("Variable '" + access.arrayName + "' is not an array");
+    } else if (expr instanceof BinaryExpr bin) {
+        // Boxed once here; operands below stay primitive
+        if (bin.op.isArithmetic()) {
+            return arithmetic(bin);
         }
+        return compare(bin);
 
-        Object indexVal = evaluate(access.index);
-        if (!(indexVal instanceof Number)) {
-            throw new RuntimeException("Array index must be a number");
-        }
+    } else if (expr instanceof LogicalExpr logical) {
+        return logical(logical);
 
-        int idx = ((Number) indexVal).intValue();
-        if (idx < 0 || idx >= list.size()) {
-            throw new RuntimeException("Array index out of bounds");
-        }
-
-        return list.get(idx);
+    } 
+      else if (expr instanceof ArrayAccessNode access) {
+        ElplArray list = array(access.slot, access.arrayName);
+        return list.get(elementIndex(list, access.index));
+    }
+    else if (expr instanceof InvariantExpr invariant) {
+        return invariant(invariant);
+    }
+    else if (expr instanceof InductionExpr induction) {
+        return frame.slots[induction.slot];
     }
 
    else if (expr instanceof FunctionCallNode callExpr) {
     String name = callExpr.name;
 
-    if (isBuiltInFunction(name)) {
+    if (Builtins.isBuiltIn(name)) {
         return evaluateBuiltIn(name, callExpr.arguments);
     }
 
@@ -389,36 +512,7 @@ private Map<String, Object> currentScope(){
     for (ExpressionNode arg : callExpr.arguments) {
         argValues.add(evaluate(arg));
     }
-
-    // ✅ Step 2: Increase recursionDepth only when we’re actually entering
-    if (++recursionDepth > MAX_RECURSION_DEPTH) {
-        throw new RuntimeException("Maximum recursion depth exceeded");
-    }
-
-    // ✅ Step 3: Prepare and push scope
-    Map<String, Object> localScope = new HashMap<>(currentScope());
-    variableStack.push(localScope);
-
-    for (int i = 0; i < func.parameters.size(); i++) {
-        currentScope().put(func.parameters.get(i), argValues.get(i));
-    }
-
-    insideFunction = true;
-    Object returnValue = null;
-
-    try {
-        for (ASTNode stmt : func.body) {
-            interpret(stmt);
-        }
-    } catch (ReturnException e) {
-        returnValue = e.value;
-    } finally {
-        insideFunction = false;
-        variableStack.pop();
-        recursionDepth--;
-    }
-
-    return returnValue;
+    return call(func, argValues);
 }
 
 else if (expr instanceof StringLiteral) {
@@ -430,166 +524,444 @@ else if (expr instanceof StringLiteral) {
     Object value = evaluate(unary.expr);
 
     return switch (unary.op) {
-        case "not" -> {
+        case NOT -> {
             if (!(value instanceof Boolean)) {
                 throw new RuntimeException("'not' can only be applied to booleans");
             }
             yield !(Boolean) value;
         }
-        case "negate" -> {
-            if (!(value instanceof Double)) {
+        case NEGATE -> {
+            if (!(value instanceof Number)) {
                 throw new RuntimeException("Unary '-' can only be applied to numbers");
             }
-            yield -(Double) value;
+            yield -toDouble(value);
         }
         default -> throw new RuntimeException("Unsupported unary operator: " + unary.op);
     };
 }
    throw new RuntimeException("Unknown expression node: " + expr.getClass().getSimpleName());
 }
-private boolean isBuiltInFunction(String name) {
-    return Set.of("length", "sum", "max", "min", "sqrt", "abs", "pow", "floor", "ceil", "reverse").contains(name);
-}
 
-private Object evaluateBuiltIn(String name, List<ExpressionNode> args) {
-    switch (name) {
-        case "length" -> {
-            if (args.size() != 1) throw new RuntimeException("length() takes 1 argument");
-            Object val = evaluate(args.get(0));
-            if (!(val instanceof List<?> list)) throw new RuntimeException("length() expects an array");
-            return (double) list.size();
+private Object call(FunctionDeclNode func, List<Object> argValues) {
+    String name = func.name;
+    budget.tick();
+    tracer.functionEntered(name, argValues);
+
+    MemoTable.Key key = memo != null && func.pure ? MemoTable.key(func, argValues.toArray()) : null;
+    if (key != null) {
+        Object cached = memo.get(key);
+        if (cached != null) {
+            tracer.functionReturned(name, cached);
+            return cached;
         }
-        case "sum" -> {
-            if (args.size() != 1) throw new RuntimeException("sum() takes 1 array");
-            Object val = evaluate(args.get(0));
-            if (!(val instanceof List<?> list)) throw new RuntimeException("sum() expects an array");
-            double sum = 0;
-            for (Object o : list) {
-                if (o instanceof Double d) sum += d;
-                else throw new RuntimeException("sum() supports numeric arrays only");
-            }
-            return sum;
+    } else {
+        // Hot functions run as compiled code when their arguments allow it.
+        // Memoized calls stay in the interpreter, where the recursive calls
+        // go through the memo table as well.
+        Object compiled = Tier2Compiler.tryCall(profile, func, argValues, recursionDepth, budget);
+        if (compiled != null) {
+            tracer.functionReturned(name, compiled);
+            return compiled;
         }
-        case "max" -> {
-            if (args.size() != 1) throw new RuntimeException("max() takes 1 array");
-            Object val = evaluate(args.get(0));
-            if (!(val instanceof List<?> list)) throw new RuntimeException("max() expects an array");
-            if (list.isEmpty()) throw new RuntimeException("max() on empty array");
-            double max = Double.NEGATIVE_INFINITY;
-            for (Object o : list) {
-                if (o instanceof Double d) max = Math.max(max, d);
-                else throw new RuntimeException("max() supports numeric arrays only");
+    }
+
+    // ✅ Step 2: Increase recursionDepth only when we’re actually entering
+    if (++recursionDepth > MAX_RECURSION_DEPTH) {
+        throw new RuntimeException("Maximum recursion depth exceeded");
+    }
+
+    // ✅ Step 3: Save the slots the function can write, then bind parameters
+    Object[] slots = frame.slots;
+    int[] locals = func.localSlots;
+    Object[] saved = new Object[locals.length];
+    for (int i = 0; i < locals.length; i++) {
+        saved[i] = slots[locals[i]];
+    }
+
+    for (int i = 0; i < func.parameterSlots.length; i++) {
+        slots[func.parameterSlots[i]] = argValues.get(i);
+    }
+
+    insideFunction = true;
+    int errorsBefore = errorsReported;
+    int status;
+    int tailCalls = 0; // calls made by 'return f(...)', each still owed a return event
+    Object result = null;
+
+    try {
+        while (true) {
+            status = executeAll(func.body);
+            if (status != RETURN || tailCall == null) break;
+
+            FunctionDeclNode target = tailCall;
+            List<Object> next = tailArgs;
+            tailCall = null;
+            tailArgs = null;
+            if (target != func) {
+                // 'f' was redeclared while this body ran; make an ordinary call
+                result = call(target, next);
+                break;
             }
-            return max;
-        }
-        case "min" -> {
-            if (args.size() != 1) throw new RuntimeException("min() takes 1 array");
-            Object val = evaluate(args.get(0));
-            if (!(val instanceof List<?> list)) throw new RuntimeException("min() expects an array");
-            if (list.isEmpty()) throw new RuntimeException("min() on empty array");
-            double min = Double.POSITIVE_INFINITY;
-            for (Object o : list) {
-                if (o instanceof Double d) min = Math.min(min, d);
-                else throw new RuntimeException("min() supports numeric arrays only");
+            budget.tick();
+            tracer.functionEntered(name, next);
+            tailCalls++;
+            Object value = Tier2Compiler.tryCall(profile, func, next, recursionDepth - 1, budget);
+            if (value != null) {
+                result = value;
+                break;
+            }
+            // The callee would see this call's variables, so only the parameters change
+            for (int i = 0; i < func.parameterSlots.length; i++) {
+                slots[func.parameterSlots[i]] = next.get(i);
             }
-            return min;
-        }
-        case "sqrt" -> {
-            if (args.size() != 1) throw new RuntimeException("sqrt() takes 1 number");
-            Object val = evaluate(args.get(0));
-            if (!(val instanceof Double d)) throw new RuntimeException("sqrt() expects a number");
-            return Math.sqrt(d);
         }
-        case "abs" -> {
-            if (args.size() != 1) throw new RuntimeException("abs() takes 1 number");
-            Object val = evaluate(args.get(0));
-            if (!(val instanceof Double d)) throw new RuntimeException("abs() expects a number");
-            return Math.abs(d);
+    } finally {
+        insideFunction = false;
+        for (int i = 0; i < locals.length; i++) {
+            slots[locals[i]] = saved[i];
         }
-        case "pow" -> {
-            if (args.size() != 2) throw new RuntimeException("pow() takes 2 numbers");
-            Object base = evaluate(args.get(0));
-            Object exp = evaluate(args.get(1));
-            if (!(base instanceof Double b) || !(exp instanceof Double e))
-                throw new RuntimeException("pow() expects numeric arguments");
-            return Math.pow(b, e);
+        recursionDepth--;
+    }
+
+    if (status == STOP) {
+        // 'stop' outside a loop leaves the function and breaks the caller's loop
+        throw StopException.INSTANCE;
+    }
+    if (status == RETURN && result == null) {
+        result = returnValue;
+    }
+    returnValue = null;
+    if (key != null && errorsReported == errorsBefore) {
+        memo.put(key, result);
+    }
+    for (int i = 0; i <= tailCalls; i++) {
+        tracer.functionReturned(name, result);
+    }
+    return result;
+}
+
+// Evaluates the arguments of a tail call and leaves them for call() to
+// rebind. Returns false when the call has to be evaluated normally, which
+// also reports a missing function or a wrong argument count.
+private boolean prepareTailCall(FunctionCallNode callExpr) {
+    FunctionDeclNode func = functions.get(callExpr.name);
+    if (func == null || callExpr.arguments.size() != func.parameters.size()) {
+        return false;
+    }
+    List<Object> argValues = new ArrayList<>();
+    for (ExpressionNode arg : callExpr.arguments) {
+        argValues.add(evaluate(arg));
+    }
+    tailCall = func;
+    tailArgs = argValues;
+    return true;
+}
+private Object evaluateBuiltIn(String name, List<ExpressionNode> args) {
+    Builtins.checkArity(name, args.size());
+    Object[] values = new Object[args.size()];
+    for (int i = 0; i < values.length; i++) {
+        values[i] = evaluate(args.get(i));
+    }
+    return Builtins.apply(name, values, budget);
+}
+
+// Primitive entry point for number-valued expressions. Throws
+// UnexpectedResultException with the evaluated value when it isn't a number,
+// so callers can fall back to the boxed path without evaluating twice.
+private double evaluateDouble(ExpressionNode expr) throws UnexpectedResultException {
+    if (expr instanceof NumberLiteral literal) {
+        return literal.value;
+    }
+    if (expr instanceof VariableRef ref) {
+        Object value = frame.slots[ref.slot];
+        if (value instanceof Integer i) return i;
+        if (value instanceof Double d) return d;
+        if (value == Frame.UNASSIGNED) {
+            throw new RuntimeException("Undefined variable: " + ref.name);
+        }
+        throw new UnexpectedResultException(value);
+    }
+    if (expr instanceof BinaryExpr bin && bin.op.isArithmetic()) {
+        return arithmetic(bin);
+    }
+    if (expr instanceof InductionExpr induction) {
+        return (Double) frame.slots[induction.slot];
+    }
+    if (expr instanceof InvariantExpr invariant) {
+        Object value = invariant(invariant);
+        if (value instanceof Double d) return d;
+        if (value instanceof Integer i) return i;
+        throw new UnexpectedResultException(value);
+    }
+    if (expr instanceof ArrayAccessNode access) {
+        ElplArray list = array(access.slot, access.arrayName);
+        int idx = elementIndex(list, access.index);
+        if (list.isNumeric()) {
+            return list.getDouble(idx);
+        }
+        Object value = list.get(idx);
+        if (value instanceof Integer i) return i;
+        if (value instanceof Double d) return d;
+        throw new UnexpectedResultException(value);
+    }
+    if (expr instanceof UnaryExpr unary && unary.op == Operator.NEGATE) {
+        try {
+            return -evaluateDouble(unary.expr);
+        } catch (UnexpectedResultException e) {
+            throw new RuntimeException("Unary '-' can only be applied to numbers");
         }
-        case "floor" -> {
-            if (args.size() != 1) throw new RuntimeException("floor() takes 1 number");
-            Object val = evaluate(args.get(0));
-            if (!(val instanceof Double d)) throw new RuntimeException("floor() expects a number");
-            return Math.floor(d);
+    }
+    Object value = evaluate(expr);
+    if (value instanceof Integer i) return i;
+    if (value instanceof Double d) return d;
+    throw new UnexpectedResultException(value);
+}
+
+// Primitive entry point for boolean-valued expressions, same contract as evaluateDouble
+private boolean evaluateBoolean(ExpressionNode expr) throws UnexpectedResultException {
+    if (expr instanceof BinaryExpr bin && bin.op.isComparison()) {
+        return compare(bin);
+    }
+    if (expr instanceof LogicalExpr logical) {
+        return logical(logical);
+    }
+    if (expr instanceof UnaryExpr unary && unary.op == Operator.NOT) {
+        try {
+            return !evaluateBoolean(unary.expr);
+        } catch (UnexpectedResultException e) {
+            throw new RuntimeException("'not' can only be applied to booleans");
         }
-        case "ceil" -> {
-            if (args.size() != 1) throw new RuntimeException("ceil() takes 1 number");
-            Object val = evaluate(args.get(0));
-            if (!(val instanceof Double d)) throw new RuntimeException("ceil() expects a number");
-            return Math.ceil(d);
-        } 
-        case "reverse" -> {
-             if (args.size() != 1) throw new RuntimeException("reverse() takes exactly 1 array");
-             Object val = evaluate(args.get(0));
-              if (!(val instanceof List)){ throw new RuntimeException("reverse() expects an array");}
+    }
+    Object value = evaluate(expr);
+    if (value instanceof Boolean b) return b;
+    throw new UnexpectedResultException(value);
+}
+
+// Evaluated until it succeeds once after its loop is entered (see LoopOptimizer)
+private Object invariant(InvariantExpr invariant) {
+    Object value = frame.slots[invariant.slot];
+    if (value == null) {
+        value = evaluate(invariant.expr);
+        frame.slots[invariant.slot] = value;
+    }
+    return value;
+}
+
+private void clearInvariants(List<InvariantExpr> invariants) {
+    for (int i = 0; i < invariants.size(); i++) {
+        frame.slots[invariants.get(i).slot] = null;
+    }
+}
+
+private ElplArray array(int slot, String name) {
+    if (!(frame.slots[slot] instanceof ElplArray list)) {
+        throw new RuntimeException("Variable '" + name + "' is not an array");
+    }
+    return list;
+}
+
+private int elementIndex(ElplArray list, ExpressionNode index) {
+    int idx;
+    try {
+        idx = (int) evaluateDouble(index);
+    } catch (UnexpectedResultException e) {
+        throw new RuntimeException("Array index must be a number");
+    }
+    if (idx < 0 || idx >= list.size()) {
+        throw new RuntimeException("Array index out of bounds");
+    }
+    return idx;
+}
+
+// Converts like toDouble, without boxing numeric results
+private double number(ExpressionNode expr) {
+    try {
+        return evaluateDouble(expr);
+    } catch (UnexpectedResultException e) {
+        return toDouble(e.result);
+    }
+}
+
+// Always produces a Double or fails (see TypeInference)
+private static boolean isNumeric(ExpressionNode expr) {
+    return expr != null && expr.type == ValueType.DOUBLE;
+}
+
+// Always produces an Integer or a Double, or fails
+private static boolean isNumber(ExpressionNode expr) {
+    return expr != null && expr.type.isNumber();
+}
+
+private double arithmetic(BinaryExpr bin) {
+    double left;
+    double right;
+    // A non-number operand takes the boxed path for its error message,
+    // after both sides have been evaluated as before
+    try {
+        left = evaluateDouble(bin.left);
+    } catch (UnexpectedResultException e) {
+        return toDouble(binary(bin.op, e.result, evaluate(bin.right)));
+    }
+    try {
+        right = evaluateDouble(bin.right);
+    } catch (UnexpectedResultException e) {
+        return toDouble(binary(bin.op, left, e.result));
+    }
 
-              // In-place reverse
-              @SuppressWarnings("unchecked")
-              List<Object> list = (List<Object>) val;
-             int left = 0;
-             int right = list.size() - 1;
-             while (left < right) {
-              Object temp = list.get(left);
-              list.set(left, list.get(right));
-              list.set(right, temp);
-              left++;
-              right--;
+    switch (bin.op) {
+        case ADD:
+            return left + right;
+        case SUBTRACT:
+            return left - right;
+        case MULTIPLY:
+            return left * right;
+        case DIVIDE:
+            if (right == 0.0) throw new RuntimeException("Division by zero");
+            return left / right;
+        case MOD:
+            if (right == 0.0) throw new RuntimeException("Illegal modulo use: modulo by zero");
+            return left % right;
+        default:
+            throw new RuntimeException("Unsupported operator: " + bin.op);
     }
+}
 
-    return list; // Reverse returns nothing
+private boolean compare(BinaryExpr bin) {
+    double left;
+    double right;
+    try {
+        left = evaluateDouble(bin.left);
+    } catch (UnexpectedResultException e) {
+        return (Boolean) binary(bin.op, e.result, evaluate(bin.right));
+    }
+    try {
+        right = evaluateDouble(bin.right);
+    } catch (UnexpectedResultException e) {
+        return (Boolean) binary(bin.op, left, e.result);
+    }
+
+    switch (bin.op) {
+        case EQUAL:
+            return left == right;
+        case NOT_EQUAL:
+            return left != right;
+        case GREATER:
+            return left > right;
+        case LESS:
+            return left < right;
+        case GREATER_EQUAL:
+            return left >= right;
+        case LESS_EQUAL:
+            return left <= right;
+        default:
+            throw new RuntimeException("Unsupported operator: " + bin.op);
+    }
 }
-        default -> throw new RuntimeException("Unknown built-in function: " + name);
+
+private boolean logical(LogicalExpr logical) {
+    // Only evaluate the right side when the left one doesn't decide the result
+    boolean left = logicalOperand(logical.left, logical.op);
+    if (logical.op == Operator.AND ? !left : left) {
+        return left;
     }
+    return logicalOperand(logical.right, logical.op);
 }
 
+private boolean logicalOperand(ExpressionNode operand, Operator op) {
+    try {
+        return evaluateBoolean(operand);
+    } catch (UnexpectedResultException e) {
+        return Values.logicalOperand(e.result, op);
+    }
+}
+
+// Boxed operator semantics, used when an operand isn't a number
+private Object binary(Operator op, Object left, Object right) {
+    switch (op) {
+        case ADD:
+            return toDouble(left) +  toDouble(right);
+        case SUBTRACT:
+            return toDouble(left) - toDouble(right);
+        case MULTIPLY:
+            return toDouble(left) * toDouble(right);
+        case DIVIDE:
+            double rVal = toDouble(right);
+            if (rVal == 0.0) throw new RuntimeException("Division by zero");
+            return toDouble(left) / rVal;
+        case MOD:
+            double modRight = toDouble(right);
+            if(modRight == 0.0) throw new RuntimeException("Illegal modulo use: modulo by zero");
+            return toDouble(left) % modRight;
+
+        case EQUAL:
+          if (left instanceof Number && right instanceof Number) {
+             return toDouble(left) == toDouble(right);
+             }
+            
+            return left.equals(right);
+        
+        case GREATER:
+            return toDouble(left) > toDouble(right);
+        case LESS:
+            return toDouble(left) < toDouble(right);
+        case GREATER_EQUAL:
+           return toDouble(left) >= toDouble(right);
+        case LESS_EQUAL:
+           return toDouble(left) <= toDouble(right);
+        case NOT_EQUAL:
+             if (left == null || right == null) {
+                  return left != right; // null-safe inequality
+             }
+             if (left instanceof Number && right instanceof Number) {
+                  return toDouble(left) != toDouble(right);
+             }
+               return !left.equals(right);   
 
+        default:
+            throw new RuntimeException("Unsupported operator: " + op);
+    }
+}
 
 private double toDouble(Object value) {
-    if (value instanceof Integer) return ((Integer) value).doubleValue();
-    if (value instanceof Double) return (Double) value;
-    throw new RuntimeException("Expected numeric value but got: " + value);
+    return Values.toDouble(value);
 }
 
 
 
     // Evaluates conditions for if/while
     private boolean evaluateCondition(Condition cond) {
+        boolean result = testCondition(cond);
+        tracer.conditionEvaluated(cond, result);
+        return result;
+    }
+
+    private boolean testCondition(Condition cond) {
     // Handle pure boolean condition (no comparator)
     if (cond.comparator == null) {
-        Object result = evaluate(cond.left);
-        if (!(result instanceof Boolean)) {
+        try {
+            return evaluateBoolean(cond.left);
+        } catch (UnexpectedResultException e) {
             throw new RuntimeException("Expected boolean expression in condition");
         }
-        return (Boolean) result;
     }
 
     // Handle comparison conditions
     Object left = evaluate(cond.left);
     Object right = evaluate(cond.right);
 
-    System.out.println("Condition: " + left + " " + cond.comparator + " " + right);
-
     switch (cond.comparator) {
-        case "is equal to":
+        case EQUAL:
             if (left instanceof Number && right instanceof Number) {
                 return toDouble(left) == toDouble(right);
             }
             return Objects.equals(left, right);
-        case "is greater than":
+        case GREATER:
             return toDouble(left) > toDouble(right);
-        case "is less than":
+        case LESS:
             return toDouble(left) < toDouble(right);
-        case "is greater than or equal to":
+        case GREATER_EQUAL:
          return toDouble(left) >= toDouble(right);
-        case "is less than or equal to":
+        case LESS_EQUAL:
          return toDouble(left) <= toDouble(right);
 
         default:
@@ -1,23 +1,297 @@
 package com.syed.elpl_backend;
 
-import java.util.List;
-import org.springframework.stereotype.Service; 
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
 
 @Service
 public class InterpreterService {
 
+    private static final int TRACE_EVENTS = 1000; // ring buffer size of a traced run
+
+    // Repeat submissions of a program skip the Lexer and Parser
+    private final ProgramCache cache;
+
+    // Whether runs memoize pure function calls when the request doesn't say,
+    // and how many results one run keeps
+    private final boolean memoizeByDefault;
+    private final int memoEntries;
+
+    // Editors' documents, checked incrementally as they change
+    private final Documents documents;
+
+    // Steps, milliseconds and bytes one run may take (see Budget); 0 for no limit
+    private final long fuel;
+    private final long timeLimitMillis;
+    private final long memoryLimit;
+
+    // Array length from which the array builtins split work across threads
+    private final int parallelThreshold;
+
+    // Batch runs (runBatch): at most batchPermits programs run at once,
+    // across all batches
+    private final ExecutorService batchExecutor;
+    private final Semaphore batchPermits;
+
+    public InterpreterService() {
+        this(256, 1_000_000, false, 10_000, 64, 0, 1_000_000_000L, 60_000L, 256, Budget.DEFAULT_PARALLEL_THRESHOLD, true);
+    }
+
+    @Autowired
+    public InterpreterService(@Value("${elpl.cache.max-entries:256}") int maxEntries,
+                              @Value("${elpl.cache.max-weight:1000000}") long maxWeight,
+                              @Value("${elpl.memo.enabled:false}") boolean memoizeByDefault,
+                              @Value("${elpl.memo.max-entries:10000}") int memoEntries,
+                              @Value("${elpl.documents.max-entries:64}") int maxDocuments,
+                              @Value("${elpl.batch.parallelism:0}") int batchParallelism,
+                              @Value("${elpl.limits.fuel:1000000000}") long fuel,
+                              @Value("${elpl.limits.time-ms:60000}") long timeLimitMillis,
+                              @Value("${elpl.limits.memory-mb:256}") long memoryLimitMb,
+                              @Value("${elpl.builtins.parallel-threshold:100000}") int parallelThreshold,
+                              @Value("${elpl.optimizer.enabled:true}") boolean optimize) {
+        this.cache = new ProgramCache(maxEntries, maxWeight, optimize);
+        this.memoizeByDefault = memoizeByDefault;
+        this.memoEntries = memoEntries;
+        this.documents = new Documents(maxDocuments);
+        this.fuel = fuel;
+        this.timeLimitMillis = timeLimitMillis;
+        this.memoryLimit = memoryLimitMb * 1024 * 1024;
+        this.parallelThreshold = parallelThreshold;
+        int parallelism = batchParallelism > 0 ? batchParallelism : Runtime.getRuntime().availableProcessors();
+        this.batchExecutor = batchExecutor(parallelism);
+        this.batchPermits = new Semaphore(parallelism);
+    }
+
     public String run(String code) {
+        return run(code, Engine.TREE);
+    }
+
+    public String run(String code, Engine engine) {
+        return run(code, engine, null);
+    }
+
+    // memoize: null uses the configured default
+    public String run(String code, Engine engine, Boolean memoize) {
+        OutputSink sink = new OutputSink();
+        run(code, engine, sink, Tracer.NONE, memoize);
+        return sink.toString();
+    }
+
+    // Runs the program and returns its output along with the last traced
+    // events. Only the tree engine emits events.
+    public Map<String, Object> runTraced(String code, Engine engine, Boolean memoize) {
+        OutputSink sink = new OutputSink();
+        RingBufferTracer tracer = new RingBufferTracer(TRACE_EVENTS);
+        run(code, engine, sink, tracer, memoize);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("output", sink.toString());
+        result.put("trace", tracer.events());
+        result.put("droppedEvents", tracer.dropped());
+        return result;
+    }
+
+    // Runs the program and returns its output along with what Optimizer
+    // changed in it
+    public Map<String, Object> runReported(String code, Engine engine, Boolean memoize) {
+        OutputSink sink = new OutputSink();
+        List<String> optimizations = new ArrayList<>();
+        run(() -> {
+            CachedProgram program = cache.get(code);
+            optimizations.addAll(program.optimizations);
+            return program;
+        }, engine, sink, Tracer.NONE, memoize);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("output", sink.toString());
+        result.put("optimizations", optimizations);
+        return result;
+    }
+
+    // Runs the programs concurrently and hands each one's output to
+    // 'results' on the calling thread: in the order given, or else as they
+    // complete. Copies of a program are lexed and parsed once. If 'results'
+    // throws, the programs that haven't started are dropped and the running
+    // ones are cancelled.
+    public void runBatch(List<String> programs, Engine engine, Boolean memoize, boolean ordered,
+                         BatchResults results) throws IOException, InterruptedException {
+        Map<String, SharedProgram> shared = new HashMap<>();
+        BlockingQueue<BatchResult> done = new LinkedBlockingQueue<>();
+        List<Future<?>> tasks = new ArrayList<>(programs.size());
         try {
-            Lexer lexer = new Lexer(code);
-            List<Token> tokens = lexer.tokenize();
+            for (int i = 0; i < programs.size(); i++) {
+                int index = i;
+                SharedProgram program = shared.computeIfAbsent(programs.get(i), SharedProgram::new);
+                tasks.add(batchExecutor.submit(() -> {
+                    String output = "Error: the program did not finish";
+                    try {
+                        output = runBatched(program, engine, memoize);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.add(new BatchResult(index, output));
+                    }
+                }));
+            }
 
-            Parser parser = new Parser(tokens);
-            ASTNode ast = parser.parse();
+            BatchResult[] waiting = new BatchResult[programs.size()]; // ordered: done before an earlier one
+            int next = 0;
+            for (int received = 0; received < programs.size(); received++) {
+                BatchResult result = done.take();
+                if (!ordered) {
+                    results.accept(result.index, result.output);
+                    continue;
+                }
+                waiting[result.index] = result;
+                while (next < waiting.length && waiting[next] != null) {
+                    results.accept(next, waiting[next].output);
+                    waiting[next++] = null;
+                }
+            }
+        } finally {
+            // Programs still waiting for a permit are interrupted out of it, and
+            // running ones stop at their Budget's next check
+            for (Future<?> task : tasks) {
+                task.cancel(true);
+            }
+        }
+    }
 
-            Interpreter interpreter = new Interpreter();
-            return interpreter.interpret(ast); // Now returns output string
+    private String runBatched(SharedProgram program, Engine engine, Boolean memoize) throws InterruptedException {
+        batchPermits.acquire();
+        try {
+            OutputSink sink = new OutputSink();
+            run(program::get, engine, sink, Tracer.NONE, memoize);
+            return sink.toString();
+        } finally {
+            batchPermits.release();
+        }
+    }
+
+    // Runs the program, handing output to the sink as it is produced. A run
+    // that goes over its Budget ends with a runtime error after the output it
+    // produced.
+    void run(String code, Engine engine, OutputSink sink, Tracer tracer, Boolean memoize) {
+        run(() -> cache.get(code), engine, sink, tracer, memoize);
+    }
+
+    private void run(Supplier<CachedProgram> source, Engine engine, OutputSink sink, Tracer tracer, Boolean memoize) {
+        try {
+            CachedProgram program = source.get();
+            MemoTable memo = (memoize != null ? memoize : memoizeByDefault) ? new MemoTable(memoEntries) : null;
+            Budget budget = new Budget(fuel, timeLimitMillis, memoryLimit);
+            budget.parallelThreshold = parallelThreshold;
+            sink.budget = budget;
+
+            if (engine == Engine.NODES) {
+                NodeCompiler.run(program.ast, sink, memo, budget);
+            } else if (engine == Engine.VM) {
+                BytecodeVM.run(program.bytecode(), sink, memo, budget);
+            } else {
+                new Interpreter(sink, tracer, memo, budget).interpret(program.ast);
+            }
+        } catch (RunAbortedException e) {
+            sink.buffer.append("Runtime Error: ").append(e.getMessage()).append("\n");
         } catch (Exception e) {
-            return "Compiler Error: " + e.getMessage();
+            sink.fail("Compiler Error: " + e.getMessage());
+        }
+        sink.close();
+    }
+
+    // Opens the document, or replaces its whole text, and checks it
+    public Map<String, Object> check(String id, String text) {
+        Document document = documents.open(id, text);
+        synchronized (document) {
+            return diagnostics(document.check(), document);
+        }
+    }
+
+    // Replaces the characters [start, end) of an open document and checks it
+    public Map<String, Object> edit(String id, int start, int end, String text) {
+        Document document = documents.get(id);
+        if (document == null) {
+            return diagnostics("Unknown document '" + id + "': send its whole text first", null);
+        }
+        synchronized (document) {
+            try {
+                document.edit(start, end, text);
+            } catch (IllegalArgumentException e) {
+                return diagnostics(e.getMessage(), null);
+            }
+            return diagnostics(document.check(), document);
         }
     }
+
+    // error is null when the document parses
+    private static Map<String, Object> diagnostics(String error, Document document) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("error", error);
+        if (document != null) {
+            result.put("statements", document.statementCount());
+            result.put("reparsed", document.reparsed());
+        }
+        return result;
+    }
+
+    public Map<String, Object> cacheStats() {
+        return cache.stats();
+    }
+
+    // Virtual threads on Java 21 and later, where a batch waiting for a
+    // permit costs no platform threads; otherwise a pool of 'parallelism'
+    private static ExecutorService batchExecutor(int parallelism) {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(parallelism, task -> {
+                Thread thread = new Thread(task, "elpl-batch");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // A program in a batch, maybe several times over. The first run to need
+    // it gets it from the cache, which lexes and parses it on a miss, and the
+    // others share that result or error.
+    private final class SharedProgram {
+        private final String code;
+        private CachedProgram program;
+        private RuntimeException error;
+
+        SharedProgram(String code) {
+            this.code = code;
+        }
+
+        synchronized CachedProgram get() {
+            if (program == null && error == null) {
+                try {
+                    program = cache.get(code);
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+            }
+            if (error != null) throw error;
+            return program;
+        }
+    }
+
+    private static final class BatchResult {
+        final int index;
+        final String output;
+
+        BatchResult(int index, String output) {
+            this.index = index;
+            this.output = output;
+        }
+    }
+
+    // Receives the results of runBatch
+    interface BatchResults {
+        void accept(int index, String output) throws IOException;
+    }
 }
@@ -2,153 +2,185 @@ package com.syed.elpl_backend;
 
 import java.util.*;
 
+// Splits source text into tokens. The first character of a token decides
+// what it can be; words are walked through KEYWORDS, a trie over every
+// keyword and multi-word comparator phrase, while they are scanned. A keyword
+// only counts when whitespace, punctuation or the end of input follows it,
+// and the longest such match wins ("is greater than or equal to" over "is
+// greater than"). Anything else starting with a letter is an identifier.
 class Lexer {
     private String input;
     private int pos = 0;
     private int line = 1;
     private int column = 1;
 
+    // Set by relex
+    int keptTokens;
+    int resumedAt;
+
+    private static final KeywordTrie KEYWORDS = new KeywordTrie();
+
+    static {
+        KEYWORDS.add("let", TokenType.LET);
+        KEYWORDS.add("float", TokenType.FLOAT);
+        KEYWORDS.add("for", TokenType.FOR);
+        KEYWORDS.add("to", TokenType.TO);
+        KEYWORDS.add("be", TokenType.BE);
+        KEYWORDS.add("print", TokenType.PRINT);
+        KEYWORDS.add("add", TokenType.ADD);
+        KEYWORDS.add("subtract", TokenType.SUBTRACT);
+        KEYWORDS.add("multiply", TokenType.MULTIPLY);
+        KEYWORDS.add("divide", TokenType.DIVIDE);
+        KEYWORDS.add("true", TokenType.TRUE);
+        KEYWORDS.add("false", TokenType.FALSE);
+        KEYWORDS.add("Array", TokenType.ARRAY);
+        KEYWORDS.add("stop", TokenType.STOP);
+        KEYWORDS.add("mod", TokenType.MOD);
+        KEYWORDS.add("is greater than or equal to", TokenType.IS_GREATER_THAN_OR_EQUAL_TO);
+        KEYWORDS.add("is less than or equal to", TokenType.IS_LESS_THAN_OR_EQUAL_TO);
+        KEYWORDS.add("not equal to", TokenType.NOT_EQUAL_TO);
+        KEYWORDS.add("is greater than", TokenType.IS_GREATER_THAN);
+        KEYWORDS.add("is less than", TokenType.IS_LESS_THAN);
+        KEYWORDS.add("is equal to", TokenType.IS_EQUAL_TO);
+        KEYWORDS.add("otherwise", TokenType.OTHERWISE);
+        KEYWORDS.add("if", TokenType.IF);
+        KEYWORDS.add("then", TokenType.THEN);
+        KEYWORDS.add("and", TokenType.AND);
+        KEYWORDS.add("or", TokenType.OR);
+        KEYWORDS.add("not", TokenType.NOT);
+        KEYWORDS.add("repeat", TokenType.REPEAT);
+        KEYWORDS.add("times", TokenType.TIMES);
+        KEYWORDS.add("while", TokenType.WHILE);
+        KEYWORDS.add("return", TokenType.RETURN);
+        KEYWORDS.add("function", TokenType.FUNCTION);
+        KEYWORDS.add("call", TokenType.CALL);
+    }
+
     public Lexer(String input) {
         this.input = input;
     }
 
     public List<Token> tokenize() {
-        List<Token> tokens = new ArrayList<>();
-
-        while (pos < input.length()) {
-            if (Character.isWhitespace(current())) {
-                advance();
-                continue;
-            }
-
-            // Single-line comment: starts with /
-            if (current() == '/') {
-                skipSingleLineComment();
-                continue;
-            }
-
-            // Multi-line comment: > ... <
-            if (current() == '>') {
-                skipMultiLineComment();
-                continue;
-            }
-
-            // --- Language Keywords ---
-            if (match("let")) tokens.add(new Token(TokenType.LET, "let", line, column));
-            else if(match("float")) tokens.add(new Token(TokenType.FLOAT, "float", line, column));
-            else if (match("for")) tokens.add(new Token(TokenType.FOR, "for", line, column));
-            else if (match("to")) tokens.add(new Token(TokenType.TO, "to", line, column));
-            else if (current() == '[') { tokens.add(new Token(TokenType.LBRACKET, "[", line, column)); advance(); }
-            else if (current() == ']') { tokens.add(new Token(TokenType.RBRACKET, "]", line, column)); advance(); }
-            else if (current() == ',') { tokens.add(new Token(TokenType.COMMA, ",", line, column)); advance(); }
-
-            else if (match("be")) tokens.add(new Token(TokenType.BE, "be", line, column));
-            else if (match("print")) tokens.add(new Token(TokenType.PRINT, "print", line, column));
-            else if (match("add")) tokens.add(new Token(TokenType.ADD, "add", line, column));
-            else if (match("subtract")) tokens.add(new Token(TokenType.SUBTRACT, "subtract", line, column));
-            else if (match("multiply")) tokens.add(new Token(TokenType.MULTIPLY, "multiply", line, column));
-            else if (match("divide")) tokens.add(new Token(TokenType.DIVIDE, "divide", line , column));
-
-            // Booleans 
-            else if (match("true")) tokens.add(new Token(TokenType.TRUE, "true", line, column));
-            else if (match("false")) tokens.add(new Token(TokenType.FALSE, "false", line, column));
-
-
-            // Arrays
-            else if (match("Array")) tokens.add(new Token(TokenType.ARRAY, "Array", line, column));
-
-            // stop
-
-            else if (match("stop")) tokens.add(new Token(TokenType.STOP, "stop", line, column));
-
-            //MOD
-            else if(match("mod")) tokens.add(new Token(TokenType.MOD, "mod", line, column));
-            
-
-
-            // Conditional logic
-            else if (match("is greater than or equal to")) tokens.add(new Token(TokenType.IS_GREATER_THAN_OR_EQUAL_TO, "is greater than or equal to", line, column));
-
-            else if (match("is less than or equal to")) tokens.add(new Token(TokenType.IS_LESS_THAN_OR_EQUAL_TO, "is less than or equal to", line, column));
-
-            else if (match("not equal to")) tokens.add(new Token(TokenType.NOT_EQUAL_TO, "not equal to", line, column));
-            
-            else if (match("is greater than")) tokens.add(new Token(TokenType.IS_GREATER_THAN, "is greater than", line, column));
-            else if (match("is less than")) tokens.add(new Token(TokenType.IS_LESS_THAN, "is less than", line, column));
-            else if (match("is equal to")) tokens.add(new Token(TokenType.IS_EQUAL_TO, "is equal to", line, column));
-            else if (match("otherwise")) tokens.add(new Token(TokenType.OTHERWISE, "otherwise", line, column));
-            else if (match("if")) tokens.add(new Token(TokenType.IF, "if", line, column));
-            else if (match("then")) tokens.add(new Token(TokenType.THEN, "then", line, column));
-            else if (match("and")) tokens.add(new Token(TokenType.AND, "and", line, column));
-            else if (match("or")) tokens.add(new Token(TokenType.OR, "or", line, column));
-            else if (match("not")) tokens.add(new Token(TokenType.NOT, "not", line, column));
-
-            // semicolon
-            else if (current() == ';') { tokens.add(new Token(TokenType.SEMICOLON, ";", line, column)); advance(); }
-
-            // minus
-            else if (current() == '-'){
-                tokens.add(new Token(TokenType.MINUS, "-", line, column));
-                advance();
-                continue;
-            }
-            
-         
-
-            // Loops
-            else if (match("repeat")) tokens.add(new Token(TokenType.REPEAT, "repeat", line, column));
-            else if (match("times")) tokens.add(new Token(TokenType.TIMES, "times", line, column));
-            else if (match("while")) tokens.add(new Token(TokenType.WHILE, "while", line, column));
+        return lex().toList();
+    }
 
-            // return
-            else if(match("return")) tokens.add(new Token(TokenType.RETURN, "return", line, column));
+    // The tokens as offsets into the input; Parser reads this directly
+    public TokenBuffer lex() {
+        TokenBuffer tokens = new TokenBuffer(input);
+        while (skip()) {
+            read(tokens);
+        }
+        tokens.add(TokenType.EOF, input.length(), 0, line, column);
+        return tokens;
+    }
 
-            // Functions
-            else if (match("function")) tokens.add(new Token(TokenType.FUNCTION, "function", line, column));
-            else if (match("call")) tokens.add(new Token(TokenType.CALL, "call", line, column));
+    // Updates tokens, lexed from a text that became the input when its
+    // [start, end) was replaced by 'length' characters. The lexer has no state
+    // between tokens, so only the tokens it may have looked at the edited
+    // characters for are lexed again: tokens before them are kept, and once a
+    // new token starts where an old one did after the edit, the rest are kept
+    // too, shifted. Afterwards tokens [0, keptTokens) are unchanged, and the
+    // ones that were at resumedAt and on follow the new ones. On a lexer error
+    // tokens is left as it was.
+    void relex(TokenBuffer tokens, int start, int end, int length) {
+        int shift = length - (end - start);
+
+        // A word is matched against keywords up to the longest one, plus the
+        // character after it, before the lexer settles on it
+        keptTokens = tokens.indexAt(start - KEYWORDS.longest());
+        while (keptTokens > 0 && tokens.end(keptTokens - 1) >= start) {
+            keptTokens--;
+        }
 
-            // right and left parentheses
-            else if(current() == '('){
-                tokens.add(new Token(TokenType.LPAREN, "(", line, column));
-                advance();
-            } else if(current() == ')'){
-                tokens.add(new Token(TokenType.RPAREN, ")", line, column));
-                advance();
+        TokenBuffer relexed = new TokenBuffer(input, length / 4 + 16);
+        pos = keptTokens == 0 ? 0 : tokens.end(keptTokens - 1);
+        while (skip()) {
+            if (pos >= start + length) {
+                int old = tokens.indexAt(pos - shift);
+                if (tokens.start(old) == pos - shift) {
+                    resumedAt = old;
+                    tokens.replace(keptTokens, old, relexed, shift, input);
+                    return;
+                }
             }
+            read(relexed);
+        }
+        relexed.add(TokenType.EOF, input.length(), 0, line, column);
+        resumedAt = tokens.size();
+        tokens.replace(keptTokens, tokens.size(), relexed, shift, input);
+    }
 
-            // Blocks
-            else if (current() == '{') {
-                tokens.add(new Token(TokenType.LBRACE, "{", line, column));
-                advance();
-            } else if (current() == '}') {
-                tokens.add(new Token(TokenType.RBRACE, "}", line, column));
+    // Moves past whitespace and comments; false at the end of input
+    private boolean skip() {
+        while (pos < input.length()) {
+            char c = current();
+            if (Character.isWhitespace(c)) {
                 advance();
+            } else if (c == '/') {
+                // Single-line comment: starts with /
+                skipSingleLineComment();
+            } else if (c == '>') {
+                // Multi-line comment: > ... <
+                skipMultiLineComment();
+            } else {
+                return true;
             }
+        }
+        return false;
+    }
 
+    private void read(TokenBuffer tokens) {
+        char c = current();
+        switch (c) {
+            case '[' -> single(tokens, TokenType.LBRACKET);
+            case ']' -> single(tokens, TokenType.RBRACKET);
+            case ',' -> single(tokens, TokenType.COMMA);
+            case ';' -> single(tokens, TokenType.SEMICOLON);
+            case '-' -> single(tokens, TokenType.MINUS);
+            case '(' -> single(tokens, TokenType.LPAREN);
+            case ')' -> single(tokens, TokenType.RPAREN);
+            case '{' -> single(tokens, TokenType.LBRACE);
+            case '}' -> single(tokens, TokenType.RBRACE);
             // String literals (e.g., "hello")
-            else if (current() == '"') {
-                tokens.add(new Token(TokenType.STRING, readString(), line, column));
-            }
-
-            // Numbers (e.g., 123)
-            else if (Character.isDigit(current())) {
-                tokens.add(new Token(TokenType.NUMBER, readNumber(), line, column));
+            case '"' -> readString(tokens);
+            default -> {
+                if (Character.isLetter(c)) {
+                    readWord(tokens);
+                } else if (Character.isDigit(c)) {
+                    // Numbers (e.g., 123)
+                    readNumber(tokens);
+                } else {
+                    throw new RuntimeException("Unexpected character: " + c);
+                }
             }
+        }
+    }
 
-            // Identifiers (e.g., variable names)
-            else if (Character.isLetter(current())) {
-                tokens.add(new Token(TokenType.IDENTIFIER, readIdentifier(), line, column));
-            }
+    private void single(TokenBuffer tokens, TokenType type) {
+        tokens.add(type, advance(), 1, line, column);
+    }
 
-            // Unknown character
-            else {
-                throw new RuntimeException("Unexpected character: " + current());
+    // A keyword or comparator phrase, or else an identifier
+    private void readWord(TokenBuffer tokens) {
+        int node = KeywordTrie.ROOT;
+        int keyword = -1; // trie node of the longest keyword found so far
+        int keywordEnd = pos;
+        for (int at = pos; at < input.length(); ) {
+            node = KEYWORDS.next(node, input.charAt(at++));
+            if (node < 0) break;
+            if (KEYWORDS.type(node) != null && isKeywordEnd(at)) {
+                keyword = node;
+                keywordEnd = at;
             }
         }
-
-        tokens.add(new Token(TokenType.EOF, "", line, column));
-        return tokens;
+        if (keyword >= 0) {
+            tokens.add(KEYWORDS.type(keyword), pos, keywordEnd - pos, line, column);
+            pos = keywordEnd;
+            return;
+        }
+        readIdentifier(tokens);
     }
+
     private int advance(){
         return pos++;
     }
@@ -158,16 +190,9 @@ class Lexer {
     }
 
 
-    // Match keyword and ensure it is followed by space or end of input
-    private boolean match(String keyword) {
-        int len = keyword.length();
-        if (input.regionMatches(pos, keyword, 0, len)) {
-            if (pos + len == input.length() || Character.isWhitespace(input.charAt(pos + len)) || isPunctuation(input.charAt(pos + len))) {
-                pos += len;
-                return true;
-            }
-        }
-        return false;
+    // A keyword must be followed by space, punctuation or the end of input
+    private boolean isKeywordEnd(int at) {
+        return at == input.length() || Character.isWhitespace(input.charAt(at)) || isPunctuation(input.charAt(at));
     }
     private boolean isPunctuation(char c){
         return ",.{}[]()\"".indexOf(c) >= 0;
@@ -178,30 +203,27 @@ class Lexer {
     }
 
     // Read string literal
-    private String readString() {
-        advance(); // Skip opening quote
-        StringBuilder sb = new StringBuilder();
+    private void readString(TokenBuffer tokens) {
+        int start = advance(); // Skip opening quote
         while (pos < input.length() && input.charAt(pos) != '"') {
-            sb.append(input.charAt(advance()));
+            advance();
         }
         advance(); // Skip closing quote
-        return sb.toString();
+        tokens.add(TokenType.STRING, start, Math.min(pos, input.length()) - start, line, column);
     }
 
     // Read number literal
-   private String readNumber() {
-    StringBuilder sb = new StringBuilder();
+   private void readNumber(TokenBuffer tokens) {
+    int start = pos;
     boolean hasDecimal = false;
 
     while (pos < input.length()) {
         char ch = input.charAt(pos);
 
         if (Character.isDigit(ch)) {
-            sb.append(ch);
             advance();
         } else if (ch == '.' && !hasDecimal) {
             hasDecimal = true;
-            sb.append(ch);
             advance();
         } else {
             break;
@@ -211,17 +233,17 @@ class Lexer {
         throw new RuntimeException("Invalid number format: ends with decimal point");
     }  unResolved at line 158 will resolve later*/
 
-    return sb.toString();
+    tokens.add(TokenType.NUMBER, start, pos - start, line, column);
 }
 
 
     // Read identifier (variable/function name)
-    private String readIdentifier() {
-        StringBuilder sb = new StringBuilder();
+    private void readIdentifier(TokenBuffer tokens) {
+        int start = pos;
         while (pos < input.length() && Character.isLetterOrDigit(input.charAt(pos))) {
-            sb.append(input.charAt(advance()));
+            advance();
         }
-        return sb.toString();
+        tokens.add(TokenType.IDENTIFIER, start, pos - start, line, column);
     }
 
     // Skip single-line comments
@@ -244,3 +266,72 @@ class Lexer {
         }
     }
 }
+
+// Keywords as a trie. Each node has one edge slot per character in ALPHABET,
+// all in one flat table, so a step is an array lookup.
+final class KeywordTrie {
+    static final int ROOT = 0;
+
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ ";
+    private static final int WIDTH = ALPHABET.length();
+    private static final byte[] COLUMN = new byte[128]; // column + 1 per ASCII char, 0 outside ALPHABET
+
+    static {
+        for (int i = 0; i < WIDTH; i++) {
+            COLUMN[ALPHABET.charAt(i)] = (byte) (i + 1);
+        }
+    }
+
+    private int[] edges = new int[WIDTH]; // node * WIDTH + column -> child, 0 for none
+    private TokenType[] types = new TokenType[1];
+    private int nodes = 1;
+    private int longest;
+
+    void add(String keyword, TokenType type) {
+        int node = ROOT;
+        for (int i = 0; i < keyword.length(); i++) {
+            int column = column(keyword.charAt(i));
+            if (column < 0) {
+                throw new IllegalArgumentException("Keyword character outside the trie alphabet: " + keyword);
+            }
+            int child = edges[node * WIDTH + column];
+            if (child == 0) {
+                child = newNode();
+                edges[node * WIDTH + column] = child;
+            }
+            node = child;
+        }
+        types[node] = type;
+        longest = Math.max(longest, keyword.length());
+    }
+
+    // The child of node along c, or -1 when no keyword continues that way
+    int next(int node, char c) {
+        int column = column(c);
+        if (column < 0) return -1;
+        int child = edges[node * WIDTH + column];
+        return child == 0 ? -1 : child;
+    }
+
+    // Token type of the keyword ending at node, or null
+    TokenType type(int node) {
+        return types[node];
+    }
+
+    // Length of the longest keyword
+    int longest() {
+        return longest;
+    }
+
+    private static int column(char c) {
+        return c < 128 ? COLUMN[c] - 1 : -1;
+    }
+
+    private int newNode() {
+        if (nodes == types.length) {
+            edges = Arrays.copyOf(edges, nodes * 2 * WIDTH);
+            types = Arrays.copyOf(types, nodes * 2);
+        }
+        return nodes++;
+    }
+}
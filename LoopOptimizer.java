@@ -0,0 +1,309 @@
+package com.syed.elpl_backend;
+
+import java.util.*;
+
+// Runs at the end of Optimizer.optimize, on each for and while loop,
+// outermost first:
+//
+//  - an expression in the body, or in a while loop's condition, that reads
+//    nothing the body changes becomes an InvariantExpr. It is still evaluated
+//    where it stands, so a loop that never gets to it never runs it, and a
+//    failure is reported by the same statement, every time, as before. Only
+//    the first evaluation that succeeds after the loop is entered does the
+//    work. Inner loops take it as they would a variable, so it ends up in
+//    the outermost loop it doesn't depend on.
+//  - 'i multiply c' for the iterator i, which the body doesn't assign, and a
+//    whole number c from 1 to 2^21, becomes an InductionExpr: the loop adds
+//    step times c to it every iteration instead. All the values involved are
+//    whole numbers below 2^53, so the sums come out exactly as the products.
+//
+// An invariant may read the variables the body doesn't write, as a 'let',
+// an array or the iterator of an inner loop, and call builtins that don't
+// change arrays. It may read array elements, or call the builtins that read
+// arrays, only when the body assigns no element and calls nothing that might,
+// since two variables can hold the same array. It never calls a user
+// function: one can read the caller's variables, and each call uses fuel.
+// 'scale' returns a new array every time, so it isn't hoisted either.
+//
+// 'parallel for' loops and everything in them are left alone, as are the
+// bodies of functions declared in a loop, which get loops of their own.
+final class LoopOptimizer {
+    private static final double MAX_FACTOR = 1 << 21;
+    private static final Set<String> ARRAY_READERS = Set.of("length", "sum", "max", "min", "dot");
+
+    private final List<String> report = new ArrayList<>();
+    private int hidden; // hidden variables named so far
+
+    // Per loop being optimized
+    private final Set<String> written = new HashSet<>();
+    private boolean arraysChange;
+    private ForNode forLoop;                // null for a while loop
+    private boolean iteratorAssigned;
+    private List<InvariantExpr> invariants; // of the loop
+    private String loopName;                // for the report
+
+    private LoopOptimizer() {}
+
+    static List<String> optimize(Program program) {
+        LoopOptimizer optimizer = new LoopOptimizer();
+        optimizer.find(program.statements);
+        return optimizer.report;
+    }
+
+    private void find(List<ASTNode> statements) {
+        for (ASTNode node : statements) {
+            if (node instanceof ForNode forNode) {
+                if (forNode.parallel) continue;
+                enter(forNode, null, forNode.body, forNode.invariants, "the loop over " + forNode.iterator);
+                statements(forNode.body);
+                find(forNode.body);
+            } else if (node instanceof WhileNode whileNode) {
+                enter(null, whileNode.condition, whileNode.body, whileNode.invariants, "the while loop");
+                whileNode.condition = condition(whileNode.condition);
+                statements(whileNode.body);
+                find(whileNode.body);
+            } else if (node instanceof RepeatNode repeat) {
+                find(repeat.body);
+            } else if (node instanceof FunctionDeclNode func) {
+                find(func.body);
+            } else if (node instanceof BlockNode block) {
+                find(block.statements);
+            } else if (node instanceof IfNode ifNode) {
+                find(ifNode.thenBlock.statements);
+                if (ifNode.elseBlock != null) find(ifNode.elseBlock.statements);
+            }
+        }
+    }
+
+    // Finds what a loop changes, before its condition and body are rewritten
+    private void enter(ForNode forNode, Condition condition, List<ASTNode> body,
+                       List<InvariantExpr> invariants, String loopName) {
+        written.clear();
+        arraysChange = false;
+        if (condition != null) {
+            collect(condition.left);
+            collect(condition.right);
+        }
+        collect(body);
+        forLoop = forNode;
+        iteratorAssigned = forNode != null && written.contains(forNode.iterator);
+        if (forNode != null) written.add(forNode.iterator);
+        this.invariants = invariants;
+        this.loopName = loopName;
+    }
+
+    private void collect(List<ASTNode> statements) {
+        for (ASTNode node : statements) {
+            if (node instanceof BlockNode block) {
+                collect(block.statements);
+            } else if (node instanceof AssignmentNode assign) {
+                written.add(assign.identifier);
+                collect(assign.expression);
+            } else if (node instanceof ArrayDecNode arrayDec) {
+                written.add(arrayDec.name);
+                arrayDec.elements.forEach(this::collect);
+            } else if (node instanceof ArrayAssignNode assign) {
+                arraysChange = true;
+                collect(assign.index);
+                collect(assign.value);
+            } else if (node instanceof PrintNode print) {
+                print.expressions.forEach(this::collect);
+            } else if (node instanceof ReturnNode ret) {
+                collect(ret.value);
+            } else if (node instanceof FunctionCallNode call) {
+                collect(call);
+            } else if (node instanceof IfNode ifNode) {
+                collect(ifNode.condition.left);
+                collect(ifNode.condition.right);
+                collect(ifNode.thenBlock.statements);
+                if (ifNode.elseBlock != null) collect(ifNode.elseBlock.statements);
+            } else if (node instanceof WhileNode whileNode) {
+                collect(whileNode.condition.left);
+                collect(whileNode.condition.right);
+                collect(whileNode.body);
+            } else if (node instanceof RepeatNode repeat) {
+                collect(repeat.body);
+            } else if (node instanceof ForNode forNode) {
+                written.add(forNode.iterator);
+                collect(forNode.start);
+                collect(forNode.end);
+                collect(forNode.body);
+            }
+            // A function declared here writes nothing until it is called
+        }
+    }
+
+    private void collect(ExpressionNode expr) {
+        if (expr instanceof FunctionCallNode call) {
+            if (!Builtins.isBuiltIn(call.name) || !Builtins.isPure(call.name)) arraysChange = true;
+            call.arguments.forEach(this::collect);
+        } else if (expr instanceof ArrayAccessNode access) {
+            collect(access.index);
+        } else if (expr instanceof BinaryExpr bin) {
+            collect(bin.left);
+            collect(bin.right);
+        } else if (expr instanceof LogicalExpr logical) {
+            collect(logical.left);
+            collect(logical.right);
+        } else if (expr instanceof UnaryExpr unary) {
+            collect(unary.expr);
+        }
+    }
+
+    private void statements(List<ASTNode> statements) {
+        for (ASTNode node : statements) {
+            if (node instanceof BlockNode block) {
+                statements(block.statements);
+            } else if (node instanceof AssignmentNode assign) {
+                assign.expression = expr(assign.expression);
+            } else if (node instanceof PrintNode print) {
+                print.expressions.replaceAll(this::expr);
+            } else if (node instanceof ReturnNode ret) {
+                ret.value = expr(ret.value);
+            } else if (node instanceof ArrayDecNode arrayDec) {
+                arrayDec.elements.replaceAll(this::expr);
+            } else if (node instanceof ArrayAssignNode assign) {
+                assign.index = expr(assign.index);
+                assign.value = expr(assign.value);
+            } else if (node instanceof FunctionCallNode call) {
+                call.arguments.replaceAll(this::expr);
+            } else if (node instanceof IfNode ifNode) {
+                ifNode.condition = condition(ifNode.condition);
+                statements(ifNode.thenBlock.statements);
+                if (ifNode.elseBlock != null) statements(ifNode.elseBlock.statements);
+            } else if (node instanceof WhileNode whileNode) {
+                whileNode.condition = condition(whileNode.condition);
+                statements(whileNode.body);
+            } else if (node instanceof RepeatNode repeat) {
+                statements(repeat.body);
+            } else if (node instanceof ForNode forNode) {
+                forNode.start = expr(forNode.start);
+                forNode.end = expr(forNode.end);
+                if (!forNode.parallel) statements(forNode.body);
+            }
+        }
+    }
+
+    private Condition condition(Condition cond) {
+        if (cond.comparator == null) {
+            return new Condition(expr(cond.left));
+        }
+        return new Condition(expr(cond.left), cond.comparator, expr(cond.right));
+    }
+
+    private ExpressionNode expr(ExpressionNode expr) {
+        if (expr == null || isLeaf(expr)) {
+            return expr;
+        }
+        if (isInvariant(expr)) {
+            InvariantExpr invariant = new InvariantExpr(expr, "$inv" + hidden++);
+            invariants.add(invariant);
+            report.add("Hoisted '" + Optimizer.text(expr) + "' out of " + loopName);
+            return invariant;
+        }
+        Double factor = inductionFactor(expr);
+        if (factor != null) {
+            InductionExpr induction = new InductionExpr((BinaryExpr) expr, factor, "$ind" + hidden++);
+            forLoop.inductions.add(induction);
+            report.add("Replaced '" + Optimizer.text(expr) + "' in " + loopName + " with a running sum");
+            return induction;
+        }
+
+        if (expr instanceof BinaryExpr bin) {
+            bin.left = expr(bin.left);
+            bin.right = expr(bin.right);
+        } else if (expr instanceof LogicalExpr logical) {
+            logical.left = expr(logical.left);
+            logical.right = expr(logical.right);
+        } else if (expr instanceof UnaryExpr unary) {
+            unary.expr = expr(unary.expr);
+        } else if (expr instanceof ArrayAccessNode access) {
+            access.index = expr(access.index);
+        } else if (expr instanceof FunctionCallNode call) {
+            call.arguments.replaceAll(this::expr);
+        }
+        return expr;
+    }
+
+    // Nothing to save by hoisting these
+    private static boolean isLeaf(ExpressionNode expr) {
+        return expr instanceof NumberLiteral || expr instanceof StringLiteral || expr instanceof BooleanLiteral
+                || expr instanceof VariableRef || expr instanceof InvariantExpr || expr instanceof InductionExpr;
+    }
+
+    private boolean isInvariant(ExpressionNode expr) {
+        if (expr instanceof VariableRef ref) {
+            return !written.contains(ref.name);
+        } else if (expr instanceof ArrayAccessNode access) {
+            return !arraysChange && !written.contains(access.arrayName) && isInvariant(access.index);
+        } else if (expr instanceof BinaryExpr bin) {
+            return isInvariant(bin.left) && isInvariant(bin.right);
+        } else if (expr instanceof LogicalExpr logical) {
+            return isInvariant(logical.left) && isInvariant(logical.right);
+        } else if (expr instanceof UnaryExpr unary) {
+            return isInvariant(unary.expr);
+        } else if (expr instanceof FunctionCallNode call) {
+            if (!Builtins.isBuiltIn(call.name) || !Builtins.isPure(call.name) || call.name.equals("scale")) {
+                return false;
+            }
+            if (arraysChange && ARRAY_READERS.contains(call.name)) return false;
+            for (ExpressionNode arg : call.arguments) {
+                if (!isInvariant(arg)) return false;
+            }
+            return true;
+        }
+        // Literals, and what outer loops hoisted or keep as sums: their iterator isn't written here
+        return true;
+    }
+
+    // c for 'i multiply c' or 'c multiply i' that can be a running sum, else null
+    private Double inductionFactor(ExpressionNode expr) {
+        if (forLoop == null || iteratorAssigned
+                || !(expr instanceof BinaryExpr bin) || bin.op != Operator.MULTIPLY) {
+            return null;
+        }
+        ExpressionNode other = isIterator(bin.left) ? bin.right : isIterator(bin.right) ? bin.left : null;
+        if (!(other instanceof NumberLiteral number)) return null;
+        double c = number.value;
+        // A negative factor would turn 0 times it into -0.0 only for the product
+        return c >= 1 && c <= MAX_FACTOR && c == Math.floor(c) ? c : null;
+    }
+
+    private boolean isIterator(ExpressionNode expr) {
+        return expr instanceof VariableRef ref && ref.name.equals(forLoop.iterator);
+    }
+}
+
+// The running values of a for loop's InductionExprs for one run of the loop
+final class InductionValues {
+    private final int[] slots;
+    private final double[] values;
+    private final double[] steps;
+
+    // start and step of the loop's iterator
+    InductionValues(List<InductionExpr> inductions, int start, int step) {
+        slots = new int[inductions.size()];
+        values = new double[slots.length];
+        steps = new double[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            InductionExpr induction = inductions.get(i);
+            slots[i] = induction.slot;
+            values[i] = start * induction.factor;
+            steps[i] = step * induction.factor;
+        }
+    }
+
+    // Before each iteration's body
+    void store(Object[] frame) {
+        for (int i = 0; i < slots.length; i++) {
+            frame[slots[i]] = values[i];
+        }
+    }
+
+    // After each iteration's body
+    void advance() {
+        for (int i = 0; i < values.length; i++) {
+            values[i] += steps[i];
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.syed.elpl_backend;
+
+import java.util.*;
+
+// Results of pure function calls (see Purity) for one run. Only calls whose
+// arguments and result are immutable values are kept, and once there are
+// maxEntries results the least recently used one is dropped.
+final class MemoTable {
+    private final LinkedHashMap<Key, Object> results;
+
+    MemoTable(int maxEntries) {
+        results = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    // The key of a call, or null when an argument isn't a plain value
+    static Key key(Object function, Object[] args) {
+        for (Object arg : args) {
+            if (!isValue(arg)) return null;
+        }
+        return new Key(function, args);
+    }
+
+    Object get(Key key) {
+        return results.get(key);
+    }
+
+    void put(Key key, Object result) {
+        if (isValue(result)) {
+            results.put(key, result);
+        }
+    }
+
+    // Arrays are mutable, and a function that returns nothing yields null
+    private static boolean isValue(Object value) {
+        return value instanceof Integer || value instanceof Double
+                || value instanceof Boolean || value instanceof String;
+    }
+
+    // 'function' is whatever the engine identifies functions by. Integer 1 and
+    // Double 1.0 print differently, so they stay distinct arguments.
+    static final class Key {
+        private final Object function;
+        private final Object[] args;
+        private final int hash;
+
+        private Key(Object function, Object[] args) {
+            this.function = function;
+            this.args = args;
+            this.hash = 31 * function.hashCode() + Arrays.hashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && key.function.equals(function) && Arrays.equals(key.args, args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.syed.elpl_backend;
+
+import java.util.*;
+
+// Compiles a resolved Program into the executable node tree (ExecNode) and
+// runs it. Produces the same output as Interpreter for the same program.
+final class NodeCompiler {
+    private final ExecContext context;
+
+    private NodeCompiler(OutputSink sink, MemoTable memo, Budget budget) {
+        this.context = new ExecContext(sink, memo, budget);
+    }
+
+    static String run(Program program) {
+        return run(program, new OutputSink(), null, Budget.unlimited());
+    }
+
+    // memo is null unless calls to pure functions should be memoized
+    static String run(Program program, OutputSink sink, MemoTable memo, Budget budget) {
+        Program resolved = Resolver.resolve(program);
+        NodeCompiler compiler = new NodeCompiler(sink, memo, budget);
+        SequenceNode root = compiler.compileBlock(resolved.statements);
+        return compiler.execute(root, new Frame(resolved.slotCount));
+    }
+
+    private String execute(SequenceNode root, Frame frame) {
+        try {
+            if (root.execute(frame) == StmtNode.RETURN) {
+                context.output.append("Runtime Error: 'return' used outside of a function.\n");
+            }
+        } catch (Interpreter.StopException e) {
+            // 'stop' outside any loop ends the program
+        }
+        return context.output.toString();
+    }
+
+    private SequenceNode compileBlock(List<ASTNode> statements) {
+        StmtNode[] nodes = new StmtNode[statements.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = compileStatement(statements.get(i));
+        }
+        return new SequenceNode(context, nodes);
+    }
+
+    private StmtNode compileStatement(ASTNode node) {
+        if (node instanceof BlockNode block) {
+            return compileBlock(block.statements);
+        } else if (node instanceof AssignmentNode assign) {
+            if (!assign.isFloat && isNumber(assign.expression)) {
+                return new LetNumberNode(assign.slot, compileExpr(assign.expression));
+            }
+            return new AssignNode(assign.slot, assign.isFloat, compileExpr(assign.expression));
+        } else if (node instanceof PrintNode print) {
+            boolean[] numbers = new boolean[print.expressions.size()];
+            for (int i = 0; i < numbers.length; i++) {
+                numbers[i] = isNumber(print.expressions.get(i));
+            }
+            return new PrintStmtNode(context, compileExprs(print.expressions), numbers);
+        } else if (node instanceof ReturnNode ret) {
+            if (ret.tailCall) {
+                FunctionCallNode call = (FunctionCallNode) ret.value;
+                return new TailCallStmtNode(context, call.name, compileExprs(call.arguments));
+            }
+            return new ReturnStmtNode(context, ret.value == null ? null : compileExpr(ret.value));
+        } else if (node instanceof IfNode ifNode) {
+            return new IfStmtNode(compileCondition(ifNode.condition),
+                    compileBlock(ifNode.thenBlock.statements),
+                    ifNode.elseBlock == null ? null : compileBlock(ifNode.elseBlock.statements));
+        } else if (node instanceof RepeatNode repeat) {
+            return new RepeatStmtNode(repeat.times, compileBlock(repeat.body), context.budget);
+        } else if (node instanceof WhileNode whileNode) {
+            return new WhileStmtNode(compileCondition(whileNode.condition), compileBlock(whileNode.body),
+                    slots(whileNode.invariants), context.budget);
+        } else if (node instanceof ForNode forNode) {
+            return new ForStmtNode(forNode.slot, compileExpr(forNode.start), compileExpr(forNode.end),
+                    compileBlock(forNode.body), slots(forNode.invariants), forNode.inductions, context.budget);
+        } else if (node instanceof ArrayDecNode arrayDec) {
+            return new ArrayDecStmtNode(arrayDec.slot, compileExprs(arrayDec.elements), context.budget);
+        } else if (node instanceof ArrayAssignNode assign) {
+            return new ArrayAssignStmtNode(assign.slot, assign.arrayName,
+                    compileExpr(assign.index), compileExpr(assign.value));
+        } else if (node instanceof StopNode) {
+            return new StopStmtNode();
+        } else if (node instanceof FunctionDeclNode func) {
+            return new FunctionDeclStmtNode(context,
+                    new ExecFunction(func.name, func.parameterSlots, func.localSlots, func.pure,
+                            compileBlock(func.body)));
+        } else if (node instanceof FunctionCallNode call) {
+            return new CallStmtNode(context, compileExpr(call));
+        }
+        return new UnsupportedStmtNode(node.getClass().getSimpleName());
+    }
+
+    private static int[] slots(List<InvariantExpr> invariants) {
+        return invariants.stream().mapToInt(invariant -> invariant.slot).toArray();
+    }
+
+    private ConditionNode compileCondition(Condition cond) {
+        if (cond.comparator == null) {
+            return new ConditionNode(compileExpr(cond.left));
+        }
+        return new ConditionNode(compileBinary(cond.comparator, cond.left, cond.right));
+    }
+
+    // Starts out specialized for numbers when TypeInference knows both operands are
+    private ExprNode compileBinary(Operator op, ExpressionNode left, ExpressionNode right) {
+        if (isNumber(left) && isNumber(right)) {
+            return UninitializedBinaryNode.create(op, compileExpr(left), compileExpr(right), true);
+        }
+        return new UninitializedBinaryNode(op, compileExpr(left), compileExpr(right));
+    }
+
+    private static boolean isNumber(ExpressionNode expr) {
+        return expr != null && expr.type.isNumber();
+    }
+
+    private ExprNode[] compileExprs(List<ExpressionNode> exprs) {
+        ExprNode[] nodes = new ExprNode[exprs.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = compileExpr(exprs.get(i));
+        }
+        return nodes;
+    }
+
+    private ExprNode compileExpr(ExpressionNode expr) {
+        if (expr instanceof NumberLiteral number) {
+            return new NumberConstantNode(number.value);
+        } else if (expr instanceof BooleanLiteral bool) {
+            return new ConstantNode(bool.value);
+        } else if (expr instanceof StringLiteral string) {
+            return new ConstantNode(string.value);
+        } else if (expr instanceof VariableRef ref) {
+            return new ReadVarNode(ref.slot, ref.name);
+        } else if (expr instanceof BinaryExpr bin) {
+            return compileBinary(bin.op, bin.left, bin.right);
+        } else if (expr instanceof LogicalExpr logical) {
+            return new LogicalNode(logical.op, compileExpr(logical.left), compileExpr(logical.right));
+        } else if (expr instanceof ArrayAccessNode access) {
+            return new ArrayReadNode(access.slot, access.arrayName, compileExpr(access.index));
+        } else if (expr instanceof FunctionCallNode call) {
+            if (Builtins.isBuiltIn(call.name)) {
+                return new BuiltinCallNode(call.name, compileExprs(call.arguments), context.budget);
+            }
+            return new CallNode(context, call.name, compileExprs(call.arguments));
+        } else if (expr instanceof InvariantExpr invariant) {
+            return new InvariantNode(invariant.slot, compileExpr(invariant.expr));
+        } else if (expr instanceof InductionExpr induction) {
+            return new InductionNode(induction.slot);
+        } else if (expr instanceof UnaryExpr unary) {
+            return switch (unary.op) {
+                case NOT -> new NotNode(compileExpr(unary.expr));
+                case NEGATE -> new NegateNode(compileExpr(unary.expr));
+                default -> throw new RuntimeException("Unsupported unary operator: " + unary.op);
+            };
+        }
+        throw new RuntimeException("Unknown expression node: " + expr.getClass().getSimpleName());
+    }
+}
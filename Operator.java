@@ -0,0 +1,40 @@
+package com.syed.elpl_backend;
+
+// Operators of ELPL expressions. Parser resolves the operator words once, so
+// evaluation switches on an enum constant instead of comparing strings.
+enum Operator {
+    ADD("add"),
+    SUBTRACT("subtract"),
+    MULTIPLY("multiply"),
+    DIVIDE("divide"),
+    MOD("mod"),
+    EQUAL("is equal to"),
+    NOT_EQUAL("not equal to"),
+    GREATER("is greater than"),
+    LESS("is less than"),
+    GREATER_EQUAL("is greater than or equal to"),
+    LESS_EQUAL("is less than or equal to"),
+    AND("and"),   // LogicalExpr
+    OR("or"),     // LogicalExpr
+    NOT("not"),   // UnaryExpr
+    NEGATE("negate"); // UnaryExpr
+
+    final String text;
+
+    Operator(String text) {
+        this.text = text;
+    }
+
+    boolean isArithmetic() {
+        return this == ADD || this == SUBTRACT || this == MULTIPLY || this == DIVIDE || this == MOD;
+    }
+
+    boolean isComparison() {
+        return compareTo(EQUAL) >= 0 && compareTo(LESS_EQUAL) <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,326 @@
+package com.syed.elpl_backend;
+
+import java.util.*;
+
+// Simplifies a parsed program before Resolver sees it, so that no engine
+// redoes work whose result is known from the source:
+//
+//  - arithmetic, comparisons, negation, 'not', and 'and'/'or' on literals
+//    are folded into the literal they produce. Division and mod by zero are
+//    left to fail at run time.
+//  - an 'if' on a literal condition is replaced by the statements of the
+//    branch it takes. Blocks don't scope variables, so this changes nothing.
+//  - statements after a 'stop', or after a 'return' of a literal, can't run
+//    and are dropped; function declarations are kept. A 'return' whose value
+//    fails reports the error and carries on, so other returns keep what
+//    follows them.
+//  - a run of prints of nothing but literals becomes one print of their text.
+//  - loops are then left to LoopOptimizer.
+//
+// optimize() describes each change it made, for the "optimizations" flag of
+// /api/run.
+final class Optimizer {
+    private final List<String> report = new ArrayList<>();
+
+    // Literals folded in the current statement -> the expression each
+    // replaced, as written. A fold that takes in earlier ones replaces their
+    // entries.
+    private final Map<ExpressionNode, String> folds = new LinkedHashMap<>();
+
+    private Optimizer() {}
+
+    static List<String> optimize(Program program) {
+        Optimizer optimizer = new Optimizer();
+        optimizer.statements(program.statements);
+        optimizer.report.addAll(LoopOptimizer.optimize(program));
+        return optimizer.report;
+    }
+
+    private void statements(List<ASTNode> statements) {
+        List<ASTNode> kept = new ArrayList<>(statements.size());
+        for (ASTNode node : statements) {
+            if (node instanceof IfNode ifNode) {
+                String condition = describe(ifNode.condition);
+                ifNode.condition = fold(ifNode.condition);
+                reportFolds();
+                statements(ifNode.thenBlock.statements);
+                if (ifNode.elseBlock != null) statements(ifNode.elseBlock.statements);
+
+                Boolean taken = constant(ifNode.condition);
+                if (taken != null) {
+                    BlockNode branch = taken ? ifNode.thenBlock : ifNode.elseBlock;
+                    report.add(branch == null
+                            ? "Removed 'if " + condition + "', whose condition is always false"
+                            : "Replaced 'if " + condition + "' with its '" + (taken ? "then" : "otherwise") + "' branch");
+                    if (branch != null) kept.addAll(branch.statements);
+                    continue;
+                }
+            } else {
+                statement(node);
+            }
+            kept.add(node);
+        }
+        dropUnreachable(kept);
+        mergePrints(kept);
+        statements.clear();
+        statements.addAll(kept);
+    }
+
+    private void statement(ASTNode node) {
+        if (node instanceof BlockNode block) {
+            statements(block.statements);
+        } else if (node instanceof AssignmentNode assign) {
+            assign.expression = fold(assign.expression);
+        } else if (node instanceof PrintNode print) {
+            print.expressions.replaceAll(this::fold);
+        } else if (node instanceof ReturnNode ret) {
+            ret.value = fold(ret.value);
+        } else if (node instanceof ArrayDecNode arrayDec) {
+            arrayDec.elements.replaceAll(this::fold);
+        } else if (node instanceof ArrayAssignNode assign) {
+            assign.index = fold(assign.index);
+            assign.value = fold(assign.value);
+        } else if (node instanceof FunctionCallNode call) {
+            call.arguments.replaceAll(this::fold);
+        } else if (node instanceof RepeatNode repeat) {
+            statements(repeat.body);
+        } else if (node instanceof WhileNode whileNode) {
+            whileNode.condition = fold(whileNode.condition);
+            reportFolds();
+            statements(whileNode.body);
+        } else if (node instanceof ForNode forNode) {
+            forNode.start = fold(forNode.start);
+            forNode.end = fold(forNode.end);
+            reportFolds();
+            statements(forNode.body);
+        } else if (node instanceof FunctionDeclNode func) {
+            statements(func.body);
+        }
+        reportFolds();
+    }
+
+    // Drops what follows the first 'stop' or literal 'return', except
+    // function declarations
+    private void dropUnreachable(List<ASTNode> statements) {
+        for (int i = 0; i < statements.size(); i++) {
+            ASTNode node = statements.get(i);
+            String exit = node instanceof StopNode ? "stop"
+                    : node instanceof ReturnNode ret && isLiteral(ret.value) ? "return" : null;
+            if (exit == null) continue;
+
+            List<ASTNode> after = statements.subList(i + 1, statements.size());
+            int before = after.size();
+            after.removeIf(statement -> !(statement instanceof FunctionDeclNode));
+            int removed = before - after.size();
+            if (removed > 0) {
+                report.add("Removed " + removed + (removed == 1 ? " statement" : " statements")
+                        + " after '" + exit + "', which can't run");
+            }
+            return;
+        }
+    }
+
+    // Replaces each run of two or more literal-only prints with one print
+    private void mergePrints(List<ASTNode> statements) {
+        for (int i = 0; i < statements.size(); i++) {
+            int end = i;
+            while (end < statements.size() && statements.get(end) instanceof PrintNode print && isConstant(print)) {
+                end++;
+            }
+            if (end - i < 2) continue;
+
+            StringBuilder text = new StringBuilder();
+            for (int j = i; j < end; j++) {
+                if (j > i) text.append('\n');
+                appendText(text, (PrintNode) statements.get(j));
+            }
+            List<ExpressionNode> merged = new ArrayList<>();
+            merged.add(new StringLiteral(text.toString()));
+            statements.subList(i, end).clear();
+            statements.add(i, new PrintNode(merged));
+            report.add("Merged " + (end - i) + " prints of literals into one");
+        }
+    }
+
+    private static boolean isConstant(PrintNode print) {
+        for (ExpressionNode expr : print.expressions) {
+            if (!isLiteral(expr)) return false;
+        }
+        return true;
+    }
+
+    // What the engines print for a literal-only print, without the newline
+    private static void appendText(StringBuilder text, PrintNode print) {
+        for (int i = 0; i < print.expressions.size(); i++) {
+            ExpressionNode expr = print.expressions.get(i);
+            if (expr instanceof StringLiteral string) {
+                text.append(string.value);
+            } else {
+                Values.appendPrintValue(text, value(expr));
+            }
+            if (i < print.expressions.size() - 1) {
+                text.append(' ');
+            }
+        }
+    }
+
+    private Condition fold(Condition cond) {
+        if (cond.comparator == null) {
+            return new Condition(fold(cond.left));
+        }
+        return new Condition(fold(cond.left), cond.comparator, fold(cond.right));
+    }
+
+    // true or false when the condition is a literal or compares two numbers
+    private static Boolean constant(Condition cond) {
+        if (cond.comparator == null) {
+            return cond.left instanceof BooleanLiteral bool ? bool.value : null;
+        }
+        if (cond.left instanceof NumberLiteral left && cond.right instanceof NumberLiteral right) {
+            return compare(cond.comparator, left.value, right.value);
+        }
+        return null;
+    }
+
+    private ExpressionNode fold(ExpressionNode expr) {
+        if (expr instanceof BinaryExpr bin) {
+            bin.left = fold(bin.left);
+            bin.right = fold(bin.right);
+            if (bin.left instanceof NumberLiteral left && bin.right instanceof NumberLiteral right) {
+                ExpressionNode result = binary(bin.op, left.value, right.value);
+                if (result != null) return folded(bin, result, bin.left, bin.right);
+            }
+        } else if (expr instanceof LogicalExpr logical) {
+            logical.left = fold(logical.left);
+            logical.right = fold(logical.right);
+            if (logical.left instanceof BooleanLiteral left) {
+                // The right side isn't evaluated when the left one decides
+                if (logical.op == Operator.AND ? !left.value : left.value) {
+                    return folded(logical, new BooleanLiteral(left.value), logical.left, logical.right);
+                }
+                if (logical.right instanceof BooleanLiteral right) {
+                    return folded(logical, new BooleanLiteral(right.value), logical.left, logical.right);
+                }
+            }
+        } else if (expr instanceof UnaryExpr unary) {
+            unary.expr = fold(unary.expr);
+            if (unary.op == Operator.NEGATE && unary.expr instanceof NumberLiteral number) {
+                return folded(unary, new NumberLiteral(-number.value), unary.expr, null);
+            }
+            if (unary.op == Operator.NOT && unary.expr instanceof BooleanLiteral bool) {
+                return folded(unary, new BooleanLiteral(!bool.value), unary.expr, null);
+            }
+        } else if (expr instanceof ArrayAccessNode access) {
+            access.index = fold(access.index);
+        } else if (expr instanceof FunctionCallNode call) {
+            call.arguments.replaceAll(this::fold);
+        }
+        return expr;
+    }
+
+    private ExpressionNode folded(ExpressionNode original, ExpressionNode literal,
+                                  ExpressionNode left, ExpressionNode right) {
+        String text = describe(original);
+        folds.remove(left);
+        if (right != null) folds.remove(right);
+        folds.put(literal, text);
+        return literal;
+    }
+
+    private void reportFolds() {
+        for (Map.Entry<ExpressionNode, String> fold : folds.entrySet()) {
+            String from = fold.getValue();
+            String to = literalText(fold.getKey());
+            // '-5' is a literal already as far as the reader is concerned
+            if (!from.equals(to)) report.add("Folded '" + from + "' to " + to);
+        }
+        folds.clear();
+    }
+
+    // The result of 'left op right', or null when it has to fail at run time
+    private static ExpressionNode binary(Operator op, double left, double right) {
+        return switch (op) {
+            case ADD -> new NumberLiteral(left + right);
+            case SUBTRACT -> new NumberLiteral(left - right);
+            case MULTIPLY -> new NumberLiteral(left * right);
+            case DIVIDE -> right == 0.0 ? null : new NumberLiteral(left / right);
+            case MOD -> right == 0.0 ? null : new NumberLiteral(left % right);
+            default -> op.isComparison() ? new BooleanLiteral(compare(op, left, right)) : null;
+        };
+    }
+
+    private static boolean compare(Operator op, double left, double right) {
+        return switch (op) {
+            case EQUAL -> left == right;
+            case NOT_EQUAL -> left != right;
+            case GREATER -> left > right;
+            case LESS -> left < right;
+            case GREATER_EQUAL -> left >= right;
+            case LESS_EQUAL -> left <= right;
+            default -> throw new IllegalArgumentException("Not a comparison: " + op);
+        };
+    }
+
+    private static boolean isLiteral(ExpressionNode expr) {
+        return expr instanceof NumberLiteral || expr instanceof StringLiteral || expr instanceof BooleanLiteral;
+    }
+
+    // The value a number or boolean literal evaluates to
+    private static Object value(ExpressionNode literal) {
+        return literal instanceof NumberLiteral number ? (Object) number.value : ((BooleanLiteral) literal).value;
+    }
+
+    // A number or boolean literal as print shows it
+    private static String literalText(ExpressionNode literal) {
+        StringBuilder text = new StringBuilder();
+        Values.appendPrintValue(text, value(literal));
+        return text.toString();
+    }
+
+    private String describe(Condition cond) {
+        if (cond.comparator == null) return describe(cond.left);
+        return describe(cond.left) + " " + cond.comparator.text + " " + describe(cond.right);
+    }
+
+    private String describe(ExpressionNode expr) {
+        return describe(expr, folds);
+    }
+
+    // The expression roughly as it was written, for other passes' reports
+    static String text(ExpressionNode expr) {
+        return describe(expr, Map.of());
+    }
+
+    // The expression roughly as it was written, the given folds included
+    private static String describe(ExpressionNode expr, Map<ExpressionNode, String> folds) {
+        String folded = folds.get(expr);
+        if (folded != null) {
+            return folded;
+        } else if (expr instanceof NumberLiteral || expr instanceof BooleanLiteral) {
+            return literalText(expr);
+        } else if (expr instanceof StringLiteral string) {
+            return "\"" + string.value + "\"";
+        } else if (expr instanceof VariableRef ref) {
+            return ref.name;
+        } else if (expr instanceof ArrayAccessNode access) {
+            return access.arrayName + "[" + describe(access.index, folds) + "]";
+        } else if (expr instanceof BinaryExpr bin) {
+            return describe(bin.left, folds) + " " + bin.op.text + " " + describe(bin.right, folds);
+        } else if (expr instanceof LogicalExpr logical) {
+            return describe(logical.left, folds) + " " + logical.op.text + " " + describe(logical.right, folds);
+        } else if (expr instanceof UnaryExpr unary) {
+            return (unary.op == Operator.NEGATE ? "-" : "not ") + describe(unary.expr, folds);
+        } else if (expr instanceof FunctionCallNode call) {
+            StringJoiner arguments = new StringJoiner(", ", call.name + "(", ")");
+            for (ExpressionNode argument : call.arguments) {
+                arguments.add(describe(argument, folds));
+            }
+            return arguments.toString();
+        } else if (expr instanceof InvariantExpr invariant) {
+            return describe(invariant.expr, folds);
+        } else if (expr instanceof InductionExpr induction) {
+            return describe(induction.product, folds);
+        }
+        return "?";
+    }
+}
@@ -0,0 +1,86 @@
+package com.syed.elpl_backend;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// Where a program's output goes. Engines append to buffer and call
+// lineWritten() after each complete line. This sink keeps everything in
+// memory and hands it back as one string, so the output counts against the
+// run's memory quota.
+class OutputSink {
+    final StringBuilder buffer = new StringBuilder();
+
+    // The run writing here, once it has started
+    Budget budget;
+    private int charged; // length of buffer charged to budget so far
+
+    void lineWritten() {
+        if (budget != null) {
+            budget.allocate(buffer.length() - charged);
+            charged = buffer.length();
+        }
+    }
+
+    // A compiler error replaces whatever the program printed
+    void fail(String message) {
+        buffer.setLength(0);
+        buffer.append(message);
+    }
+
+    void close() {}
+
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+}
+
+// Forwards output to a Writer in batches: once BATCH_CHARS are pending, or
+// at the first line after MAX_DELAY_NANOS without a flush. The first line goes
+// out at once, and the heap never holds more than about one batch, so
+// streamed output isn't charged to the memory quota. When a write fails the
+// client has gone away, and the run is cancelled.
+final class StreamingSink extends OutputSink {
+    static final int BATCH_CHARS = 8192;
+    static final long MAX_DELAY_NANOS = 50_000_000L;
+
+    private final Writer writer;
+    private long lastFlush = System.nanoTime() - MAX_DELAY_NANOS;
+    private boolean broken; // the client went away; later output is dropped
+
+    StreamingSink(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    void lineWritten() {
+        if (buffer.length() >= BATCH_CHARS || System.nanoTime() - lastFlush >= MAX_DELAY_NANOS) {
+            flush();
+        }
+    }
+
+    // Output already sent can't be taken back, so the error follows it
+    @Override
+    void fail(String message) {
+        buffer.append(message);
+    }
+
+    @Override
+    void close() {
+        flush();
+    }
+
+    private void flush() {
+        if (!broken) {
+            try {
+                writer.append(buffer);
+                writer.flush();
+            } catch (IOException e) {
+                broken = true;
+                if (budget != null) budget.cancel();
+            }
+        }
+        buffer.setLength(0);
+        lastFlush = System.nanoTime();
+    }
+}
@@ -0,0 +1,99 @@
+package com.syed.elpl_backend;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+// Splits work over the indexes [0, n) of an array into fork-join tasks on
+// the common ForkJoinPool. Below 'threshold' elements, or with threshold 0,
+// the work runs as one range on the calling thread. The ranges depend only
+// on n and threshold, not on the threads, so a reduction adds up in the
+// same order every time.
+final class ParallelArrays {
+    private ParallelArrays() {}
+
+    // Work on the indexes [from, to)
+    interface RangeAction {
+        void apply(int from, int to);
+    }
+
+    interface RangeReduction {
+        double apply(int from, int to);
+    }
+
+    interface Combiner {
+        double combine(double left, double right);
+    }
+
+    static void forEach(int n, int threshold, RangeAction action) {
+        if (!split(n, threshold)) {
+            action.apply(0, n);
+            return;
+        }
+        new ForEachTask(0, n, threshold, action).invoke();
+    }
+
+    // Reduces each range, then combines neighbouring results left to right
+    static double reduce(int n, int threshold, RangeReduction reduction, Combiner combiner) {
+        if (!split(n, threshold)) {
+            return reduction.apply(0, n);
+        }
+        return new ReduceTask(0, n, threshold, reduction, combiner).invoke();
+    }
+
+    static boolean split(int n, int threshold) {
+        return threshold > 0 && n >= threshold;
+    }
+
+    private static final class ForEachTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to, threshold;
+        private final RangeAction action;
+
+        ForEachTask(int from, int to, int threshold, RangeAction action) {
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                action.apply(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ForEachTask(from, middle, threshold, action),
+                    new ForEachTask(middle, to, threshold, action));
+        }
+    }
+
+    private static final class ReduceTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to, threshold;
+        private final RangeReduction reduction;
+        private final Combiner combiner;
+
+        ReduceTask(int from, int to, int threshold, RangeReduction reduction, Combiner combiner) {
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.reduction = reduction;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from <= threshold) {
+                return reduction.apply(from, to);
+            }
+            int middle = (from + to) >>> 1;
+            ReduceTask right = new ReduceTask(middle, to, threshold, reduction, combiner);
+            right.fork();
+            double left = new ReduceTask(from, middle, threshold, reduction, combiner).compute();
+            return combiner.combine(left, right.join());
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.syed.elpl_backend;
+
+import java.util.*;
+
+// Checks every 'parallel for' and works out how Interpreter splits it. The
+// iterations run in chunks on several threads, each chunk with its own copy
+// of the frame, so an iteration may not print or depend on another one.
+// Besides array elements, the body may only write:
+//
+//  - accumulators, which it updates only as 's be s add x' (or subtract, or
+//    for float variables multiply and divide, chained as in 's be s add x
+//    subtract y') and reads nowhere else. Each chunk starts them at zero (one
+//    for products), and the chunks' results are combined in order.
+//  - private variables, which each iteration assigns before reading them.
+//    After the loop they hold what the last iteration to assign them left.
+//
+// The body may only call builtins that leave arrays alone and pure functions
+// (see Purity). Runs as part of Resolver.resolve, which throws the first
+// rule a loop breaks.
+//
+// Only the tree engine splits the loop; the nodes and vm engines run it in
+// order. Float accumulators can end up slightly different between the two,
+// since the chunks add in a different order. Arrays from outside the loop
+// can't grow in it, which Interpreter checks as it runs.
+final class ParallelLoops {
+    private final Purity purity;
+
+    // Per loop being checked
+    private final Map<String, List<AssignmentNode>> assignments = new LinkedHashMap<>();
+    private final Map<String, Integer> written = new LinkedHashMap<>(); // name -> slot
+    private final Map<String, Reduction> accumulators = new LinkedHashMap<>();
+
+    private ParallelLoops(Purity purity) {
+        this.purity = purity;
+    }
+
+    static void check(List<ASTNode> statements, Purity purity) {
+        new ParallelLoops(purity).find(statements);
+    }
+
+    // An accumulator and how the chunks' values combine: ADD or MULTIPLY
+    static final class Reduction {
+        final String name;
+        final int slot;
+        final Operator op;
+        final boolean isFloat;
+
+        Reduction(String name, int slot, Operator op, boolean isFloat) {
+            this.name = name;
+            this.slot = slot;
+            this.op = op;
+            this.isFloat = isFloat;
+        }
+    }
+
+    private void find(List<ASTNode> statements) {
+        for (ASTNode node : statements) {
+            if (node instanceof ForNode forNode) {
+                if (forNode.parallel) analyze(forNode);
+                find(forNode.body);
+            } else if (node instanceof FunctionDeclNode func) {
+                find(func.body);
+            } else if (node instanceof BlockNode block) {
+                find(block.statements);
+            } else if (node instanceof IfNode ifNode) {
+                find(ifNode.thenBlock.statements);
+                if (ifNode.elseBlock != null) find(ifNode.elseBlock.statements);
+            } else if (node instanceof RepeatNode repeat) {
+                find(repeat.body);
+            } else if (node instanceof WhileNode whileNode) {
+                find(whileNode.body);
+            }
+        }
+    }
+
+    private void analyze(ForNode loop) {
+        assignments.clear();
+        written.clear();
+        accumulators.clear();
+        collect(loop.body, 0);
+
+        for (Map.Entry<String, List<AssignmentNode>> entry : assignments.entrySet()) {
+            String name = entry.getKey();
+            if (name.equals(loop.iterator) || written.containsKey(name)) continue;
+            Reduction reduction = reduction(name, entry.getValue());
+            if (reduction != null) accumulators.put(name, reduction);
+        }
+        for (Map.Entry<String, List<AssignmentNode>> entry : assignments.entrySet()) {
+            if (!accumulators.containsKey(entry.getKey())) {
+                written.put(entry.getKey(), entry.getValue().get(0).slot);
+            }
+        }
+        written.remove(loop.iterator);
+
+        Set<String> defined = new HashSet<>();
+        defined.add(loop.iterator);
+        statements(loop.body, defined);
+
+        loop.reductions = accumulators.values().toArray(new Reduction[0]);
+        loop.privateSlots = written.values().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // Finds what the body writes, and rejects statements it can't have.
+    // 'loops' counts the loops inside the body around the node.
+    private void collect(List<ASTNode> statements, int loops) {
+        for (ASTNode node : statements) {
+            if (node instanceof BlockNode block) {
+                collect(block.statements, loops);
+            } else if (node instanceof AssignmentNode assign) {
+                assignments.computeIfAbsent(assign.identifier, name -> new ArrayList<>()).add(assign);
+            } else if (node instanceof ArrayDecNode arrayDec) {
+                written.put(arrayDec.name, arrayDec.slot);
+            } else if (node instanceof IfNode ifNode) {
+                collect(ifNode.thenBlock.statements, loops);
+                if (ifNode.elseBlock != null) collect(ifNode.elseBlock.statements, loops);
+            } else if (node instanceof RepeatNode repeat) {
+                collect(repeat.body, loops + 1);
+            } else if (node instanceof WhileNode whileNode) {
+                collect(whileNode.body, loops + 1);
+            } else if (node instanceof ForNode forNode) {
+                written.put(forNode.iterator, forNode.slot);
+                collect(forNode.body, loops + 1);
+            } else if (node instanceof PrintNode) {
+                throw new RuntimeException("A 'parallel for' can't print");
+            } else if (node instanceof FunctionCallNode call) {
+                throw new RuntimeException("A 'parallel for' can't use 'call " + call.name + "', which prints the result");
+            } else if (node instanceof ReturnNode) {
+                throw new RuntimeException("A 'parallel for' can't return");
+            } else if (node instanceof FunctionDeclNode func) {
+                throw new RuntimeException("A 'parallel for' can't declare function '" + func.name + "'");
+            } else if (node instanceof StopNode && loops == 0) {
+                throw new RuntimeException("A 'parallel for' can't be ended by 'stop'");
+            }
+        }
+    }
+
+    // The Reduction when every assignment to name only adds to it, or only
+    // multiplies it, in the same kind of variable; null otherwise
+    private static Reduction reduction(String name, List<AssignmentNode> assigns) {
+        Operator group = null;
+        boolean isFloat = assigns.get(0).isFloat;
+        for (AssignmentNode assign : assigns) {
+            Operator op = chainGroup(name, assign.expression);
+            if (op == null || (group != null && op != group) || assign.isFloat != isFloat) return null;
+            group = op;
+        }
+        // A product of whole numbers can fail the 'let' check at a different step in each chunk
+        if (group == Operator.MULTIPLY && !isFloat) return null;
+        return new Reduction(name, assigns.get(0).slot, group, isFloat);
+    }
+
+    // ADD for 'name add/subtract ...', MULTIPLY for 'name multiply/divide ...',
+    // with name as the leftmost operand only; null for anything else
+    private static Operator chainGroup(String name, ExpressionNode expr) {
+        Operator group = null;
+        while (expr instanceof BinaryExpr bin) {
+            Operator op = switch (bin.op) {
+                case ADD, SUBTRACT -> Operator.ADD;
+                case MULTIPLY, DIVIDE -> Operator.MULTIPLY;
+                default -> null;
+            };
+            if (op == null || (group != null && op != group) || mentions(bin.right, name)) return null;
+            group = op;
+            expr = bin.left;
+        }
+        return expr instanceof VariableRef ref && ref.name.equals(name) ? group : null;
+    }
+
+    private static boolean mentions(ExpressionNode expr, String name) {
+        if (expr instanceof VariableRef ref) {
+            return ref.name.equals(name);
+        } else if (expr instanceof ArrayAccessNode access) {
+            return access.arrayName.equals(name) || mentions(access.index, name);
+        } else if (expr instanceof BinaryExpr bin) {
+            return mentions(bin.left, name) || mentions(bin.right, name);
+        } else if (expr instanceof LogicalExpr logical) {
+            return mentions(logical.left, name) || mentions(logical.right, name);
+        } else if (expr instanceof UnaryExpr unary) {
+            return mentions(unary.expr, name);
+        } else if (expr instanceof FunctionCallNode call) {
+            for (ExpressionNode arg : call.arguments) {
+                if (mentions(arg, name)) return true;
+            }
+        }
+        return false;
+    }
+
+    // Checks every read. 'defined' holds the private variables certainly
+    // assigned in this iteration so far; branches and loop bodies get a copy.
+    private void statements(List<ASTNode> statements, Set<String> defined) {
+        for (ASTNode node : statements) {
+            statement(node, defined);
+        }
+    }
+
+    private void statement(ASTNode node, Set<String> defined) {
+        if (node instanceof BlockNode block) {
+            statements(block.statements, defined);
+        } else if (node instanceof AssignmentNode assign) {
+            if (accumulators.containsKey(assign.identifier)) {
+                // Everything but the accumulator itself at the left end of the chain
+                ExpressionNode expr = assign.expression;
+                while (expr instanceof BinaryExpr bin) {
+                    expr(bin.right, defined);
+                    expr = bin.left;
+                }
+            } else {
+                expr(assign.expression, defined);
+                defined.add(assign.identifier);
+            }
+        } else if (node instanceof ArrayDecNode arrayDec) {
+            for (ExpressionNode element : arrayDec.elements) {
+                expr(element, defined);
+            }
+            defined.add(arrayDec.name);
+        } else if (node instanceof ArrayAssignNode assign) {
+            read(assign.arrayName, defined);
+            expr(assign.index, defined);
+            expr(assign.value, defined);
+        } else if (node instanceof IfNode ifNode) {
+            condition(ifNode.condition, defined);
+            Set<String> thenDefined = new HashSet<>(defined);
+            statements(ifNode.thenBlock.statements, thenDefined);
+            if (ifNode.elseBlock != null) {
+                Set<String> elseDefined = new HashSet<>(defined);
+                statements(ifNode.elseBlock.statements, elseDefined);
+                thenDefined.retainAll(elseDefined);
+                defined.addAll(thenDefined);
+            }
+        } else if (node instanceof RepeatNode repeat) {
+            statements(repeat.body, new HashSet<>(defined));
+        } else if (node instanceof WhileNode whileNode) {
+            condition(whileNode.condition, defined);
+            statements(whileNode.body, new HashSet<>(defined));
+        } else if (node instanceof ForNode forNode) {
+            expr(forNode.start, defined);
+            expr(forNode.end, defined);
+            Set<String> body = new HashSet<>(defined);
+            body.add(forNode.iterator);
+            statements(forNode.body, body);
+        }
+    }
+
+    private void condition(Condition cond, Set<String> defined) {
+        expr(cond.left, defined);
+        expr(cond.right, defined);
+    }
+
+    private void expr(ExpressionNode expr, Set<String> defined) {
+        if (expr instanceof VariableRef ref) {
+            read(ref.name, defined);
+        } else if (expr instanceof ArrayAccessNode access) {
+            read(access.arrayName, defined);
+            expr(access.index, defined);
+        } else if (expr instanceof BinaryExpr bin) {
+            expr(bin.left, defined);
+            expr(bin.right, defined);
+        } else if (expr instanceof LogicalExpr logical) {
+            expr(logical.left, defined);
+            expr(logical.right, defined);
+        } else if (expr instanceof UnaryExpr unary) {
+            expr(unary.expr, defined);
+        } else if (expr instanceof FunctionCallNode call) {
+            boolean pure = Builtins.isBuiltIn(call.name) ? Builtins.isPure(call.name) : purity.isPure(call.name);
+            if (!pure) {
+                throw new RuntimeException("A 'parallel for' can only call functions that don't print or "
+                        + "change arrays, not '" + call.name + "'");
+            }
+            for (ExpressionNode arg : call.arguments) {
+                expr(arg, defined);
+            }
+        }
+    }
+
+    private void read(String name, Set<String> defined) {
+        if (accumulators.containsKey(name)) {
+            throw new RuntimeException("'" + name + "' accumulates in a 'parallel for', so the loop can only update it as '"
+                    + name + " be " + name + " " + (accumulators.get(name).op == Operator.ADD ? "add" : "multiply")
+                    + " ...'");
+        }
+        if (written.containsKey(name) && !defined.contains(name)) {
+            throw new RuntimeException("A 'parallel for' reads '" + name + "' before assigning it; only '"
+                    + name + " be " + name + " add ...' can update a variable across iterations");
+        }
+    }
+}
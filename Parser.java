@@ -3,10 +3,10 @@ package com.syed.elpl_backend;
 import java.util.*;
 
 public class Parser {
-    private List<Token> tokens;
+    private TokenBuffer tokens;
     private int pos = 0;
 
-    public Parser(List<Token> tokens) {
+    public Parser(TokenBuffer tokens) {
         this.tokens = tokens;
     }
 
@@ -18,17 +18,39 @@ public class Parser {
         return new Program(statements);
     }
 
-    private ASTNode parseStatement() {
+    // Document re-parses single top-level statements: it seeks to a
+    // statement's first token, calls parseStatement and reads the position
+    int position() {
+        return pos;
+    }
+
+    void seek(int pos) {
+        this.pos = pos;
+    }
+
+    boolean atEnd() {
+        return check(TokenType.EOF);
+    }
+
+    ASTNode parseStatement() {
         if (check(TokenType.LET) || check(TokenType.FLOAT)) return parseAssignment();
         if (match(TokenType.PRINT)) return parsePrint();
         if (match(TokenType.IF)) return parseIf();
         if (match(TokenType.FOR)) return parseFor();
+        // 'parallel' is an ordinary name except right before 'for'
+        if (check(TokenType.IDENTIFIER) && tokens.text(pos).equals("parallel")
+                && pos + 1 < tokens.size() && tokens.type(pos + 1) == TokenType.FOR) {
+            pos += 2;
+            ForNode loop = parseFor();
+            loop.parallel = true;
+            return loop;
+        }
         if (match(TokenType.REPEAT)) return parseRepeat();
         if (match(TokenType.WHILE)) return parseWhile();
         if (match(TokenType.ARRAY)) return parseArrayDeclaration();
         if (match(TokenType.FUNCTION)) return parseFunction();
         if (match(TokenType.CALL)){
-            String functionName = consume(TokenType.IDENTIFIER).value;
+            String functionName = tokens.text(consume(TokenType.IDENTIFIER));
             return parseFunctionCall(functionName);
         }
         if (match(TokenType.NOT)) return parseFactor();
@@ -37,16 +59,16 @@ public class Parser {
         if (check(TokenType.IDENTIFIER) && lookAheadIsArrayAssignment()){
             return parseArrayAssignment();
         }
-        throw new RuntimeException("Unknown statement at: " + peek().value);
+        throw new RuntimeException("Unknown statement at: " + tokens.text(pos));
     }
     private boolean lookAheadIsArrayAssignment(){
         int current = pos;
         if (current + 3 >= tokens.size()) return false;
 
-        return tokens.get(current + 1).type == TokenType.LBRACKET && tokens.get(current + 3).type == TokenType.BE;
+        return tokens.type(current + 1) == TokenType.LBRACKET && tokens.type(current + 3) == TokenType.BE;
     }
     private ASTNode parseArrayAssignment() {
-    String arrayName = consume(TokenType.IDENTIFIER).value;
+    String arrayName = tokens.text(consume(TokenType.IDENTIFIER));
     consume(TokenType.LBRACKET);
     ExpressionNode index = parseExpression();
     consume(TokenType.RBRACKET);
@@ -61,7 +83,7 @@ public class Parser {
    
 
     private ArrayDecNode parseArrayDeclaration(){
-        String name = consume(TokenType.IDENTIFIER).value;
+        String name = tokens.text(consume(TokenType.IDENTIFIER));
         if(isBuiltInFunction(name)){
             throw new RuntimeException("cannot use built-in function name'" + name + "'as a variable");
         }
@@ -79,7 +101,7 @@ public class Parser {
         return new ArrayDecNode(name, elements);
     }
     private ForNode parseFor(){
-        String id = consume(TokenType.IDENTIFIER).value;
+        String id = tokens.text(consume(TokenType.IDENTIFIER));
         consume(TokenType.BE);
         ExpressionNode start = parseExpression();
         consume(TokenType.TO);
@@ -93,7 +115,7 @@ public class Parser {
     boolean isFloat = match(TokenType.FLOAT);
     if (!isFloat) match(TokenType.LET);
 
-    String id = consume(TokenType.IDENTIFIER).value;
+    String id = tokens.text(consume(TokenType.IDENTIFIER));
     if(isBuiltInFunction(id)){
         throw new RuntimeException("Cannot use built-in function name'" + id + "'as a variable");
     }
@@ -119,7 +141,7 @@ public class Parser {
 
     while (true) {
         if (match(TokenType.STRING)) {
-            parts.add(new StringLiteral(previous().value));
+            parts.add(new StringLiteral(previousText()));
         } else if (check(TokenType.NUMBER) || check(TokenType.IDENTIFIER)) {
             parts.add(parseExpression());
         } else {
@@ -186,7 +208,7 @@ private IfNode parseIf() {
     }
 
     private FunctionDeclNode parseFunction() {
-    String name = consume(TokenType.IDENTIFIER).value;
+    String name = tokens.text(consume(TokenType.IDENTIFIER));
     if(isBuiltInFunction(name)){
         throw new RuntimeException("Cannot use built-in function name'" + name + "' as a variable"); 
     }
@@ -196,7 +218,7 @@ private IfNode parseIf() {
 
     if (!check(TokenType.RPAREN)) { // If not empty parameter list
         do {
-            parameters.add(consume(TokenType.IDENTIFIER).value);
+            parameters.add(tokens.text(consume(TokenType.IDENTIFIER)));
         } while (match(TokenType.COMMA));
     }
     consume(TokenType.RPAREN); // Consume ')'
@@ -253,7 +275,7 @@ private ExpressionNode parseLogicalOr() {
     ExpressionNode left = parseLogicalAnd();
     while (match(TokenType.OR)) {
         ExpressionNode right = parseLogicalAnd();
-        left = new BinaryExpr(left, "or", right);
+        left = new LogicalExpr(left, Operator.OR, right);
     }
     return left;
 }
@@ -262,7 +284,7 @@ private ExpressionNode parseLogicalAnd() {
     ExpressionNode left = parseEquality();
     while (match(TokenType.AND)) {
         ExpressionNode right = parseEquality();
-        left = new BinaryExpr(left, "and", right);
+        left = new LogicalExpr(left, Operator.AND, right);
     }
     return left;
 }
@@ -270,7 +292,7 @@ private ExpressionNode parseLogicalAnd() {
 private ExpressionNode parseEquality() {
     ExpressionNode left = parseRelational();
     while (match(TokenType.IS_EQUAL_TO) || match(TokenType.NOT_EQUAL_TO)) {
-        String op = previous().type == TokenType.IS_EQUAL_TO ? "is equal to" : "not equal to";
+        Operator op = previousType() == TokenType.IS_EQUAL_TO ? Operator.EQUAL : Operator.NOT_EQUAL;
         ExpressionNode right = parseRelational();
         left = new BinaryExpr(left, op, right);
     }
@@ -281,12 +303,12 @@ private ExpressionNode parseRelational() {
     ExpressionNode left = parseAdditive();
     while (match(TokenType.IS_GREATER_THAN) || match(TokenType.IS_LESS_THAN) || 
            match(TokenType.IS_GREATER_THAN_OR_EQUAL_TO) || match(TokenType.IS_LESS_THAN_OR_EQUAL_TO)) {
-        String op = switch (previous().type) {
-            case IS_GREATER_THAN -> "is greater than";
-            case IS_LESS_THAN -> "is less than";
-            case IS_GREATER_THAN_OR_EQUAL_TO -> "is greater than or equal to";
-            case IS_LESS_THAN_OR_EQUAL_TO -> "is less than or equal to";
-            case NOT_EQUAL_TO ->   "not equal to";     
+        Operator op = switch (previousType()) {
+            case IS_GREATER_THAN -> Operator.GREATER;
+            case IS_LESS_THAN -> Operator.LESS;
+            case IS_GREATER_THAN_OR_EQUAL_TO -> Operator.GREATER_EQUAL;
+            case IS_LESS_THAN_OR_EQUAL_TO -> Operator.LESS_EQUAL;
+            case NOT_EQUAL_TO -> Operator.NOT_EQUAL;
             default -> throw new RuntimeException("Unexpected operator");
         };
         ExpressionNode right = parseAdditive();
@@ -298,7 +320,7 @@ private ExpressionNode parseRelational() {
 private ExpressionNode parseAdditive() {
     ExpressionNode left = parseMultiplicative();
     while (match(TokenType.ADD) || match(TokenType.SUBTRACT)) {
-        String op = previous().type == TokenType.ADD ? "add" : "subtract";
+        Operator op = previousType() == TokenType.ADD ? Operator.ADD : Operator.SUBTRACT;
         ExpressionNode right = parseMultiplicative();
         left = new BinaryExpr(left, op, right);
     }
@@ -308,10 +330,10 @@ private ExpressionNode parseAdditive() {
 private ExpressionNode parseMultiplicative() {
     ExpressionNode left = parseUnary();
   while (match(TokenType.MULTIPLY) || match(TokenType.DIVIDE) || match(TokenType.MOD)) {
-    String op = switch (previous().type) {
-        case MULTIPLY -> "multiply";
-        case DIVIDE -> "divide";
-        case MOD -> "mod";
+    Operator op = switch (previousType()) {
+        case MULTIPLY -> Operator.MULTIPLY;
+        case DIVIDE -> Operator.DIVIDE;
+        case MOD -> Operator.MOD;
         default -> throw new RuntimeException("Unexpected multiplicative operator");
     };
     ExpressionNode right = parseUnary();
@@ -324,11 +346,11 @@ private ExpressionNode parseMultiplicative() {
 private ExpressionNode parseUnary() {
     if (match(TokenType.MINUS)) {
         ExpressionNode expr = parseUnary();
-        return new UnaryExpr("negate", expr);
+        return new UnaryExpr(Operator.NEGATE, expr);
     }
     if (match(TokenType.NOT)) {
         ExpressionNode expr = parseUnary();
-        return new UnaryExpr("not", expr);
+        return new UnaryExpr(Operator.NOT, expr);
     }
     return parseFactor();
 }
@@ -342,16 +364,16 @@ private ExpressionNode parseFactor() {
         return new BooleanLiteral(false);
     }
     if (match(TokenType.NUMBER)) {
-        return new NumberLiteral(Double.parseDouble(previous().value));
+        return new NumberLiteral(Double.parseDouble(previousText()));
     } if(match(TokenType.STRING)){
-        return new StringLiteral(previous().value);
+        return new StringLiteral(previousText());
     }
      if (match(TokenType.CALL)){
-        String functionName = consume(TokenType.IDENTIFIER).value;
+        String functionName = tokens.text(consume(TokenType.IDENTIFIER));
         return parseFunctionCall(functionName);
     }
     if (match(TokenType.IDENTIFIER)) {
-        String name = previous().value;
+        String name = previousText();
         
         if (match(TokenType.LBRACKET)) { // Array access
             ExpressionNode index = parseExpression();
@@ -380,13 +402,12 @@ private ExpressionNode parseFactor() {
         return expr;
     }
     
-   Token current = peek();
-  throw new RuntimeException("Expected expression at line " + current.line + ", column " + current.column + ": found " + current.type);
+  throw new RuntimeException("Expected expression at line " + tokens.line(pos) + ", column " + tokens.column(pos) + ": found " + tokens.type(pos));
 
 }
 
 private boolean isBuiltInFunction(String name){
-        return Set.of("length", "sum", "max", "min", "sqrt", "abs", "pow", "floor", "ceil", "reverse").contains(name);
+        return Builtins.isBuiltIn(name);
     }
 
     // Utility methods
@@ -398,14 +419,15 @@ private boolean isBuiltInFunction(String name){
         return false;
     }
 
-    private Token consume(TokenType type) {
-    if (check(type)) return tokens.get(pos++);
-    throw new RuntimeException("Expected token: " + type + ", but found: " + peek().type + " at position " + pos);
+    // Index of the consumed token
+    private int consume(TokenType type) {
+    if (check(type)) return pos++;
+    throw new RuntimeException("Expected token: " + type + ", but found: " + tokens.type(pos) + " at position " + pos);
 }
 
 
     private boolean check(TokenType type) {
-        return pos < tokens.size() && tokens.get(pos).type == type;
+        return pos < tokens.size() && tokens.type(pos) == type;
     }
 
     private boolean checkAny(TokenType... types) {
@@ -415,11 +437,11 @@ private boolean isBuiltInFunction(String name){
         return false;
     }
 
-    private Token peek() {
-        return tokens.get(pos);
+    private TokenType previousType() {
+        return tokens.type(pos - 1);
     }
 
-    private Token previous() {
-        return tokens.get(pos - 1);
+    private String previousText() {
+        return tokens.text(pos - 1);
     }
 }
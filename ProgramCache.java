@@ -0,0 +1,111 @@
+package com.syed.elpl_backend;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+// Bounded LRU cache of parsed and resolved programs, keyed by the SHA-256 of
+// the source. Entries are evicted once there are more than maxEntries of
+// them or their total weight (token count) passes maxWeight. Cached programs
+// are shared by concurrent runs, so nothing writes to the AST after Resolver.
+// With 'optimize', Optimizer simplifies each program before it is resolved.
+final class ProgramCache {
+    private final int maxEntries;
+    private final long maxWeight;
+    private final boolean optimize;
+    private final LinkedHashMap<String, CachedProgram> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    ProgramCache(int maxEntries, long maxWeight, boolean optimize) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.optimize = optimize;
+    }
+
+    // Returns the cached program, lexing and parsing it on a miss.
+    // Lexer and Parser errors propagate and nothing is cached.
+    CachedProgram get(String source) {
+        String key = hash(source);
+        synchronized (this) {
+            CachedProgram cached = entries.get(key);
+            if (cached != null && cached.source.equals(source)) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+
+        TokenBuffer tokens = new Lexer(source).lex();
+        Program parsed = new Parser(tokens).parse();
+        List<String> optimizations = optimize ? Optimizer.optimize(parsed) : List.of();
+        Program ast = Resolver.resolve(parsed);
+        CachedProgram program = new CachedProgram(source, ast, tokens.size(), optimizations);
+
+        synchronized (this) {
+            if (program.weight <= maxWeight && maxEntries > 0) {
+                CachedProgram old = entries.put(key, program);
+                if (old != null) weight -= old.weight;
+                weight += program.weight;
+                evict();
+            }
+        }
+        return program;
+    }
+
+    synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("weight", weight);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+
+    private void evict() {
+        Iterator<CachedProgram> it = entries.values().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && it.hasNext()) {
+            weight -= it.next().weight;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private static String hash(String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(source.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
+
+// A resolved program, plus its bytecode once the VM engine has asked for it
+final class CachedProgram {
+    final String source;
+    final Program ast;
+    final int weight;
+    final List<String> optimizations; // what Optimizer changed
+    private volatile BytecodeProgram bytecode;
+
+    CachedProgram(String source, Program ast, int weight, List<String> optimizations) {
+        this.source = source;
+        this.ast = ast;
+        this.weight = weight;
+        this.optimizations = optimizations;
+    }
+
+    // BytecodeProgram is read-only, so racing compiles are harmless
+    BytecodeProgram bytecode() {
+        BytecodeProgram result = bytecode;
+        if (result == null) {
+            bytecode = result = BytecodeCompiler.compile(ast);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,148 @@
+package com.syed.elpl_backend;
+
+import java.util.*;
+
+// Marks the functions whose result depends only on their arguments
+// (FunctionDeclNode.pure), so their calls can be memoized. Runs as part of
+// Resolver.resolve.
+//
+// A pure function never prints (a bare call statement prints its result),
+// never declares functions or assigns array elements, and only calls pure
+// functions and builtins. It may only read its parameters and variables it
+// has already assigned: any other variable comes from the caller. Writes are
+// allowed, because a call's writes are undone when it returns.
+final class Purity {
+    private final Map<String, List<FunctionDeclNode>> declarations = new HashMap<>();
+
+    private Purity() {}
+
+    static Purity analyze(Program program) {
+        Purity purity = new Purity();
+        purity.collect(program.statements);
+
+        // Everything starts out pure and is ruled out until nothing changes,
+        // so recursion alone doesn't make a function impure
+        List<FunctionDeclNode> functions = new ArrayList<>();
+        for (List<FunctionDeclNode> sameName : purity.declarations.values()) {
+            functions.addAll(sameName);
+        }
+        for (FunctionDeclNode func : functions) {
+            func.pure = true;
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (FunctionDeclNode func : functions) {
+                if (func.pure && !purity.statements(func.body, new HashSet<>(func.parameters))) {
+                    func.pure = false;
+                    changed = true;
+                }
+            }
+        }
+        return purity;
+    }
+
+    // Finds every function declaration, nested ones included
+    private void collect(List<ASTNode> statements) {
+        for (ASTNode node : statements) {
+            if (node instanceof FunctionDeclNode func) {
+                declarations.computeIfAbsent(func.name, name -> new ArrayList<>()).add(func);
+                collect(func.body);
+            } else if (node instanceof BlockNode block) {
+                collect(block.statements);
+            } else if (node instanceof IfNode ifNode) {
+                collect(ifNode.thenBlock.statements);
+                if (ifNode.elseBlock != null) collect(ifNode.elseBlock.statements);
+            } else if (node instanceof RepeatNode repeat) {
+                collect(repeat.body);
+            } else if (node instanceof WhileNode whileNode) {
+                collect(whileNode.body);
+            } else if (node instanceof ForNode forNode) {
+                collect(forNode.body);
+            }
+        }
+    }
+
+    // 'defined' holds the names certainly assigned at this point. Branches and
+    // loop bodies get a copy, since they may not run.
+    private boolean statements(List<ASTNode> statements, Set<String> defined) {
+        for (ASTNode node : statements) {
+            if (!statement(node, defined)) return false;
+        }
+        return true;
+    }
+
+    private boolean statement(ASTNode node, Set<String> defined) {
+        if (node instanceof BlockNode block) {
+            return statements(block.statements, defined);
+        } else if (node instanceof AssignmentNode assign) {
+            if (!expr(assign.expression, defined)) return false;
+            defined.add(assign.identifier);
+            return true;
+        } else if (node instanceof ReturnNode ret) {
+            return expr(ret.value, defined);
+        } else if (node instanceof IfNode ifNode) {
+            return condition(ifNode.condition, defined)
+                    && statements(ifNode.thenBlock.statements, new HashSet<>(defined))
+                    && (ifNode.elseBlock == null || statements(ifNode.elseBlock.statements, new HashSet<>(defined)));
+        } else if (node instanceof RepeatNode repeat) {
+            return statements(repeat.body, new HashSet<>(defined));
+        } else if (node instanceof WhileNode whileNode) {
+            return condition(whileNode.condition, defined)
+                    && statements(whileNode.body, new HashSet<>(defined));
+        } else if (node instanceof ForNode forNode) {
+            if (!expr(forNode.start, defined) || !expr(forNode.end, defined)) return false;
+            Set<String> body = new HashSet<>(defined);
+            body.add(forNode.iterator);
+            return statements(forNode.body, body);
+        } else if (node instanceof ArrayDecNode arrayDec) {
+            for (ExpressionNode element : arrayDec.elements) {
+                if (!expr(element, defined)) return false;
+            }
+            defined.add(arrayDec.name);
+            return true;
+        }
+        return node instanceof StopNode;
+    }
+
+    private boolean condition(Condition cond, Set<String> defined) {
+        return expr(cond.left, defined) && expr(cond.right, defined);
+    }
+
+    private boolean expr(ExpressionNode expr, Set<String> defined) {
+        if (expr == null || expr instanceof NumberLiteral || expr instanceof BooleanLiteral
+                || expr instanceof StringLiteral) {
+            return true;
+        } else if (expr instanceof VariableRef ref) {
+            return defined.contains(ref.name);
+        } else if (expr instanceof ArrayAccessNode access) {
+            return defined.contains(access.arrayName) && expr(access.index, defined);
+        } else if (expr instanceof BinaryExpr bin) {
+            return expr(bin.left, defined) && expr(bin.right, defined);
+        } else if (expr instanceof LogicalExpr logical) {
+            return expr(logical.left, defined) && expr(logical.right, defined);
+        } else if (expr instanceof UnaryExpr unary) {
+            return expr(unary.expr, defined);
+        } else if (expr instanceof InvariantExpr invariant) {
+            return expr(invariant.expr, defined);
+        } else if (expr instanceof InductionExpr induction) {
+            return expr(induction.product, defined);
+        } else if (expr instanceof FunctionCallNode call) {
+            for (ExpressionNode arg : call.arguments) {
+                if (!expr(arg, defined)) return false;
+            }
+            return Builtins.isBuiltIn(call.name) ? Builtins.isPure(call.name) : isPure(call.name);
+        }
+        return false;
+    }
+
+    // A call by name may reach any declaration of that name
+    boolean isPure(String name) {
+        List<FunctionDeclNode> candidates = declarations.get(name);
+        if (candidates == null) return false;
+        for (FunctionDeclNode func : candidates) {
+            if (!func.pure) return false;
+        }
+        return true;
+    }
+}
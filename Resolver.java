@@ -0,0 +1,151 @@
+package com.syed.elpl_backend;
+
+import java.util.*;
+
+// Runs between Parser.parse() and interpretation. Every variable name in the
+// program gets a fixed slot so the interpreter can index an Object[] frame
+// instead of hashing the name on each access.
+//
+// A function sees the caller's variables, and its own writes are undone when
+// it returns. Engines therefore run every call in one shared frame: a call
+// saves the slots its function can write (localSlots) and restores them on
+// exit, so its cost doesn't depend on how many variables the caller has.
+// bench/CallBench measures this.
+// LoopOptimizer's hidden variables get slots the same way, so a recursive
+// call can't leave its loops' values behind.
+//
+// TypeInference then types the expressions, now that variables have slots.
+//
+// 'return f(...)' inside f is marked as a tail call when no loop encloses it
+// in f's body. A 'stop' in the callee would otherwise end that loop, so only
+// then can engines run the call by rebinding the parameters and starting the
+// body again.
+class Resolver {
+    private final Map<String, Integer> slots = new LinkedHashMap<>();
+    private int profiles;
+    private Set<Integer> written; // slots written by the function being resolved
+    private String function;      // name of the function being resolved
+    private int loops;            // loops around the current node inside that function
+
+    public static Program resolve(Program program) {
+        if (program.slotCount >= 0) return program;
+        Resolver resolver = new Resolver();
+        resolver.resolveAll(program.statements);
+        // A rejected 'parallel for' leaves slotCount unset, so it is rejected every time
+        ParallelLoops.check(program.statements, Purity.analyze(program));
+        TypeInference.infer(program.statements, resolver.slots.size());
+        program.slotCount = resolver.slots.size();
+        program.profileCount = resolver.profiles;
+        return program;
+    }
+
+    private int slotFor(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            slot = slots.size();
+            slots.put(name, slot);
+        }
+        return slot;
+    }
+
+    private int write(int slot) {
+        if (written != null) written.add(slot);
+        return slot;
+    }
+
+    private void resolveAll(List<? extends ASTNode> nodes) {
+        for (ASTNode node : nodes) {
+            resolveNode(node);
+        }
+    }
+
+    private void resolveNode(ASTNode node) {
+        if (node == null) return;
+
+        if (node instanceof Program program) {
+            resolveAll(program.statements);
+        } else if (node instanceof BlockNode block) {
+            resolveAll(block.statements);
+        } else if (node instanceof AssignmentNode assign) {
+            resolveNode(assign.expression);
+            assign.slot = write(slotFor(assign.identifier));
+        } else if (node instanceof PrintNode print) {
+            resolveAll(print.expressions);
+        } else if (node instanceof ReturnNode ret) {
+            resolveNode(ret.value);
+            ret.tailCall = loops == 0 && ret.value instanceof FunctionCallNode call
+                    && call.name.equals(function) && !Builtins.isBuiltIn(call.name);
+        } else if (node instanceof IfNode ifNode) {
+            resolveNode(ifNode.condition);
+            resolveNode(ifNode.thenBlock);
+            resolveNode(ifNode.elseBlock);
+        } else if (node instanceof RepeatNode repeat) {
+            loops++;
+            resolveAll(repeat.body);
+            loops--;
+        } else if (node instanceof WhileNode whileNode) {
+            whileNode.profile = profiles++;
+            resolveNode(whileNode.condition);
+            loops++;
+            resolveAll(whileNode.body);
+            loops--;
+        } else if (node instanceof ArrayDecNode arrayDec) {
+            resolveAll(arrayDec.elements);
+            arrayDec.slot = write(slotFor(arrayDec.name));
+        } else if (node instanceof ForNode forNode) {
+            resolveNode(forNode.start);
+            resolveNode(forNode.end);
+            forNode.slot = write(slotFor(forNode.iterator));
+            forNode.profile = profiles++;
+            loops++;
+            resolveAll(forNode.body);
+            loops--;
+        } else if (node instanceof ArrayAssignNode assign) {
+            assign.slot = slotFor(assign.arrayName);
+            resolveNode(assign.index);
+            resolveNode(assign.value);
+        } else if (node instanceof FunctionDeclNode func) {
+            func.profile = profiles++;
+            Set<Integer> outer = written;
+            String outerFunction = function;
+            int outerLoops = loops;
+            written = new LinkedHashSet<>();
+            function = func.name;
+            loops = 0;
+            func.parameterSlots = new int[func.parameters.size()];
+            for (int i = 0; i < func.parameterSlots.length; i++) {
+                func.parameterSlots[i] = write(slotFor(func.parameters.get(i)));
+            }
+            resolveAll(func.body);
+            func.localSlots = written.stream().mapToInt(Integer::intValue).toArray();
+            written = outer;
+            function = outerFunction;
+            loops = outerLoops;
+        } else if (node instanceof Condition cond) {
+            resolveNode(cond.left);
+            resolveNode(cond.right);
+        } else if (node instanceof VariableRef ref) {
+            ref.slot = slotFor(ref.name);
+        } else if (node instanceof ArrayAccessNode access) {
+            access.slot = slotFor(access.arrayName);
+            resolveNode(access.index);
+        } else if (node instanceof FunctionCallNode call) {
+            resolveAll(call.arguments);
+        } else if (node instanceof BinaryExpr bin) {
+            resolveNode(bin.left);
+            resolveNode(bin.right);
+        } else if (node instanceof LogicalExpr logical) {
+            resolveNode(logical.left);
+            resolveNode(logical.right);
+        } else if (node instanceof UnaryExpr unary) {
+            resolveNode(unary.expr);
+        } else if (node instanceof InvariantExpr invariant) {
+            resolveNode(invariant.expr);
+            invariant.slot = write(slotFor(invariant.name));
+        } else if (node instanceof InductionExpr induction) {
+            resolveNode(induction.product);
+            induction.slot = write(slotFor(induction.name));
+        }
+        // literals and StopNode carry no names
+    }
+}
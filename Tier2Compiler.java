@@ -0,0 +1,657 @@
+package com.syed.elpl_backend;
+
+import java.lang.invoke.*;
+import java.util.*;
+
+import static com.syed.elpl_backend.MethodAssembler.*;
+
+// Tier-2 backend for the tree interpreter. Functions that pass
+// FUNCTION_THRESHOLD calls, and loops that pass LOOP_THRESHOLD iterations,
+// are compiled to JVM bytecode and loaded as hidden classes, which are
+// unloaded together with the program that owns them.
+//
+// Only a numeric, side-effect-free subset is compiled: number variables,
+// arithmetic, comparisons, and/or/not, if/while/for/repeat/stop, return and
+// calls of the function to itself. Anything else leaves the code in the
+// interpreter. Because the compiled code cannot print or touch arrays,
+// a deopt (Tier2Deopt) can simply discard the compiled attempt. The
+// interpreter then re-runs the call or the rest of the loop. It also
+// produces any runtime error itself. Compiled code charges the run's Budget
+// as the interpreter would: on entering a function body and at the start of
+// every loop iteration, so an iteration ended by 'stop' still pays.
+final class Tier2Compiler {
+    static final int FUNCTION_THRESHOLD = 200;
+    static final int LOOP_THRESHOLD = 1000;
+    private static final int MAX_DEOPTS = 8;
+    private static final int MAX_RECURSION_DEPTH = 10000; // same limit as Interpreter
+
+    private static final String CODE_CLASS = "com/syed/elpl_backend/Tier2Code";
+    private static final String DEOPT_CLASS = "com/syed/elpl_backend/Tier2Deopt";
+    private static final String BUDGET_CLASS = "com/syed/elpl_backend/Budget";
+    private static final String BUDGET = "L" + BUDGET_CLASS + ";";
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType FUNCTION_ENTRY = MethodType.methodType(double.class, double[].class, int.class, Budget.class);
+    private static final MethodType LOOP_ENTRY =
+            MethodType.methodType(void.class, Object[].class, int.class, int.class, int.class, Budget.class);
+
+    private Tier2Compiler() {}
+
+    // Returns the compiled result, or null when the call has to run in the interpreter
+    static Object tryCall(Tier2Profile profile, FunctionDeclNode func, List<Object> args, int depth, Budget budget) {
+        Tier2Unit unit = profile.units[func.profile];
+        if (unit == null) {
+            if (++profile.hotness[func.profile] < FUNCTION_THRESHOLD) return null;
+            unit = profile.units[func.profile] = compileFunction(func);
+        }
+        if (unit == Tier2Unit.FAILED) return null;
+
+        double[] values = new double[args.size()];
+        for (int i = 0; i < values.length; i++) {
+            Object arg = args.get(i);
+            if (arg instanceof Double d) values[i] = d;
+            else if (arg instanceof Integer n) values[i] = n;
+            else return null;
+        }
+        try {
+            double result = (double) unit.handle.invokeExact(values, depth, budget);
+            return result;
+        } catch (Tier2Deopt | StackOverflowError e) {
+            if (++unit.deopts >= MAX_DEOPTS) profile.units[func.profile] = Tier2Unit.FAILED;
+            return null;
+        } catch (RunAbortedException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("tier-2 code failed", t);
+        }
+    }
+
+    // Runs the remaining iterations of a for loop, starting at counter 'from'.
+    // Returns false when the interpreter has to carry on with the loop itself.
+    static boolean tryLoop(Tier2Profile profile, ForNode loop, Object[] slots, int from, int to, int step,
+                           Budget budget) {
+        Tier2Unit unit = profile.units[loop.profile];
+        if (unit == null) {
+            if (++profile.hotness[loop.profile] < LOOP_THRESHOLD) return false;
+            unit = profile.units[loop.profile] = compileLoop(loop);
+        }
+        if (unit == Tier2Unit.FAILED) return false;
+        try {
+            unit.handle.invokeExact(slots, from, to, step, budget);
+            return true;
+        } catch (Tier2Deopt e) {
+            if (++unit.deopts >= MAX_DEOPTS) profile.units[loop.profile] = Tier2Unit.FAILED;
+            return false;
+        } catch (RunAbortedException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("tier-2 code failed", t);
+        }
+    }
+
+    // Runs a while loop to completion from the current state, condition first
+    static boolean tryLoop(Tier2Profile profile, WhileNode loop, Object[] slots, Budget budget) {
+        Tier2Unit unit = profile.units[loop.profile];
+        if (unit == null) {
+            if (++profile.hotness[loop.profile] < LOOP_THRESHOLD) return false;
+            unit = profile.units[loop.profile] = compileLoop(loop);
+        }
+        if (unit == Tier2Unit.FAILED) return false;
+        try {
+            unit.handle.invokeExact(slots, 0, 0, 0, budget);
+            return true;
+        } catch (Tier2Deopt e) {
+            if (++unit.deopts >= MAX_DEOPTS) profile.units[loop.profile] = Tier2Unit.FAILED;
+            return false;
+        } catch (RunAbortedException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("tier-2 code failed", t);
+        }
+    }
+
+    static Tier2Unit compileFunction(FunctionDeclNode func) {
+        try {
+            ClassAssembler cls = new ClassAssembler(CODE_CLASS);
+            int params = func.parameters.size();
+            String bodyDesc = "(" + "D".repeat(params) + "I" + BUDGET + ")D";
+
+            Codegen gen = new Codegen(cls.method("body", bodyDesc), func.name, params, bodyDesc);
+            gen.functionBody(func);
+
+            MethodAssembler entry = cls.method("enter", "([DI" + BUDGET + ")D");
+            entry.reserveLocals(3);
+            for (int i = 0; i < params; i++) {
+                entry.local(ALOAD, 0, 1);
+                entry.pushInt(i);
+                entry.op(DALOAD, 0);
+            }
+            entry.local(ILOAD, 1, 1);
+            entry.local(ALOAD, 2, 1);
+            entry.invokeStatic(CODE_CLASS, "body", bodyDesc, -2 * params);
+            entry.op(DRETURN, -2);
+
+            MethodHandles.Lookup code = LOOKUP.defineHiddenClass(cls.toBytes(), true);
+            return new Tier2Unit(code.findStatic(code.lookupClass(), "enter", FUNCTION_ENTRY));
+        } catch (Unsupported | IllegalStateException | ReflectiveOperationException | LinkageError e) {
+            return Tier2Unit.FAILED;
+        }
+    }
+
+    static Tier2Unit compileLoop(ASTNode loop) {
+        try {
+            ClassAssembler cls = new ClassAssembler(CODE_CLASS);
+            Codegen gen = new Codegen(cls.method("run", "([Ljava/lang/Object;III" + BUDGET + ")V"), null, 0, null);
+            gen.loopBody(loop);
+
+            MethodHandles.Lookup code = LOOKUP.defineHiddenClass(cls.toBytes(), true);
+            return new Tier2Unit(code.findStatic(code.lookupClass(), "run", LOOP_ENTRY));
+        } catch (Unsupported | IllegalStateException | ReflectiveOperationException | LinkageError e) {
+            return Tier2Unit.FAILED;
+        }
+    }
+
+    // Raised while generating code for anything outside the compiled subset
+    private static final class Unsupported extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final class Codegen {
+        private final MethodAssembler m;
+        private final String functionName;
+        private final int paramCount;
+        private final String bodyDesc;
+        private int depthLocal;
+        private int budgetLocal;
+        private Label bodyStart; // function units: where a tail call jumps back to
+
+        private final Map<String, Integer> locals = new HashMap<>();
+        // loop units only: frame slot, "written" flag and whether every write was a 'let'
+        private final Map<String, Integer> frameSlots = new LinkedHashMap<>();
+        private final Map<String, Integer> writtenFlags = new HashMap<>();
+        private final Map<String, Boolean> intKind = new HashMap<>();
+        private final Set<String> needsEntry = new LinkedHashSet<>();
+        private final Deque<Label> breakTargets = new ArrayDeque<>();
+
+        Codegen(MethodAssembler m, String functionName, int paramCount, String bodyDesc) {
+            this.m = m;
+            this.functionName = functionName;
+            this.paramCount = paramCount;
+            this.bodyDesc = bodyDesc;
+        }
+
+        private boolean isFunction() {
+            return functionName != null;
+        }
+
+        void functionBody(FunctionDeclNode func) throws Unsupported {
+            Set<String> defined = new HashSet<>();
+            for (int i = 0; i < paramCount; i++) {
+                String param = func.parameters.get(i);
+                if (locals.containsKey(param)) throw new Unsupported();
+                locals.put(param, m.newLocal(2));
+                defined.add(param);
+            }
+            depthLocal = m.newLocal(1);
+            budgetLocal = m.newLocal(1);
+            Label prologue = new Label();
+            Label body = new Label();
+            bodyStart = body;
+
+            m.jump(GOTO, prologue);
+            m.mark(body);
+            // Entering this body is one level deeper than the caller
+            Label depthOk = new Label();
+            m.local(ILOAD, depthLocal, 1);
+            m.pushInt(MAX_RECURSION_DEPTH - 1);
+            m.jump(IF_ICMPLE, depthOk);
+            deopt();
+            m.mark(depthOk);
+            tick();
+
+            statements(func.body, defined);
+            // Falling off the end returns nothing, which only the interpreter can represent
+            deopt();
+
+            m.mark(prologue);
+            clearLocals(new HashSet<>(func.parameters));
+            m.jump(GOTO, body);
+        }
+
+        void loopBody(ASTNode loop) throws Unsupported {
+            m.newLocal(4); // slots, from, to, step
+            budgetLocal = m.newLocal(1);
+            Label prologue = new Label();
+            Label body = new Label();
+            Label exit = new Label();
+
+            m.jump(GOTO, prologue);
+            m.mark(body);
+            Set<String> defined = new HashSet<>();
+            if (loop instanceof ForNode forNode) {
+                forLoop(forNode, defined, 1, 2, 3, exit);
+            } else if (loop instanceof WhileNode whileNode) {
+                whileLoop(whileNode, defined, exit);
+            } else {
+                throw new Unsupported();
+            }
+            m.mark(exit);
+
+            // Publish every variable the loop wrote back to the frame
+            for (Map.Entry<String, Integer> entry : frameSlots.entrySet()) {
+                Integer flag = writtenFlags.get(entry.getKey());
+                if (flag == null) continue;
+                Label skip = new Label();
+                m.local(ILOAD, flag, 1);
+                m.jump(IFEQ, skip);
+                m.local(ALOAD, 0, 1);
+                m.pushInt(entry.getValue());
+                m.local(DLOAD, locals.get(entry.getKey()), 2);
+                if (intKind.getOrDefault(entry.getKey(), false)) {
+                    m.op(D2I, -1);
+                    m.invokeStatic("java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;", 0);
+                } else {
+                    m.invokeStatic("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;", -1);
+                }
+                m.op(AASTORE, -3);
+                m.mark(skip);
+            }
+            m.op(RETURN, 0);
+
+            // Variables read before the loop assigns them must hold numbers on entry
+            m.mark(prologue);
+            for (String name : needsEntry) {
+                m.local(ALOAD, 0, 1);
+                m.pushInt(frameSlots.get(name));
+                m.op(AALOAD, -1);
+                m.invokeStatic(DEOPT_CLASS, "unbox", "(Ljava/lang/Object;)D", 1);
+                m.local(DSTORE, locals.get(name), -2);
+            }
+            clearLocals(needsEntry);
+            m.jump(GOTO, body);
+        }
+
+        // The verifier cannot see that a variable is only read once assigned,
+        // or written back only when its flag is set, so everything starts at zero
+        private void clearLocals(Set<String> initialized) {
+            for (Map.Entry<String, Integer> entry : locals.entrySet()) {
+                if (initialized.contains(entry.getKey())) continue;
+                m.pushDouble(0.0);
+                m.local(DSTORE, entry.getValue(), -2);
+            }
+            for (int flag : writtenFlags.values()) {
+                m.pushInt(0);
+                m.local(ISTORE, flag, -1);
+            }
+        }
+
+        // --- statements ---------------------------------------------------
+
+        private void statements(List<ASTNode> statements, Set<String> defined) throws Unsupported {
+            for (ASTNode stmt : statements) {
+                statement(stmt, defined);
+            }
+        }
+
+        private void statement(ASTNode node, Set<String> defined) throws Unsupported {
+            if (node instanceof BlockNode block) {
+                statements(block.statements, defined);
+            } else if (node instanceof AssignmentNode assign) {
+                number(assign.expression, defined);
+                if (!assign.isFloat) letCheck();
+                store(assign.identifier, assign.slot, !assign.isFloat);
+                defined.add(assign.identifier);
+            } else if (node instanceof IfNode ifNode) {
+                Label otherwise = new Label();
+                Label end = new Label();
+                condition(ifNode.condition, defined);
+                m.jump(IFEQ, otherwise);
+                Set<String> thenDefined = new HashSet<>(defined);
+                statements(ifNode.thenBlock.statements, thenDefined);
+                if (ifNode.elseBlock != null) {
+                    m.jump(GOTO, end);
+                    m.mark(otherwise);
+                    Set<String> elseDefined = new HashSet<>(defined);
+                    statements(ifNode.elseBlock.statements, elseDefined);
+                    m.mark(end);
+                    thenDefined.retainAll(elseDefined);
+                    defined.addAll(thenDefined);
+                } else {
+                    m.mark(otherwise);
+                }
+            } else if (node instanceof WhileNode whileNode) {
+                Label exit = new Label();
+                whileLoop(whileNode, defined, exit);
+                m.mark(exit);
+            } else if (node instanceof RepeatNode repeat) {
+                Label top = new Label();
+                Label exit = new Label();
+                int counter = m.newLocal(1);
+                m.pushInt(repeat.times);
+                m.local(ISTORE, counter, -1);
+                m.mark(top);
+                m.local(ILOAD, counter, 1);
+                m.jump(IFLE, exit);
+                tick();
+                breakTargets.push(exit);
+                statements(repeat.body, new HashSet<>(defined));
+                breakTargets.pop();
+                m.iinc(counter, -1);
+                m.jump(GOTO, top);
+                m.mark(exit);
+            } else if (node instanceof ForNode forNode) {
+                Label exit = new Label();
+                int counter = m.newLocal(1);
+                int to = m.newLocal(1);
+                int step = m.newLocal(1);
+                number(forNode.start, defined);
+                m.op(D2I, -1);
+                m.local(ISTORE, counter, -1);
+                number(forNode.end, defined);
+                m.op(D2I, -1);
+                m.local(ISTORE, to, -1);
+
+                Label down = new Label();
+                Label setStep = new Label();
+                m.local(ILOAD, counter, 1);
+                m.local(ILOAD, to, 1);
+                m.jump(IF_ICMPGT, down);
+                m.pushInt(1);
+                m.jump(GOTO, setStep);
+                m.mark(down);
+                m.pushInt(-1);
+                m.mark(setStep);
+                m.local(ISTORE, step, -1);
+
+                forLoop(forNode, defined, counter, to, step, exit);
+                m.mark(exit);
+            } else if (node instanceof ReturnNode ret) {
+                if (!isFunction() || ret.value == null) throw new Unsupported();
+                if (ret.tailCall && ret.value instanceof FunctionCallNode call
+                        && call.arguments.size() == paramCount) {
+                    tailCall(call, defined);
+                    return;
+                }
+                number(ret.value, defined);
+                m.op(DRETURN, -2);
+            } else if (node instanceof StopNode) {
+                if (breakTargets.isEmpty()) throw new Unsupported();
+                m.jump(GOTO, breakTargets.peek());
+            } else {
+                throw new Unsupported();
+            }
+        }
+
+        // Every argument is computed before any parameter changes, then the
+        // body starts over at the same depth
+        private void tailCall(FunctionCallNode call, Set<String> defined) throws Unsupported {
+            for (ExpressionNode arg : call.arguments) {
+                number(arg, defined);
+            }
+            for (int i = paramCount - 1; i >= 0; i--) {
+                m.local(DSTORE, 2 * i, -2); // parameters are the body method's leading doubles
+            }
+            m.jump(GOTO, bodyStart);
+        }
+
+        private void whileLoop(WhileNode loop, Set<String> defined, Label exit) throws Unsupported {
+            Label top = new Label();
+            m.mark(top);
+            condition(loop.condition, defined);
+            m.jump(IFEQ, exit);
+            tick();
+            breakTargets.push(exit);
+            statements(loop.body, new HashSet<>(defined));
+            breakTargets.pop();
+            m.jump(GOTO, top);
+        }
+
+        // Counter, bound and step live in int locals; the loop always runs at least once
+        private void forLoop(ForNode loop, Set<String> defined, int counter, int to, int step, Label exit)
+                throws Unsupported {
+            Label top = new Label();
+            Label down = new Label();
+            Label body = new Label();
+            m.mark(top);
+            m.local(ILOAD, step, 1);
+            m.jump(IFLE, down);
+            m.local(ILOAD, counter, 1);
+            m.local(ILOAD, to, 1);
+            m.jump(IF_ICMPGT, exit);
+            m.jump(GOTO, body);
+            m.mark(down);
+            m.local(ILOAD, counter, 1);
+            m.local(ILOAD, to, 1);
+            m.jump(IF_ICMPLT, exit);
+            m.mark(body);
+            tick();
+
+            m.local(ILOAD, counter, 1);
+            m.op(I2D, 1);
+            store(loop.iterator, loop.slot, true);
+
+            Set<String> bodyDefined = new HashSet<>(defined);
+            bodyDefined.add(loop.iterator);
+            breakTargets.push(exit);
+            statements(loop.body, bodyDefined);
+            breakTargets.pop();
+
+            m.local(ILOAD, counter, 1);
+            m.local(ILOAD, step, 1);
+            m.op(IADD, -1);
+            m.local(ISTORE, counter, -1);
+            m.jump(GOTO, top);
+            defined.add(loop.iterator);
+        }
+
+        // --- expressions --------------------------------------------------
+
+        private void condition(Condition cond, Set<String> defined) throws Unsupported {
+            if (cond.comparator != null) throw new Unsupported();
+            bool(cond.left, defined);
+        }
+
+        // Leaves a double on the stack
+        private void number(ExpressionNode expr, Set<String> defined) throws Unsupported {
+            if (expr instanceof NumberLiteral literal) {
+                m.pushDouble(literal.value);
+            } else if (expr instanceof VariableRef ref) {
+                load(ref.name, ref.slot, defined);
+            } else if (expr instanceof BinaryExpr bin) {
+                int opcode = switch (bin.op) {
+                    case ADD -> DADD;
+                    case SUBTRACT -> DSUB;
+                    case MULTIPLY -> DMUL;
+                    case DIVIDE -> DDIV;
+                    case MOD -> DREM;
+                    default -> throw new Unsupported();
+                };
+                number(bin.left, defined);
+                number(bin.right, defined);
+                if (opcode == DDIV || opcode == DREM) {
+                    // x / 0 is a runtime error the interpreter reports
+                    Label nonZero = new Label();
+                    m.op(DUP2, 2);
+                    m.pushDouble(0.0);
+                    m.op(DCMPL, -3);
+                    m.jump(IFNE, nonZero);
+                    deopt();
+                    m.mark(nonZero);
+                }
+                m.op(opcode, -2);
+            } else if (expr instanceof UnaryExpr unary && unary.op == Operator.NEGATE) {
+                number(unary.expr, defined);
+                m.op(DNEG, 0);
+            } else if (expr instanceof InvariantExpr invariant) {
+                // The JIT hoists compiled code itself
+                number(invariant.expr, defined);
+            } else if (expr instanceof InductionExpr induction) {
+                number(induction.product, defined);
+            } else if (expr instanceof FunctionCallNode call && call.name.equals(functionName)
+                    && call.arguments.size() == paramCount) {
+                for (ExpressionNode arg : call.arguments) {
+                    number(arg, defined);
+                }
+                m.local(ILOAD, depthLocal, 1);
+                m.pushInt(1);
+                m.op(IADD, -1);
+                m.local(ALOAD, budgetLocal, 1);
+                m.invokeStatic(CODE_CLASS, "body", bodyDesc, -2 * paramCount);
+            } else {
+                throw new Unsupported();
+            }
+        }
+
+        // Leaves 1 or 0 on the stack
+        private void bool(ExpressionNode expr, Set<String> defined) throws Unsupported {
+            if (expr instanceof BooleanLiteral literal) {
+                m.pushInt(literal.value ? 1 : 0);
+            } else if (expr instanceof InvariantExpr invariant) {
+                bool(invariant.expr, defined);
+            } else if (expr instanceof UnaryExpr unary && unary.op == Operator.NOT) {
+                bool(unary.expr, defined);
+                m.pushInt(1);
+                m.op(IXOR, -1);
+            } else if (expr instanceof LogicalExpr logical) {
+                // The left value is the result when it decides the outcome
+                Label done = new Label();
+                bool(logical.left, defined);
+                m.op(DUP, 1);
+                m.jump(logical.op == Operator.AND ? IFEQ : IFNE, done);
+                m.op(POP, -1);
+                bool(logical.right, defined);
+                m.mark(done);
+            } else if (expr instanceof BinaryExpr bin) {
+                // NaN compares false, so pick dcmpl/dcmpg to push it to the false side
+                int compare;
+                int jumpIfFalse;
+                switch (bin.op) {
+                    case GREATER -> { compare = DCMPL; jumpIfFalse = IFLE; }
+                    case LESS -> { compare = DCMPG; jumpIfFalse = IFGE; }
+                    case GREATER_EQUAL -> { compare = DCMPL; jumpIfFalse = IFLT; }
+                    case LESS_EQUAL -> { compare = DCMPG; jumpIfFalse = IFGT; }
+                    case EQUAL -> { compare = DCMPL; jumpIfFalse = IFNE; }
+                    case NOT_EQUAL -> { compare = DCMPL; jumpIfFalse = IFEQ; }
+                    default -> throw new Unsupported();
+                }
+                Label isFalse = new Label();
+                Label end = new Label();
+                number(bin.left, defined);
+                number(bin.right, defined);
+                m.op(compare, -3);
+                m.jump(jumpIfFalse, isFalse);
+                m.pushInt(1);
+                m.jump(GOTO, end);
+                m.mark(isFalse);
+                m.pushInt(0);
+                m.mark(end);
+            } else {
+                throw new Unsupported();
+            }
+        }
+
+        // --- variables ----------------------------------------------------
+
+        private int localFor(String name, int slot) throws Unsupported {
+            Integer local = locals.get(name);
+            if (local != null) return local;
+            if (slot < 0) throw new Unsupported();
+            local = m.newLocal(2);
+            locals.put(name, local);
+            if (!isFunction()) frameSlots.put(name, slot);
+            return local;
+        }
+
+        private void load(String name, int slot, Set<String> defined) throws Unsupported {
+            if (!defined.contains(name)) {
+                // A function may only read its parameters and what it assigned itself
+                if (isFunction()) throw new Unsupported();
+                localFor(name, slot);
+                needsEntry.add(name);
+            }
+            m.local(DLOAD, localFor(name, slot), 2);
+        }
+
+        private void store(String name, int slot, boolean isInt) throws Unsupported {
+            m.local(DSTORE, localFor(name, slot), -2);
+            if (isFunction()) return;
+            Integer flag = writtenFlags.get(name);
+            if (flag == null) {
+                flag = m.newLocal(1);
+                writtenFlags.put(name, flag);
+            }
+            m.pushInt(1);
+            m.local(ISTORE, flag, -1);
+            intKind.merge(name, isInt, Boolean::logicalAnd);
+        }
+
+        // 'let' only takes whole numbers, stored as (int) like Values.toLetValue
+        private void letCheck() {
+            Label whole = new Label();
+            m.op(DUP2, 2);
+            m.op(DUP2, 2);
+            m.invokeStatic("java/lang/Math", "floor", "(D)D", 0);
+            m.op(DCMPL, -3);
+            m.jump(IFEQ, whole);
+            deopt();
+            m.mark(whole);
+            m.op(D2I, -1);
+            m.op(I2D, 1);
+        }
+
+        private void tick() {
+            m.local(ALOAD, budgetLocal, 1);
+            m.invokeVirtual(BUDGET_CLASS, "tick", "()V", -1);
+        }
+
+        private void deopt() {
+            m.getStatic(DEOPT_CLASS, "INSTANCE", "L" + DEOPT_CLASS + ";");
+            m.op(ATHROW, -1);
+        }
+    }
+}
+
+// Tier-2 state of one run, indexed by the profile number Resolver gives each
+// loop and function. Kept out of the AST so parsed programs can be shared.
+final class Tier2Profile {
+    final int[] hotness;     // iterations or calls seen by the interpreter
+    final Tier2Unit[] units; // compiled code, or Tier2Unit.FAILED
+
+    Tier2Profile(int size) {
+        hotness = new int[size];
+        units = new Tier2Unit[size];
+    }
+}
+
+// Compiled code for one function or loop
+final class Tier2Unit {
+    static final Tier2Unit FAILED = new Tier2Unit(null);
+
+    final MethodHandle handle;
+    int deopts;
+
+    Tier2Unit(MethodHandle handle) {
+        this.handle = handle;
+    }
+}
+
+// Thrown by compiled code to hand control back to the interpreter. Stackless
+// and preallocated, since compiled code throws it from hot paths.
+final class Tier2Deopt extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    static final Tier2Deopt INSTANCE = new Tier2Deopt();
+
+    private Tier2Deopt() {
+        super(null, null, false, false);
+    }
+
+    static double unbox(Object value) {
+        if (value instanceof Double d) return d;
+        if (value instanceof Integer i) return i;
+        throw INSTANCE;
+    }
+}
@@ -0,0 +1,139 @@
+package com.syed.elpl_backend;
+
+import java.util.*;
+
+// The tokens of one source as parallel arrays rather than Token objects. A
+// token's start and length cover exactly the characters the lexer consumed
+// for it, quotes included. Its text is sliced from the source only when
+// asked for, which Parser does for identifiers, numbers and strings; keywords
+// and punctuation never need theirs except in error messages.
+final class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private String source;
+    private byte[] types; // TokenType ordinals
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private int[] columns;
+    private int size;
+
+    TokenBuffer(String source) {
+        this(source, source.length() / 4 + 16); // about four characters per token
+    }
+
+    TokenBuffer(String source, int capacity) {
+        this.source = source;
+        types = new byte[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        columns = new int[capacity];
+    }
+
+    void add(TokenType type, int start, int length, int line, int column) {
+        if (size == types.length) {
+            grow(size * 2);
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        columns[size] = column;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    TokenType type(int i) {
+        return TYPES[types[i]];
+    }
+
+    // The token's value: a string literal without its quotes, "" for EOF
+    String text(int i) {
+        int start = starts[i];
+        int end = start + lengths[i];
+        if (types[i] == TokenType.STRING.ordinal()) {
+            start++;
+            // An unterminated string runs to the end of the source
+            if (end > start && source.charAt(end - 1) == '"') end--;
+        }
+        return source.substring(start, end);
+    }
+
+    int start(int i) {
+        return starts[i];
+    }
+
+    int end(int i) {
+        return starts[i] + lengths[i];
+    }
+
+    int line(int i) {
+        return lines[i];
+    }
+
+    int column(int i) {
+        return columns[i];
+    }
+
+    // Index of the first token starting at or after offset
+    int indexAt(int offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] < offset) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    // After an edit to the source: tokens [from, to) become those of
+    // 'replacement', and the ones after them move 'shift' characters
+    void replace(int from, int to, TokenBuffer replacement, int shift, String source) {
+        int count = replacement.size;
+        int newSize = size - (to - from) + count;
+        if (newSize > types.length) {
+            grow(Math.max(size * 2, newSize));
+        }
+        int after = size - to;
+        if (count != to - from) {
+            System.arraycopy(types, to, types, from + count, after);
+            System.arraycopy(starts, to, starts, from + count, after);
+            System.arraycopy(lengths, to, lengths, from + count, after);
+            System.arraycopy(lines, to, lines, from + count, after);
+            System.arraycopy(columns, to, columns, from + count, after);
+        }
+        System.arraycopy(replacement.types, 0, types, from, count);
+        System.arraycopy(replacement.starts, 0, starts, from, count);
+        System.arraycopy(replacement.lengths, 0, lengths, from, count);
+        System.arraycopy(replacement.lines, 0, lines, from, count);
+        System.arraycopy(replacement.columns, 0, columns, from, count);
+        if (shift != 0) {
+            for (int i = from + count; i < newSize; i++) {
+                starts[i] += shift;
+            }
+        }
+        size = newSize;
+        this.source = source;
+    }
+
+    List<Token> toList() {
+        List<Token> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tokens.add(new Token(type(i), text(i), lines[i], columns[i]));
+        }
+        return tokens;
+    }
+
+    private void grow(int capacity) {
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        columns = Arrays.copyOf(columns, capacity);
+    }
+}
@@ -0,0 +1,79 @@
+package com.syed.elpl_backend;
+
+import java.util.*;
+
+// Execution events from Interpreter. NONE ignores them; hooks receive the
+// values the interpreter already has, so with NONE a call site costs nothing
+// once the JIT inlines the empty method.
+interface Tracer {
+    Tracer NONE = new Tracer() {};
+
+    default void conditionEvaluated(Condition condition, boolean result) {}
+
+    default void functionEntered(String name, List<Object> args) {}
+
+    default void functionReturned(String name, Object value) {}
+
+    default void loopExited(ASTNode loop, boolean stopped) {}
+}
+
+// Keeps the last 'capacity' events as text for one run
+final class RingBufferTracer implements Tracer {
+    private final String[] events;
+    private long count;
+
+    RingBufferTracer(int capacity) {
+        events = new String[capacity];
+    }
+
+    @Override
+    public void conditionEvaluated(Condition condition, boolean result) {
+        add("condition " + result);
+    }
+
+    @Override
+    public void functionEntered(String name, List<Object> args) {
+        StringBuilder event = new StringBuilder("enter ").append(name).append("(");
+        for (int i = 0; i < args.size(); i++) {
+            if (i > 0) event.append(", ");
+            Values.appendPrintValue(event, args.get(i));
+        }
+        add(event.append(")").toString());
+    }
+
+    @Override
+    public void functionReturned(String name, Object value) {
+        StringBuilder event = new StringBuilder("return ").append(name).append(" -> ");
+        Values.appendPrintValue(event, value);
+        add(event.toString());
+    }
+
+    @Override
+    public void loopExited(ASTNode loop, boolean stopped) {
+        String kind = loop instanceof ForNode forNode ? "for " + forNode.iterator
+                : loop instanceof WhileNode ? "while"
+                : "repeat";
+        add("exit " + kind + (stopped ? " (stop)" : ""));
+    }
+
+    // Oldest first; events past the capacity are counted but not kept
+    List<String> events() {
+        List<String> result = new ArrayList<>();
+        int kept = (int) Math.min(count, events.length);
+        for (int i = 0; i < kept; i++) {
+            result.add(events[(int) ((count - kept + i) % events.length)]);
+        }
+        return result;
+    }
+
+    long dropped() {
+        return Math.max(0, count - events.length);
+    }
+
+    private void add(String event) {
+        if (events.length > 0) {
+            events[(int) (count % events.length)] = event;
+        }
+        count++;
+    }
+}
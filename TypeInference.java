@@ -0,0 +1,188 @@
+package com.syed.elpl_backend;
+
+import java.util.*;
+
+// Runs as part of Resolver.resolve, once slots are assigned, and sets
+// ExpressionNode.type wherever it can tell what every value of the
+// expression is. Engines use it to pick primitive paths up front; an
+// expression left UNKNOWN takes the dynamic path, as before.
+//
+// A typed expression never evaluates to null: it produces a value of its
+// type or fails. Variables are typed per slot, by joining everything any
+// part of the program may store in it, since a function sees its caller's
+// variables. A call to a user function is UNKNOWN and stores UNKNOWN: it
+// gives back null when it gets past its last statement, as it does when a
+// runtime error skips its 'return', and null is a value a variable can hold.
+//
+// 'let' stores numbers as Integer and 'float' keeps what it is given.
+// Tier-2 code writes a 'float' variable as a Double, so one only ever
+// counts as NUMBER. Array elements are UNKNOWN.
+final class TypeInference {
+    private final ValueType[] slots;                           // null until something is stored
+    private final Map<String, List<FunctionDeclNode>> functions = new HashMap<>();
+    private boolean changed;
+
+    private TypeInference(int slotCount) {
+        this.slots = new ValueType[slotCount];
+    }
+
+    // Walks the program until no slot type widens any more; the
+    // last walk leaves the final types on the expressions
+    static void infer(List<ASTNode> statements, int slotCount) {
+        TypeInference inference = new TypeInference(slotCount);
+        do {
+            inference.changed = false;
+            inference.statements(statements);
+        } while (inference.changed);
+    }
+
+    private void statements(List<ASTNode> statements) {
+        for (ASTNode node : statements) {
+            statement(node);
+        }
+    }
+
+    private void statement(ASTNode node) {
+        if (node instanceof BlockNode block) {
+            statements(block.statements);
+        } else if (node instanceof AssignmentNode assign) {
+            ValueType value = stored(assign.expression);
+            if (value != null && value.isNumber()) {
+                value = assign.isFloat ? (value == ValueType.DOUBLE ? value : ValueType.NUMBER) : ValueType.INT;
+            }
+            store(assign.slot, value);
+        } else if (node instanceof PrintNode print) {
+            print.expressions.forEach(this::expr);
+        } else if (node instanceof ReturnNode ret) {
+            if (ret.value != null) expr(ret.value);
+        } else if (node instanceof IfNode ifNode) {
+            condition(ifNode.condition);
+            statements(ifNode.thenBlock.statements);
+            if (ifNode.elseBlock != null) statements(ifNode.elseBlock.statements);
+        } else if (node instanceof RepeatNode repeat) {
+            statements(repeat.body);
+        } else if (node instanceof WhileNode whileNode) {
+            condition(whileNode.condition);
+            statements(whileNode.body);
+        } else if (node instanceof ForNode forNode) {
+            expr(forNode.start);
+            expr(forNode.end);
+            store(forNode.slot, ValueType.INT);
+            statements(forNode.body);
+        } else if (node instanceof ArrayDecNode arrayDec) {
+            arrayDec.elements.forEach(this::expr);
+            store(arrayDec.slot, ValueType.ARRAY);
+        } else if (node instanceof ArrayAssignNode assign) {
+            expr(assign.index);
+            expr(assign.value);
+        } else if (node instanceof FunctionDeclNode func) {
+            List<FunctionDeclNode> declared = functions.computeIfAbsent(func.name, name -> new ArrayList<>());
+            if (!declared.contains(func)) {
+                declared.add(func);
+                changed = true;
+            }
+            statements(func.body);
+        } else if (node instanceof FunctionCallNode call) {
+            expr(call);
+        }
+    }
+
+    private void condition(Condition cond) {
+        expr(cond.left);
+        if (cond.right != null) expr(cond.right);
+    }
+
+    // What evaluating expr can store in a variable: its type, for a variable
+    // what has been stored in it; null when nothing is known yet. A variable
+    // nothing is ever stored in can't be read, so it passes nothing on.
+    private ValueType stored(ExpressionNode expr) {
+        ValueType type = expr(expr);
+        if (expr instanceof VariableRef ref) {
+            return slots[ref.slot];
+        }
+        return type;
+    }
+
+    private void store(int slot, ValueType value) {
+        if (value == null) return;
+        ValueType joined = ValueType.join(slots[slot], value);
+        if (joined != slots[slot]) {
+            slots[slot] = joined;
+            changed = true;
+        }
+    }
+
+    private ValueType expr(ExpressionNode expr) {
+        if (expr == null) return ValueType.UNKNOWN;
+        ValueType type = ValueType.UNKNOWN;
+        if (expr instanceof NumberLiteral) {
+            type = ValueType.DOUBLE;
+        } else if (expr instanceof BooleanLiteral) {
+            type = ValueType.BOOLEAN;
+        } else if (expr instanceof StringLiteral) {
+            type = ValueType.STRING;
+        } else if (expr instanceof VariableRef ref) {
+            if (slots[ref.slot] != null) type = slots[ref.slot];
+        } else if (expr instanceof BinaryExpr bin) {
+            expr(bin.left);
+            expr(bin.right);
+            type = bin.op.isArithmetic() ? ValueType.DOUBLE : ValueType.BOOLEAN;
+        } else if (expr instanceof LogicalExpr logical) {
+            expr(logical.left);
+            expr(logical.right);
+            type = ValueType.BOOLEAN;
+        } else if (expr instanceof UnaryExpr unary) {
+            expr(unary.expr);
+            type = unary.op == Operator.NOT ? ValueType.BOOLEAN : ValueType.DOUBLE;
+        } else if (expr instanceof ArrayAccessNode access) {
+            expr(access.index);
+        } else if (expr instanceof FunctionCallNode call) {
+            type = call(call);
+        } else if (expr instanceof InvariantExpr invariant) {
+            type = expr(invariant.expr);
+        } else if (expr instanceof InductionExpr induction) {
+            expr(induction.product);
+            type = ValueType.DOUBLE;
+        }
+        expr.type = type;
+        return type;
+    }
+
+    private ValueType call(FunctionCallNode call) {
+        List<ValueType> arguments = new ArrayList<>();
+        for (ExpressionNode arg : call.arguments) {
+            arguments.add(stored(arg));
+        }
+        if (Builtins.isBuiltIn(call.name)) {
+            return switch (call.name) {
+                case "reverse", "sort", "scale" -> ValueType.ARRAY;
+                default -> ValueType.DOUBLE;
+            };
+        }
+        // The parameters take the arguments of every call that gets that far
+        for (FunctionDeclNode func : functions.getOrDefault(call.name, List.of())) {
+            if (func.parameterSlots.length != arguments.size()) continue;
+            for (int i = 0; i < arguments.size(); i++) {
+                store(func.parameterSlots[i], arguments.get(i));
+            }
+        }
+        return ValueType.UNKNOWN;
+    }
+}
+
+// What TypeInference knows about the values of an expression. INT values
+// are Integer, DOUBLE values Double, and NUMBER values either.
+enum ValueType {
+    UNKNOWN, INT, DOUBLE, NUMBER, BOOLEAN, STRING, ARRAY;
+
+    boolean isNumber() {
+        return this == INT || this == DOUBLE || this == NUMBER;
+    }
+
+    // null stands for no value at all
+    static ValueType join(ValueType a, ValueType b) {
+        if (a == null || a == b) return b;
+        if (b == null) return a;
+        return a.isNumber() && b.isNumber() ? NUMBER : UNKNOWN;
+    }
+}
@@ -0,0 +1,82 @@
+package com.syed.elpl_backend;
+
+import java.util.*;
+
+// Value conversions and formatting shared by every execution engine
+final class Values {
+    private Values() {}
+
+    static double toDouble(Object value) {
+        if (value instanceof Integer) return ((Integer) value).doubleValue();
+        if (value instanceof Double) return (Double) value;
+        throw new RuntimeException("Expected numeric value but got: " + value);
+    }
+
+    // Operand of 'and' / 'or'
+    static boolean logicalOperand(Object value, Operator op) {
+        if (!(value instanceof Boolean)) {
+            throw new RuntimeException("'" + op.text + "' requires boolean operands");
+        }
+        return (Boolean) value;
+    }
+
+    // 'let' variables hold whole numbers only
+    static Object toLetValue(Object value) {
+        if (value instanceof Double) {
+            return toLetValue((double) (Double) value);
+        }
+        return value;
+    }
+
+    static Integer toLetValue(double val) {
+        if (val != Math.floor(val)) {
+            throw new RuntimeException("Cannot assign non-integer to 'let' variable: " + val);
+        }
+        return (int) val;
+    }
+
+    // Formats one evaluated print argument
+    static void appendPrintValue(StringBuilder output, Object val) {
+        if (val instanceof ElplArray) {
+            ElplArray list = (ElplArray) val;
+            output.append("[");
+            for (int j = 0; j < list.size(); j++) {
+                Object item = list.get(j);
+                if (item instanceof Double && ((Double) item) % 1 == 0) {
+                    output.append(((Double) item).intValue());
+                } else {
+                    output.append(item);
+                }
+                if (j < list.size() - 1) {
+                    output.append(", ");
+                }
+            }
+            output.append("]");
+        } else if (val instanceof Double && ((Double) val) % 1 == 0) {
+            output.append(((Double) val).intValue());
+        } else {
+            output.append(val);
+        }
+    }
+
+    // appendPrintValue for a number, without boxing it
+    static void appendPrintNumber(StringBuilder output, double value) {
+        // Whole as in value % 1 == 0, which is slower to compute
+        if (value == Math.floor(value) && !Double.isInfinite(value)) {
+            output.append((int) value);
+        } else {
+            output.append(value);
+        }
+    }
+
+    // A bare 'call f()' statement echoes a non-null result on its own line
+    static void appendCallResult(StringBuilder output, Object result) {
+        if (result == null) return;
+        if (result instanceof Double && ((Double) result) % 1 == 0) {
+            output.append(((Double) result).intValue());
+        } else {
+            output.append(result);
+        }
+        output.append("\n");
+    }
+}
@@ -0,0 +1,21 @@
+package com.syed.elpl_backend;
+
+// Time and allocation per run of the arithmetic loops behind the unboxed
+// numeric path (Interpreter.evaluateDouble and evaluateBoolean). The array
+// reads keep tier 2 out of the first two loops, so they measure the
+// evaluator itself; alloc_simple is compiled by tier 2. Optimizer stays
+// off, or it would hoist 'a[0] mod 7' out of the first loop.
+//
+//   java -cp target/bench com.syed.elpl_backend.AllocationBench [engine] [runs]
+//
+// The engine defaults to tree and runs to 20. See Bench for how to build.
+public class AllocationBench {
+    public static void main(String[] args) {
+        Engine engine = Engine.fromName(args.length > 0 ? args[0] : "tree");
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        for (String name : new String[] {"alloc_loop.elpl", "alloc_mixed.elpl", "alloc_simple.elpl"}) {
+            CachedProgram program = Bench.compile(Bench.program(name), false);
+            Bench.measure(name + " (" + engine.name().toLowerCase() + ")", 5, runs, () -> Bench.run(program, engine));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.syed.elpl_backend;
+
+import com.sun.management.ThreadMXBean;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Shared by the benchmarks in this directory. They are plain main classes
+// that need only the interpreter sources, not Spring. From the repository
+// root:
+//
+//   javac -encoding UTF-8 -d target/bench $(ls *.java | grep -v -e ^ELPL -e ^InterpreterService) bench/*.java
+//   java -cp target/bench com.syed.elpl_backend.AllocationBench
+//
+// Programs are read from bench/, so run them from the root as well.
+// Allocation is what the running thread allocates, as reported by the JVM.
+final class Bench {
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Bench() {}
+
+    static String program(String name) {
+        try {
+            return Files.readString(Path.of("bench", name));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Lexed, parsed and resolved the way InterpreterService does it
+    static CachedProgram compile(String source, boolean optimize) {
+        return new ProgramCache(0, 0, optimize).get(source);
+    }
+
+    static String run(CachedProgram program, Engine engine) {
+        OutputSink sink = new OutputSink();
+        Budget budget = Budget.unlimited();
+        if (engine == Engine.NODES) {
+            NodeCompiler.run(program.ast, sink, null, budget);
+        } else if (engine == Engine.VM) {
+            BytecodeVM.run(program.bytecode(), sink, null, budget);
+        } else {
+            new Interpreter(sink, Tracer.NONE, null, budget).interpret(program.ast);
+        }
+        return sink.toString();
+    }
+
+    // Runs task 'warmup' times unmeasured, then 'runs' times, and prints the
+    // average time and allocation per run
+    static void measure(String label, int warmup, int runs, Runnable task) {
+        for (int i = 0; i < warmup; i++) task.run();
+        long allocated = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) task.run();
+        long nanos = System.nanoTime() - start;
+        allocated = THREADS.getCurrentThreadAllocatedBytes() - allocated;
+        System.out.printf("%-32s %9.1f ms %10d KB%n", label, nanos / 1e6 / runs, allocated / 1024 / runs);
+    }
+}
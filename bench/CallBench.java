@@ -0,0 +1,31 @@
+package com.syed.elpl_backend;
+
+// Cost of user function calls: recursive fib(25) from bench/fib25.elpl,
+// run as is and with 200 and 1000 extra variables declared before it. A
+// call saves and restores only the slots its function writes, so the time
+// per run should not grow with the number of variables in scope. The array
+// read in the base case keeps tier 2 out.
+//
+//   java -cp target/bench com.syed.elpl_backend.CallBench [engine] [runs]
+//
+// The engine defaults to tree and runs to 40. See Bench for how to build.
+public class CallBench {
+    public static void main(String[] args) {
+        Engine engine = Engine.fromName(args.length > 0 ? args[0] : "tree");
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        String fib = Bench.program("fib25.elpl");
+        for (int variables : new int[] {0, 200, 1000}) {
+            CachedProgram program = Bench.compile(withVariables(variables) + fib, false);
+            String label = "fib(25), " + variables + " variables (" + engine.name().toLowerCase() + ")";
+            Bench.measure(label, 5, runs, () -> Bench.run(program, engine));
+        }
+    }
+
+    private static String withVariables(int count) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            source.append("let v").append(i).append(" be ").append(i).append('\n');
+        }
+        return source.toString();
+    }
+}
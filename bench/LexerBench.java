@@ -0,0 +1,57 @@
+package com.syed.elpl_backend;
+
+import java.nio.charset.StandardCharsets;
+
+// Lexer throughput in MB/s on generated programs of 2, 5 and 20 MB, or the
+// sizes given. The source repeats four statements with varying names and
+// numbers: a 'let' with arithmetic, an 'if' with the longest comparator
+// phrase, a 'for' writing an array and a 'while' with and/not, plus strings
+// and a comment.
+//
+//   java -cp target/bench com.syed.elpl_backend.LexerBench [megabytes...]
+//
+// Each size is lexed 5 times to warm up, then timed over 10 runs, through
+// both tokenize() and lex(). Give the JVM a heap of a few GB for 20 MB, since
+// tokenize() keeps millions of Token objects alive. See Bench for how to build.
+public class LexerBench {
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? new int[args.length] : new int[] {2, 5, 20};
+        for (int i = 0; i < args.length; i++) sizes[i] = Integer.parseInt(args[i]);
+        for (int megabytes : sizes) {
+            String source = generate(megabytes * 1_000_000);
+            double bytes = source.getBytes(StandardCharsets.UTF_8).length;
+            time("tokenize()", bytes, () -> new Lexer(source).tokenize().size());
+            time("lex()", bytes, () -> new Lexer(source).lex().size());
+        }
+    }
+
+    // At least 'bytes' characters of ELPL source
+    static String generate(int bytes) {
+        StringBuilder source = new StringBuilder(bytes + 256);
+        for (int i = 0; source.length() < bytes; i++) {
+            source.append("let total").append(i).append(" be count").append(i % 97)
+                    .append(" add 3.5 multiply value").append(i % 13).append('\n');
+            source.append("if total").append(i).append(" is greater than or equal to limit").append(i % 7)
+                    .append(" then { print \"big\" total").append(i).append(" } otherwise { stop }\n");
+            source.append("for index be 1 to 10 { let Array").append(i % 5)
+                    .append("[index] be result subtract 1 } / note\n");
+            source.append("while counter is less than 100 and not (flag is equal to true) { let counter be counter add 1 }\n");
+        }
+        return source.toString();
+    }
+
+    private interface Lexing {
+        int tokens();
+    }
+
+    private static void time(String label, double bytes, Lexing lexing) {
+        int tokens = 0;
+        for (int i = 0; i < 5; i++) tokens = lexing.tokens();
+        int runs = 10;
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) tokens = lexing.tokens();
+        double seconds = (System.nanoTime() - start) / 1e9 / runs;
+        System.out.printf("%5.1f MB %-11s %9d tokens %8.1f ms %7.1f MB/s%n",
+                bytes / 1e6, label, tokens, seconds * 1e3, bytes / 1e6 / seconds);
+    }
+}
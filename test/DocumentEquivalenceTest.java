@@ -0,0 +1,114 @@
+package com.syed.elpl_backend;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Pins Document's incremental checks to checking the whole text again. Each
+// program in test/programs goes through rounds of random edits: snippets of
+// ELPL typed in, ranges deleted or replaced, text copied from elsewhere in
+// it. A round makes up to three edits, checks, and undoes them, sometimes
+// checking again and sometimes letting the undo pile up with the next
+// round's edits. After each check, the error and the statement count must
+// be what a new Document and the Parser give for the same text.
+//
+//   java -cp target/test com.syed.elpl_backend.DocumentEquivalenceTest [rounds] [seed]
+//
+// Run it from the repository root. Prints the first mismatching text and
+// exits with 1. See the README for how to build.
+public class DocumentEquivalenceTest {
+    private static final Path PROGRAMS = Path.of("test", "programs");
+
+    private static final String[] SNIPPETS = {
+        "let ", "x", " be ", "1", "2.5", " add ", "\n", "{", "}", "(", ")", "[", "]", ",", "\"", "\"hi\"",
+        "/", ">", "<", " ", "print ", "if ", " then ", " otherwise ", "is greater than", " or equal to",
+        "is less than ", "function f(a) { return a }", "call f(1)\n", "for i be 1 to 3 { print i }\n",
+        "while x is less than 3 { let x be x add 1 }", "Array a be [1, 2]\n", "not ", " and ", "true",
+        "repeat 2 times { }", "stop", "return ", "9", "y", "e", "o",
+    };
+
+    // Rare; makes the text fail to lex
+    private static final String[] STRAY = {"@", "+", "*"};
+
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 17;
+        Random random = new Random(seed);
+        List<String> sources = new ArrayList<>();
+        try (Stream<Path> files = Files.list(PROGRAMS)) {
+            for (Path file : files.filter(file -> file.toString().endsWith(".elpl")).sorted().toList()) {
+                sources.add(Files.readString(file));
+            }
+        }
+
+        int checks = 0, failed = 0, reused = 0;
+        for (String source : sources) {
+            Document document = new Document(source);
+            compare(document, source);
+            for (int round = 0; round < rounds; round++) {
+                String text = source;
+                Deque<String[]> undo = new ArrayDeque<>(); // start, replacement, what it replaced
+                for (int edits = 1 + random.nextInt(3); edits > 0; edits--) {
+                    int start = random.nextInt(text.length() + 1);
+                    int end = Math.min(text.length(), start + (random.nextInt(3) == 0 ? random.nextInt(20) : 0));
+                    String replacement = replacement(random, text);
+                    undo.push(new String[] {String.valueOf(start), replacement, text.substring(start, end)});
+                    document.edit(start, end, replacement);
+                    text = text.substring(0, start) + replacement + text.substring(end);
+                }
+                String error = compare(document, text);
+                checks++;
+                if (error != null) failed++;
+                reused += document.statementCount() - document.reparsed();
+                for (String[] edit : undo) {
+                    int start = Integer.parseInt(edit[0]);
+                    document.edit(start, start + edit[1].length(), edit[2]);
+                }
+                if (random.nextBoolean()) {
+                    compare(document, source);
+                    checks++;
+                }
+            }
+        }
+        System.out.println(checks + " checks match (" + failed + " with an error, "
+                + reused + " statements reused)");
+    }
+
+    private static String replacement(Random random, String text) {
+        int kind = random.nextInt(100);
+        if (kind < 25) return "";
+        if (kind < 35 && !text.isEmpty()) {
+            int from = random.nextInt(text.length());
+            return text.substring(from, Math.min(text.length(), from + random.nextInt(40)));
+        }
+        if (kind < 36) return pick(random, STRAY);
+        return pick(random, SNIPPETS);
+    }
+
+    // Checks document and compares it with the whole of text checked anew;
+    // returns the check's error
+    private static String compare(Document document, String text) {
+        String error = document.check();
+        String expected = null;
+        try {
+            new Parser(new Lexer(text).lex()).parse();
+        } catch (RuntimeException e) {
+            expected = e.getMessage();
+        }
+        Document whole = new Document(text);
+        whole.check();
+        if (!Objects.equals(error, expected) || document.statementCount() != whole.statementCount()) {
+            System.out.println("Mismatch on:\n" + text);
+            System.out.println("whole:       " + expected + ", " + whole.statementCount() + " statements");
+            System.out.println("incremental: " + error + ", " + document.statementCount() + " statements");
+            System.exit(1);
+        }
+        return error;
+    }
+
+    private static String pick(Random random, String[] choices) {
+        return choices[random.nextInt(choices.length)];
+    }
+}
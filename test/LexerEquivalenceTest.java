@@ -0,0 +1,124 @@
+package com.syed.elpl_backend;
+
+import java.util.*;
+
+// Pins Lexer's output to the pre-trie lexer (BaselineLexer) on random mixes
+// of keywords, comparator phrases, near-miss words and phrases, identifiers,
+// literals, punctuation and comments, run together or apart. Every token's
+// type, value, line and column must match, through both tokenize() and lex(),
+// and a source one rejects the other must reject with the same message.
+//
+//   java -cp target/test com.syed.elpl_backend.LexerEquivalenceTest [mixes] [seed]
+//
+// Prints the first mismatching source and exits with 1. See the README for
+// how to build.
+public class LexerEquivalenceTest {
+    private static final String[] KEYWORDS = {
+        "let", "float", "for", "to", "be", "print", "add", "subtract", "multiply", "divide",
+        "true", "false", "Array", "stop", "mod", "otherwise", "if", "then", "and", "or", "not",
+        "repeat", "times", "while", "return", "function", "call",
+        "is greater than or equal to", "is less than or equal to", "not equal to",
+        "is greater than", "is less than", "is equal to",
+    };
+
+    // Words and phrases that start like a keyword but aren't one
+    private static final String[] NEAR_MISSES = {
+        "is greater", "is less than or", "is greater than or equal", "is  equal to", "not equal",
+        "not  equal to", "is", "equal", "than", "letter", "format", "tot", "bee", "printer", "adds",
+        "Arrays", "array", "Let", "iff", "orbit", "note", "timesx", "functions", "caller", "returned",
+        "parallel", "stop1", "mod2", "elé", "é", "ñandú", "x", "y1", "a2b",
+    };
+
+    private static final String[] LITERALS = {
+        "0", "42", "3.5", "7.", "\"hi there\"", "\"\"", "\"let be\"", "\"a\nb\"",
+    };
+
+    private static final String[] PUNCTUATION = {",", "{", "}", "[", "]", "(", ")", ";", "-"};
+
+    private static final String[] SEPARATORS = {" ", " ", " ", "  ", "\n", "\t", "\r\n", ""};
+
+    // Rare; each makes both lexers fail
+    private static final String[] STRAY = {"@", "#", "+", ".", "*"};
+
+    public static void main(String[] args) {
+        int mixes = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 15;
+        Random random = new Random(seed);
+        int rejected = 0;
+        for (int i = 0; i < mixes; i++) {
+            String source = mix(random);
+            String expected = dump(source, true);
+            String actual = dump(source, false);
+            if (!expected.equals(actual)) {
+                System.out.println("Mismatch on mix " + i + ": " + quote(source));
+                System.out.println("baseline: " + expected);
+                System.out.println("lexer:    " + actual);
+                System.exit(1);
+            }
+            if (expected.startsWith("error")) rejected++;
+        }
+        System.out.println(mixes + " mixes match (" + rejected + " rejected by both)");
+    }
+
+    static String mix(Random random) {
+        StringBuilder source = new StringBuilder();
+        int parts = 1 + random.nextInt(40);
+        for (int i = 0; i < parts; i++) {
+            int kind = random.nextInt(100);
+            if (kind < 35) {
+                source.append(pick(random, KEYWORDS));
+            } else if (kind < 60) {
+                source.append(pick(random, NEAR_MISSES));
+            } else if (kind < 72) {
+                source.append(pick(random, LITERALS));
+            } else if (kind < 90) {
+                source.append(pick(random, PUNCTUATION));
+            } else if (kind < 94) {
+                source.append("/ ").append(pick(random, KEYWORDS)).append('\n');
+            } else if (kind < 97) {
+                source.append("> ").append(pick(random, KEYWORDS)).append(" <");
+            } else if (kind < 99) {
+                // A keyword with a letter or digit glued on either side
+                String glue = random.nextBoolean() ? "q" : "7";
+                source.append(random.nextBoolean() ? glue + pick(random, KEYWORDS) : pick(random, KEYWORDS) + glue);
+            } else {
+                source.append(pick(random, STRAY));
+            }
+            source.append(pick(random, SEPARATORS));
+        }
+        return source.toString();
+    }
+
+    // Every token of source through one lexer, or its error
+    private static String dump(String source, boolean baseline) {
+        StringBuilder out = new StringBuilder();
+        try {
+            List<Token> tokens = baseline ? new BaselineLexer(source).tokenize() : new Lexer(source).tokenize();
+            for (Token token : tokens) {
+                out.append(token.type).append('(').append(quote(token.value)).append(')')
+                        .append(token.line).append(':').append(token.column).append(' ');
+            }
+        } catch (RuntimeException e) {
+            return "error " + e.getMessage();
+        }
+        if (!baseline) {
+            // lex() must agree with tokenize()
+            TokenBuffer buffer = new Lexer(source).lex();
+            StringBuilder lexed = new StringBuilder();
+            for (int i = 0; i < buffer.size(); i++) {
+                lexed.append(buffer.type(i)).append('(').append(quote(buffer.text(i))).append(')')
+                        .append(buffer.line(i)).append(':').append(buffer.column(i)).append(' ');
+            }
+            if (!lexed.toString().equals(out.toString())) return "lex() gave " + lexed;
+        }
+        return out.toString();
+    }
+
+    private static String pick(Random random, String[] choices) {
+        return choices[random.nextInt(choices.length)];
+    }
+
+    private static String quote(String text) {
+        return "\"" + text.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t") + "\"";
+    }
+}
@@ -0,0 +1,136 @@
+package com.syed.elpl_backend;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Runs every program in test/programs on each engine, with Optimizer off and
+// on (elpl.optimizer.enabled), and with memoization off and on
+// (elpl.memo.enabled), and compares the output with name.out, or with
+// name.<engine>.out for an engine whose output differs. The memo table holds
+// only MEMO_ENTRIES results, so memoized runs evict too. When
+// name.optimizations exists, it lists what Optimizer must report for the
+// program, one change per line, so a program keeps exercising what it was
+// written for. When name.pure exists, it lists the top-level functions
+// Purity must find pure, in the order they are declared.
+//
+// Runs get no step or memory limit and a time limit of 10 seconds, in case a
+// change makes a program loop. A program can set its own in name.properties,
+// with the keys of application.properties: elpl.limits.fuel,
+// elpl.limits.time-ms, elpl.limits.memory-mb and
+// elpl.builtins.parallel-threshold.
+//
+//   java -cp target/test com.syed.elpl_backend.ProgramsTest [name...]
+//
+// Run it from the repository root. Lists every mismatch, then exits with 1
+// if there was any. See the README for how to build.
+public class ProgramsTest {
+    private static final Path PROGRAMS = Path.of("test", "programs");
+    private static final int MEMO_ENTRIES = 4;
+
+    public static void main(String[] args) throws IOException {
+        List<String> names = new ArrayList<>(Arrays.asList(args));
+        if (names.isEmpty()) {
+            try (Stream<Path> files = Files.list(PROGRAMS)) {
+                files.map(file -> file.getFileName().toString())
+                        .filter(file -> file.endsWith(".elpl"))
+                        .map(file -> file.substring(0, file.length() - ".elpl".length()))
+                        .sorted()
+                        .forEach(names::add);
+            }
+        }
+
+        int failures = 0;
+        for (String name : names) {
+            String source = Files.readString(PROGRAMS.resolve(name + ".elpl"));
+            Properties settings = new Properties();
+            Path properties = PROGRAMS.resolve(name + ".properties");
+            if (Files.exists(properties)) {
+                try (Reader reader = Files.newBufferedReader(properties)) {
+                    settings.load(reader);
+                }
+            }
+            for (Engine engine : Engine.values()) {
+                String expected = expected(name, engine);
+                for (boolean optimize : new boolean[] {false, true}) {
+                    for (boolean memoize : new boolean[] {false, true}) {
+                        MemoTable memo = memoize ? new MemoTable(MEMO_ENTRIES) : null;
+                        String actual = run(new ProgramCache(0, 0, optimize), source, engine, memo, settings);
+                        if (!actual.equals(expected)) {
+                            failures++;
+                            System.out.println(name + " on " + engine.name().toLowerCase()
+                                    + (optimize ? ", optimized" : "") + (memoize ? ", memoized" : "")
+                                    + ": expected\n" + expected + "got\n" + actual);
+                        }
+                    }
+                }
+            }
+            Path optimizations = PROGRAMS.resolve(name + ".optimizations");
+            if (Files.exists(optimizations)) {
+                List<String> expected = Files.readAllLines(optimizations);
+                List<String> actual = new ProgramCache(0, 0, true).get(source).optimizations;
+                if (!actual.equals(expected)) {
+                    failures++;
+                    System.out.println(name + ": expected optimizations\n" + String.join("\n", expected)
+                            + "\ngot\n" + String.join("\n", actual));
+                }
+            }
+            Path pure = PROGRAMS.resolve(name + ".pure");
+            if (Files.exists(pure)) {
+                List<String> expected = Files.readAllLines(pure);
+                List<String> actual = new ArrayList<>();
+                for (ASTNode node : new ProgramCache(0, 0, false).get(source).ast.statements) {
+                    if (node instanceof FunctionDeclNode func && func.pure) actual.add(func.name);
+                }
+                if (!actual.equals(expected)) {
+                    failures++;
+                    System.out.println(name + ": expected pure functions\n" + String.join("\n", expected)
+                            + "\ngot\n" + String.join("\n", actual));
+                }
+            }
+        }
+        System.out.println(names.size() + " programs, " + failures + " failures");
+        if (failures > 0) System.exit(1);
+    }
+
+    private static String expected(String name, Engine engine) throws IOException {
+        Path own = PROGRAMS.resolve(name + "." + engine.name().toLowerCase() + ".out");
+        return Files.readString(Files.exists(own) ? own : PROGRAMS.resolve(name + ".out"));
+    }
+
+    // As InterpreterService runs it, so programs the Resolver rejects report
+    // a compiler error too
+    private static String run(ProgramCache cache, String source, Engine engine, MemoTable memo,
+                              Properties settings) {
+        OutputSink sink = new OutputSink();
+        try {
+            CachedProgram program = cache.get(source);
+            Budget budget = new Budget(setting(settings, "elpl.limits.fuel", 0),
+                    setting(settings, "elpl.limits.time-ms", 10_000),
+                    setting(settings, "elpl.limits.memory-mb", 0) * 1024 * 1024);
+            budget.parallelThreshold = (int) setting(settings, "elpl.builtins.parallel-threshold",
+                    Budget.DEFAULT_PARALLEL_THRESHOLD);
+            sink.budget = budget;
+            if (engine == Engine.NODES) {
+                NodeCompiler.run(program.ast, sink, memo, budget);
+            } else if (engine == Engine.VM) {
+                BytecodeVM.run(program.bytecode(), sink, memo, budget);
+            } else {
+                new Interpreter(sink, Tracer.NONE, memo, budget).interpret(program.ast);
+            }
+        } catch (RunAbortedException e) {
+            sink.buffer.append("Runtime Error: ").append(e.getMessage()).append("\n");
+        } catch (RuntimeException e) {
+            sink.fail("Compiler Error: " + e.getMessage());
+        }
+        return sink.toString();
+    }
+
+    private static long setting(Properties settings, String key, long otherwise) {
+        String value = settings.getProperty(key);
+        return value == null ? otherwise : Long.parseLong(value.trim());
+    }
+}